@@ -0,0 +1,95 @@
+/*
+ * #%L
+ * clamshell-api
+ * %%
+ * Copyright (C) 2011 ClamShell-Cli
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.clamshellcli.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Signals that the work of an invocation should stop.
+ * <p>
+ * The shell puts a token in the context of each command it runs
+ * (Context.KEY_CANCELLATION_TOKEN) and cancels it when the user presses
+ * Ctrl-C, or when a background job is killed.  Cancelling also interrupts
+ * the thread running the command, but a command that loops, or that calls
+ * code which swallows interrupts, should check the token itself with
+ * isCancelled() or checkCancelled().
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class CancellationToken {
+    private final List<Runnable> actions = new ArrayList<Runnable>();
+    private volatile boolean cancelled;
+
+    private CancellationToken(){}
+
+    public static CancellationToken createInstance() {
+        return new CancellationToken();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws if the token is cancelled, for commands that check between
+     * units of work.
+     * @throws CancellationException if cancelled.
+     */
+    public void checkCancelled() {
+        if(cancelled){
+            throw new CancellationException("Command cancelled.");
+        }
+    }
+
+    /**
+     * Cancels the token and runs its cancel actions, once.
+     * @return true if the token was not cancelled before.
+     */
+    public boolean cancel() {
+        List<Runnable> toRun;
+        synchronized(actions){
+            if(cancelled) return false;
+            cancelled = true;
+            toRun = new ArrayList<Runnable>(actions);
+            actions.clear();
+        }
+        for(Runnable action : toRun){
+            action.run();
+        }
+        return true;
+    }
+
+    /**
+     * Registers an action to run when the token is cancelled; the action
+     * runs right away if it already is.
+     * @param action i.e. interrupting the thread doing the work.
+     */
+    public void onCancel(Runnable action) {
+        synchronized(actions){
+            if(!cancelled){
+                actions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+}
@@ -40,8 +40,13 @@ public interface Command extends Plugin {
     /**
      * This method will be called as the starting point to execute the logic
      * for the action mapped to this command.
+     * Results can be emitted while the command runs through the invocation's
+     * ResultChannel (Context.KEY_RESULT_CHANNEL).
+     * The same instance can be executed by several threads at once (a
+     * background job, the parallel command), each with its own context:
+     * keep the state of an invocation in locals, not in fields.
      * @param ctx
-     * @return 
+     * @return a result to emit to the ResultChannel, or null.
      */
     public Object execute(Context ctx);
     
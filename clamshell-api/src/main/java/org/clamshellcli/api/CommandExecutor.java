@@ -0,0 +1,40 @@
+/*
+ * #%L
+ * clamshell-api
+ * %%
+ * Copyright (C) 2011 ClamShell-Cli
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.clamshellcli.api;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * A CommandExecutor runs the work of the shell off the console thread: the
+ * handling of each input line and background jobs.  The console thread
+ * only reads input and waits for the foreground work to finish.  The shell
+ * uses the first CommandExecutor found on the classpath, or a default one.
+ * Implementations shut their threads down in unplug().
+ * @author vladimir.vivien
+ */
+public interface CommandExecutor extends Plugin{
+    /**
+     * Runs the task on one of the executor's threads.
+     * @param task the work to run.
+     * @return Future used to wait for or cancel the task.
+     */
+    public <T> Future<T> submit(Callable<T> task);
+}
@@ -32,6 +32,7 @@ public interface Configurator {
     public static final String KEY_CONFIG_FILE  = "cli.config.file"; // property name for property file.
     public static final String KEY_CONFIG_PROPS = "properties";
     public static final String KEY_CONFIG_CTRLS = "controllers";
+    public static final String KEY_CONFIG_CMDS = "commands";
     
     public static final String VALUE_CONFIG_PLUGINSDIR = "plugins";
     public static final String VALUE_CONFIG_LIBDIR = "lib";
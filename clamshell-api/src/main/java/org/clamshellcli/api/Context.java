@@ -43,7 +43,26 @@ public interface Context{
     public static final String KEY_COMMAND_LINE_ARGS = "key.commandParams";
     
     /**
-     * Key for saving/retrieving the command map in the context.
+     * Key for command-line command arguments as a List&lt;CharSequence&gt;,
+     * quotes and escapes resolved.  The values are views over the input
+     * line; call toString() to keep one beyond the command's execution.
+     */
+    public static final String KEY_COMMAND_LINE_TOKENS = "key.commandTokens";
+    
+    /**
+     * Key for the ResultChannel of the command invocation.
+     */
+    public static final String KEY_RESULT_CHANNEL = "key.resultChannel";
+    
+    /**
+     * Key to the CancellationToken of the invocation being handled.
+     */
+    public static final String KEY_CANCELLATION_TOKEN = "key.cancellationToken";
+    
+    /**
+     * Key for saving/retrieving the command map in the context, a
+     * Map&lt;String, Command&gt; keyed by Command.Descriptor.getName().  The
+     * implementation keeps it in sync with KEY_COMMANDS.
      */
     public static final String KEY_COMMAND_MAP = "key.commandMap";
     
@@ -72,6 +91,11 @@ public interface Context{
      */
     public static final String KEY_PROMPT_COMPONENT = "key.promptComponent";
     
+    /**
+     * Key to store the CommandExecutor instance
+     */
+    public static final String KEY_EXECUTOR_COMPONENT = "key.executorComponent";
+    
     /**
      * Key to store loaded controllers
      */
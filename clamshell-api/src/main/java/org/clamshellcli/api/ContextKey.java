@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * clamshell-api
+ * %%
+ * Copyright (C) 2011 ClamShell-Cli
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.clamshellcli.api;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A typed key to a Context value.
+ * <p>
+ * The keys declared here are the built-in keys, one per Context.KEY_*
+ * constant.  Each one owns a fixed slot index, so a Context implementation
+ * can keep their values in an array instead of a map.  Keys created with
+ * create() have no slot and are stored by name, like values put with a
+ * String key.  The String and the typed key of a built-in value are
+ * interchangeable: ctx.putValue(Context.KEY_COMMANDS, x) and
+ * ContextKey.COMMANDS.put(ctx, x) set the same value.  get() and put()
+ * work with any Context; contexts that implement TypedContext are reached
+ * without the String lookup.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class ContextKey<T> {
+    private static final String BUILT_IN_PREFIX = "key.";
+    private static final Map<String, ContextKey<?>> builtIns = new HashMap<String, ContextKey<?>>();
+    private static int slots;
+
+    public static final ContextKey<ClassLoader> CLASS_LOADER = builtIn(Context.KEY_CLASS_LOADER);
+    public static final ContextKey<String> COMMAND_LINE_INPUT = builtIn(Context.KEY_COMMAND_LINE_INPUT);
+    public static final ContextKey<String[]> COMMAND_LINE_ARGS = builtIn(Context.KEY_COMMAND_LINE_ARGS);
+    public static final ContextKey<List<CharSequence>> COMMAND_LINE_TOKENS = builtIn(Context.KEY_COMMAND_LINE_TOKENS);
+    public static final ContextKey<ResultChannel> RESULT_CHANNEL = builtIn(Context.KEY_RESULT_CHANNEL);
+    public static final ContextKey<CancellationToken> CANCELLATION_TOKEN = builtIn(Context.KEY_CANCELLATION_TOKEN);
+    public static final ContextKey<Map<String, Command>> COMMAND_MAP = builtIn(Context.KEY_COMMAND_MAP);
+    public static final ContextKey<List<Plugin>> PLUGINS = builtIn(Context.KEY_PLUGINS);
+    public static final ContextKey<String> PROMPT_VALUE = builtIn(Context.KEY_PROMPT_VALUE);
+    public static final ContextKey<Shell> SHELL_COMPONENT = builtIn(Context.KEY_SHELL_COMPONENT);
+    public static final ContextKey<IOConsole> CONSOLE_COMPONENT = builtIn(Context.KEY_CONSOLE_COMPONENT);
+    public static final ContextKey<Prompt> PROMPT_COMPONENT = builtIn(Context.KEY_PROMPT_COMPONENT);
+    public static final ContextKey<CommandExecutor> EXECUTOR_COMPONENT = builtIn(Context.KEY_EXECUTOR_COMPONENT);
+    public static final ContextKey<List<InputController>> CONTROLLERS = builtIn(Context.KEY_CONTROLLERS);
+    public static final ContextKey<List<SplashScreen>> SPLASH_SCREENS = builtIn(Context.KEY_SPLASH_SCREENS);
+    public static final ContextKey<List<Command>> COMMANDS = builtIn(Context.KEY_COMMANDS);
+    public static final ContextKey<InputStream> INPUT_STREAM = builtIn(Context.KEY_INPUT_STREAM);
+    public static final ContextKey<OutputStream> OUTPUT_STREAM = builtIn(Context.KEY_OUTPUT_STREAM);
+    public static final ContextKey<OutputStream> ERROR_STREAM = builtIn(Context.KEY_ERROR_STREAM);
+
+    private final String name;
+    private final int slot;
+
+    private ContextKey(String name, int slot){
+        this.name = name;
+        this.slot = slot;
+    }
+
+    private static <T> ContextKey<T> builtIn(String name) {
+        if(!name.startsWith(BUILT_IN_PREFIX)){
+            throw new IllegalStateException("Built-in key names start with " + BUILT_IN_PREFIX + ": " + name);
+        }
+        ContextKey<T> key = new ContextKey<T>(name, slots++);
+        builtIns.put(name, key);
+        return key;
+    }
+
+    /**
+     * Creates a key for a user value.  Its value is stored by name, so
+     * getValue(name) returns it as well.
+     * @param name the key name
+     * @return ContextKey
+     */
+    public static <T> ContextKey<T> create(String name) {
+        if(name == null){
+            throw new IllegalArgumentException("Context key name cannot be null.");
+        }
+        return new ContextKey<T>(name, -1);
+    }
+
+    /**
+     * Returns the built-in key with the specified name.  All built-in names
+     * start with "key.", so other names are rejected without a lookup.
+     * @param name a Context.KEY_* value
+     * @return the key or null if the name is not a built-in key.
+     */
+    public static ContextKey<?> forName(String name) {
+        return (name != null && name.startsWith(BUILT_IN_PREFIX)) ? builtIns.get(name) : null;
+    }
+
+    /**
+     * Returns all built-in keys, by name.
+     */
+    public static Map<String, ContextKey<?>> getBuiltIns() {
+        return Collections.unmodifiableMap(builtIns);
+    }
+
+    /**
+     * Returns the number of built-in slots; slot indexes run from 0 to
+     * getSlotCount() - 1.
+     */
+    public static int getSlotCount() {
+        return slots;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the slot index of a built-in key, -1 for other keys.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    public boolean isBuiltIn() {
+        return slot >= 0;
+    }
+
+    /**
+     * Returns the value of this key in a context.
+     * @param ctx
+     * @return the value or null
+     */
+    public T get(Context ctx) {
+        return (ctx instanceof TypedContext) ? ((TypedContext) ctx).getValue(this) : cast(ctx.getValue(name));
+    }
+
+    /**
+     * Stores a value under this key in a context.
+     * @param ctx
+     * @param val
+     */
+    public void put(Context ctx, T val) {
+        if(ctx instanceof TypedContext){
+            ((TypedContext) ctx).putValue(this, val);
+        }else{
+            ctx.putValue(name, val);
+        }
+    }
+
+    /**
+     * Casts a stored value to the key's type.
+     */
+    @SuppressWarnings("unchecked")
+    public T cast(Object value) {
+        return (T) value;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * #%L
+ * clamshell-api
+ * %%
+ * Copyright (C) 2011 ClamShell-Cli
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.clamshellcli.api;
+
+/**
+ * Receives the results of a command invocation, one record at a time.
+ * <p>
+ * A command gets the channel of its invocation from the context
+ * (Context.KEY_RESULT_CHANNEL) and emits records as it produces them,
+ * instead of formatting and printing text itself.  The shell decides what
+ * a channel does with the records: render them to the console, buffer
+ * them or forward them elsewhere.  Channels do not keep records they have
+ * handed on, so a command can stream any number of them.
+ * </p>
+ * <p>
+ * The value returned by Command.execute(), if not null, is emitted to the
+ * channel as well; an Iterable, Iterator or array is emitted one element
+ * at a time.
+ * </p>
+ * @author vladimir.vivien
+ */
+public interface ResultChannel {
+    /**
+     * Emits one record.  May block while the receiver catches up.
+     * @param record the record, i.e. a String, a Map of fields or a bean.
+     */
+    public void emit(Object record);
+    
+    /**
+     * Pushes any buffered records to their destination.
+     */
+    public void flush();
+    
+    /**
+     * Marks the end of the results.  The shell closes the channels it
+     * creates once the command returns.
+     */
+    public void close();
+}
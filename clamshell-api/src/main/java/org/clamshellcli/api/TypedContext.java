@@ -0,0 +1,46 @@
+/*
+ * #%L
+ * clamshell-api
+ * %%
+ * Copyright (C) 2011 ClamShell-Cli
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.clamshellcli.api;
+
+/**
+ * A Context that stores values under typed keys itself.
+ * <p>
+ * Implementing this interface is optional.  ContextKey.get() and
+ * ContextKey.put() call these methods when the context implements it (the
+ * shell's own contexts keep built-in values in slots) and go through
+ * Context.getValue(String) / putValue(String, Object) otherwise.
+ * </p>
+ * @author vladimir.vivien
+ */
+public interface TypedContext extends Context {
+    /**
+     * Stores a value under a typed key.
+     * @param key
+     * @param val 
+     */
+    public <T> void putValue(ContextKey<T> key, T val);
+    
+    /**
+     * Retrieves the value of a typed key.
+     * @param key
+     * @return the value or null
+     */
+    public <T> T getValue(ContextKey<T> key);
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.commands;
+
+import java.util.Collections;
+import java.util.Map;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.core.JobManager;
+
+/**
+ * This class implements the "fg" command.  It brings a background job to
+ * the foreground: the job's buffered output is replayed, then its output
+ * is shown as it comes until the job ends.  Cancelling fg (Ctrl-C) kills
+ * the job.
+ * @author vladimir.vivien
+ */
+public class FgCmd implements Command {
+    private static final String NAMESPACE = "syscmd";
+    private static final String ACTION_NAME = "fg";
+
+    @Override
+    public Object execute(Context ctx) {
+        IOConsole c = ctx.getIoConsole();
+        JobManager jobs = JobManager.getInstance(ctx);
+        String[] args = ContextKey.COMMAND_LINE_ARGS.get(ctx);
+        if(jobs == null || args == null || args.length != 1){
+            c.printf("%nUsage: %s%n%n", getDescriptor().getUsage());
+            return null;
+        }
+        JobManager.Job job = jobs.getJob(args[0]);
+        if(job == null){
+            c.printf("%nNo such job [%s].%n%n", args[0]);
+            return null;
+        }
+
+        c.printf("%s%n", job.getCommandLine());
+        final JobManager.Job fgJob = job;
+        CancellationToken token = ContextKey.CANCELLATION_TOKEN.get(ctx);
+        if(token != null){
+            // Ctrl-C while in the foreground kills the job
+            token.onCancel(new Runnable() {
+                @Override
+                public void run() {
+                    fgJob.kill();
+                }
+            });
+        }
+        job.forwardOutput(c);
+        try{
+            job.await();
+        }catch(InterruptedException ex){
+            job.kill();
+            Thread.currentThread().interrupt();
+        }finally{
+            job.forwardOutput(null);
+        }
+        if(job.getState() == JobManager.State.FAILED){
+            c.printf("%nJob [%d] failed: %s%n", job.getId(), job.getError());
+        }else if(job.getState() == JobManager.State.KILLED){
+            c.printf("%nJob [%d] killed.%n", job.getId());
+        }
+        jobs.remove(job.getId());
+        return null;
+    }
+
+    @Override
+    public void plug(Context plug) {
+        // nothing to setup
+    }
+    
+    @Override
+    public void unplug(Context plug) {
+        // nothing to tear down
+    }
+    
+    @Override
+    public Command.Descriptor getDescriptor(){
+        return new Command.Descriptor() {
+            @Override public String getNamespace() {return NAMESPACE;}
+            
+            @Override
+            public String getName() {
+                return ACTION_NAME;
+            }
+
+            @Override
+            public String getDescription() {
+               return "Brings a background job to the foreground; Ctrl-C kills it.";
+            }
+
+            @Override
+            public String getUsage() {
+                return "Type 'fg [job_number]'";
+            }
+
+            @Override
+            public Map<String, String> getArguments() {
+                return Collections.emptyMap();
+            }
+        };
+    }
+}
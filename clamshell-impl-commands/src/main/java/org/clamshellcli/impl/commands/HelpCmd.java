@@ -17,7 +17,9 @@ package org.clamshellcli.impl.commands;
 
 import org.clamshellcli.api.Command;
 import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
 import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.core.CommandRegistry;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -76,7 +78,7 @@ public class HelpCmd implements Command{
      */
     @Override
     public Object execute(Context ctx) {
-        String[] args = (String[]) ctx.getValue(Context.KEY_COMMAND_LINE_ARGS);
+        String[] args = ContextKey.COMMAND_LINE_ARGS.get(ctx);
 
         // if arg passed, display help for command matching arg.
         if(args != null && args.length > 0){
@@ -99,16 +101,13 @@ public class HelpCmd implements Command{
     }
     
     private void printCommandHelp(Context ctx, String cmdName){
-        Map<String, Command> commands = ctx.mapCommands(ctx.getCommands());
-        if(commands != null){
-            Command cmd = commands.get(cmdName.trim());
-            if(cmd != null){
-                printCommandHelp(ctx, cmd);
-            }else{
-                ctx.getIoConsole().printf(
-                        "%nUnable to find command [%s].", cmdName
-                );
-            }
+        Command cmd = CommandRegistry.of(ctx).getCommand(cmdName.trim());
+        if(cmd != null){
+            printCommandHelp(ctx, cmd);
+        }else{
+            ctx.getIoConsole().printf(
+                    "%nUnable to find command [%s].", cmdName
+            );
         }
     }
     
@@ -145,11 +144,16 @@ public class HelpCmd implements Command{
         IOConsole c = ctx.getIoConsole();
         c.printf("%nAvailable Commands");
         c.printf("%n------------------");
-        List<Command> commands = ctx.getCommands();
-        for(Command cmd : commands){
+        CommandRegistry registry = CommandRegistry.of(ctx);
+        for(Command cmd : registry.getCommands()){
+            // a command that shares its name with an earlier one is reached by namespace:name
+            String name = cmd.getDescriptor().getName();
+            if(registry.getCommand(name) != cmd){
+                name = CommandRegistry.qualify(cmd.getDescriptor().getNamespace(), name);
+            }
             c.printf(
                 "%n%1$10s %2$5s %3$s", 
-                cmd.getDescriptor().getName(), 
+                name, 
                 " ", 
                 cmd.getDescriptor().getDescription()
             );
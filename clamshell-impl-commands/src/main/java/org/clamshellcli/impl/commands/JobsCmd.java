@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.commands;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.core.JobManager;
+
+/**
+ * This class implements the "jobs" command, which lists the background
+ * jobs started with a trailing "&amp;".
+ * @author vladimir.vivien
+ */
+public class JobsCmd implements Command {
+    private static final String NAMESPACE = "syscmd";
+    private static final String ACTION_NAME = "jobs";
+
+    @Override
+    public Object execute(Context ctx) {
+        IOConsole c = ctx.getIoConsole();
+        JobManager jobs = JobManager.getInstance(ctx);
+        List<JobManager.Job> list = (jobs != null) ? jobs.getJobs() : Collections.<JobManager.Job>emptyList();
+        if(list.isEmpty()){
+            c.printf("%nNo jobs.%n%n");
+            return null;
+        }
+        c.printf("%n");
+        for(JobManager.Job job : list){
+            c.printf("[%d] %-8s %8.1fs  %s%n", 
+                job.getId(), 
+                job.getState(), 
+                job.getElapsedMillis() / 1000.0, 
+                job.getCommandLine()
+            );
+        }
+        c.printf("%n");
+        return null;
+    }
+
+    @Override
+    public void plug(Context plug) {
+        // nothing to setup
+    }
+    
+    @Override
+    public void unplug(Context plug) {
+        // nothing to tear down
+    }
+    
+    @Override
+    public Command.Descriptor getDescriptor(){
+        return new Command.Descriptor() {
+            @Override public String getNamespace() {return NAMESPACE;}
+            
+            @Override
+            public String getName() {
+                return ACTION_NAME;
+            }
+
+            @Override
+            public String getDescription() {
+               return "Lists background jobs.";
+            }
+
+            @Override
+            public String getUsage() {
+                return "Type 'jobs'";
+            }
+
+            @Override
+            public Map<String, String> getArguments() {
+                return Collections.emptyMap();
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.commands;
+
+import java.util.Collections;
+import java.util.Map;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.core.JobManager;
+
+/**
+ * This class implements the "kill" command, which stops a background job
+ * and discards its output.
+ * @author vladimir.vivien
+ */
+public class KillCmd implements Command {
+    private static final String NAMESPACE = "syscmd";
+    private static final String ACTION_NAME = "kill";
+
+    @Override
+    public Object execute(Context ctx) {
+        IOConsole c = ctx.getIoConsole();
+        JobManager jobs = JobManager.getInstance(ctx);
+        String[] args = ContextKey.COMMAND_LINE_ARGS.get(ctx);
+        if(jobs == null || args == null || args.length != 1){
+            c.printf("%nUsage: %s%n%n", getDescriptor().getUsage());
+            return null;
+        }
+        JobManager.Job job = jobs.getJob(args[0]);
+        if(job == null){
+            c.printf("%nNo such job [%s].%n%n", args[0]);
+            return null;
+        }
+        if(job.kill()){
+            c.printf("[%d] %s  %s%n", job.getId(), job.getState(), job.getCommandLine());
+        }else{
+            c.printf("[%d] already %s  %s%n", job.getId(), job.getState(), job.getCommandLine());
+        }
+        jobs.remove(job.getId());
+        return null;
+    }
+
+    @Override
+    public void plug(Context plug) {
+        // nothing to setup
+    }
+    
+    @Override
+    public void unplug(Context plug) {
+        // nothing to tear down
+    }
+    
+    @Override
+    public Command.Descriptor getDescriptor(){
+        return new Command.Descriptor() {
+            @Override public String getNamespace() {return NAMESPACE;}
+            
+            @Override
+            public String getName() {
+                return ACTION_NAME;
+            }
+
+            @Override
+            public String getDescription() {
+               return "Stops a background job.";
+            }
+
+            @Override
+            public String getUsage() {
+                return "Type 'kill [job_number]'";
+            }
+
+            @Override
+            public Map<String, String> getArguments() {
+                return Collections.emptyMap();
+            }
+        };
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.commands;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.api.ResultChannel;
+import org.clamshellcli.core.BufferedConsole;
+import org.clamshellcli.core.CommandDeadline;
+import org.clamshellcli.core.CommandRegistry;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.ShellConfiguration;
+
+/**
+ * This class implements the "parallel" command, which runs another command
+ * once per input, several at a time.
+ * <pre>
+ * parallel [-j N] [-u] [-i file] command [args]
+ * </pre>
+ * <p>
+ * Inputs are the non-blank lines of the file, or lines typed after the
+ * command up to an empty line.  In args, {} is replaced by the input; if
+ * no argument contains {}, the input is added as the last argument.  At
+ * most N invocations (default: number of processors) run at once, on a
+ * work-stealing pool.
+ * </p>
+ * <p>
+ * Each invocation has its own context and console, so the output of one
+ * input is printed as one block: in input order, or with -u as soon as the
+ * invocation ends.  The command ends with a throughput summary.  The
+ * command's timeout from cli.config applies to each invocation;
+ * cancelling parallel (Ctrl-C) cancels the CancellationToken of every
+ * running invocation and drops the ones not started yet.
+ * </p>
+ * <p>
+ * All invocations share the command's single instance, so the command
+ * must be thread-safe: it has to keep the state of an invocation in
+ * locals, not in fields (see Command.execute()).
+ * </p>
+ * @author vladimir.vivien
+ */
+public class ParallelCmd implements Command {
+    private static final String NAMESPACE = "syscmd";
+    private static final String ACTION_NAME = "parallel";
+    private static final String PLACEHOLDER = "{}";
+
+    /**
+     * Outcome of one invocation.
+     */
+    private static class Outcome {
+        final String input;
+        final String output;
+        final boolean failed;
+
+        Outcome(String input, String output, boolean failed){
+            this.input = input;
+            this.output = output;
+            this.failed = failed;
+        }
+    }
+
+    @Override
+    public Object execute(Context ctx) {
+        IOConsole c = ctx.getIoConsole();
+        String[] args = ContextKey.COMMAND_LINE_ARGS.get(ctx);
+        if(args == null){
+            c.printf("%nUsage: %s%n%n", getDescriptor().getUsage());
+            return null;
+        }
+
+        // options come before the command name
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean unordered = false;
+        String inputFile = null;
+        int i = 0;
+        try{
+            for(; i < args.length && args[i].startsWith("-"); i++){
+                if("-j".equals(args[i]) && i + 1 < args.length){
+                    threads = Integer.parseInt(args[++i]);
+                }else if("-i".equals(args[i]) && i + 1 < args.length){
+                    inputFile = args[++i];
+                }else if("-u".equals(args[i])){
+                    unordered = true;
+                }else{
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if(threads < 1){
+                throw new IllegalArgumentException("-j must be at least 1");
+            }
+        }catch(RuntimeException ex){
+            c.printf("%nUnable execute command: %s%nUsage: %s%n%n", ex.getMessage(), getDescriptor().getUsage());
+            return null;
+        }
+        if(i >= args.length){
+            c.printf("%nUsage: %s%n%n", getDescriptor().getUsage());
+            return null;
+        }
+        Command cmd = CommandRegistry.of(ctx).getCommand(args[i]);
+        if(cmd == null){
+            c.printf("%nCommand [%s] is unknown. Type help for a list of installed commands.%n", args[i]);
+            return null;
+        }
+        String cmdName = args[i];
+        String[] template = Arrays.copyOfRange(args, i + 1, args.length);
+
+        List<String> inputs;
+        try{
+            inputs = (inputFile != null) ? readInputs(inputFile) : readInputs(c);
+        }catch(IOException ex){
+            c.printf("%nUnable to read inputs: %s%n%n", ex.getMessage());
+            return null;
+        }
+        if(inputs.isEmpty()){
+            c.printf("%nNo inputs.%n%n");
+            return null;
+        }
+        run(ctx, cmd, cmdName, template, inputs, threads, unordered);
+        return null;
+    }
+
+    private void run(Context ctx, Command cmd, String cmdName, String[] template, 
+            List<String> inputs, int threads, boolean unordered) {
+        IOConsole c = ctx.getIoConsole();
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final Set<CancellationToken> running = 
+            Collections.newSetFromMap(new ConcurrentHashMap<CancellationToken, Boolean>());
+        CancellationToken token = ContextKey.CANCELLATION_TOKEN.get(ctx);
+        if(token != null){
+            token.onCancel(new Runnable() {
+                @Override
+                public void run() {
+                    pool.shutdownNow();
+                    for(CancellationToken child : running){
+                        child.cancel();
+                    }
+                }
+            });
+        }
+
+        Context shell = (ctx instanceof InvocationContext) ? ((InvocationContext) ctx).getParent() : ctx;
+        long timeout = getTimeout(shell, cmd);
+        long started = System.currentTimeMillis();
+        int done = 0;
+        int failed = 0;
+        CompletionService<Outcome> completion = new ExecutorCompletionService<Outcome>(pool);
+        List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>(inputs.size());
+        try{
+            for(String input : inputs){
+                futures.add(completion.submit(invocation(shell, cmd, cmdName, template, input, timeout, token, running)));
+            }
+            for(int n = 0; n < futures.size(); n++){
+                Outcome outcome = (unordered ? completion.take() : futures.get(n)).get();
+                c.print(outcome.output);
+                done++;
+                if(outcome.failed) failed++;
+            }
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }catch(CancellationException ex){
+            // cancelled, the pool is shut down
+        }catch(ExecutionException ex){
+            c.printf("%nUnable to complete command: %s%n", ex.getCause());
+        }finally{
+            pool.shutdownNow();
+        }
+
+        double seconds = Math.max(System.currentTimeMillis() - started, 1) / 1000.0;
+        c.printf("%n%d of %d inputs done (%d failed) in %.2fs, %.1f inputs/s with %d threads.%n%n", 
+            done, inputs.size(), failed, seconds, done / seconds, threads);
+    }
+
+    /**
+     * Runs the command for one input, in its own context, console and
+     * CancellationToken.  The token is in running while the command runs,
+     * so cancelling parent cancels it too.
+     */
+    private Callable<Outcome> invocation(final Context shell, final Command cmd, final String cmdName,
+            final String[] template, final String input, final long timeout, 
+            final CancellationToken parent, final Set<CancellationToken> running) {
+        return new Callable<Outcome>() {
+            @Override
+            public Outcome call() {
+                final String[] args = expand(template, input);
+                final BufferedConsole console = BufferedConsole.createInstance();
+                final Context ctx = InvocationContext.createInstance(shell, cmdName, console);
+                final CancellationToken token = CancellationToken.createInstance();
+                ContextKey.COMMAND_LINE_ARGS.put(ctx, args);
+                ContextKey.COMMAND_LINE_TOKENS.put(ctx, Arrays.<CharSequence>asList(args));
+                ContextKey.CANCELLATION_TOKEN.put(ctx, token);
+                ContextKey.RESULT_CHANNEL.put(ctx, new ResultChannel() {
+                    @Override public void emit(Object record) {
+                        if(record != null) console.println(record.toString());
+                    }
+                    @Override public void flush() {}
+                    @Override public void close() {}
+                });
+
+                // cancelled by parent from now on
+                running.add(token);
+                if(parent != null && parent.isCancelled()){
+                    token.cancel();
+                }
+
+                boolean failed = false;
+                CommandDeadline deadline = (timeout > 0) ? CommandDeadline.start(timeout, new Runnable() {
+                    @Override
+                    public void run() {
+                        token.cancel();
+                    }
+                }) : null;
+                try{
+                    Object result = cmd.execute(ctx);
+                    if(result != null){
+                        ContextKey.RESULT_CHANNEL.get(ctx).emit(result);
+                    }
+                }catch(Exception ex){
+                    failed = true;
+                    console.printf("%n[%s] failed: %s%n", input, ex.getMessage());
+                }finally{
+                    running.remove(token);
+                    if(deadline != null && !deadline.finish()){
+                        failed = true;
+                        console.printf("%n[%s] timed out after %d ms%n", input, timeout);
+                    }
+                }
+                return new Outcome(input, console.takeOutput(), failed);
+            }
+        };
+    }
+
+    /**
+     * Replaces {} in the arguments with the input, or adds the input as
+     * the last argument if there is no {}.
+     * @param template arguments that follow the command name.
+     * @param input
+     * @return the arguments of the invocation.
+     */
+    static String[] expand(String[] template, String input) {
+        boolean found = false;
+        String[] result = new String[template.length];
+        for(int i = 0; i < template.length; i++){
+            if(template[i].contains(PLACEHOLDER)){
+                found = true;
+                result[i] = template[i].replace(PLACEHOLDER, input);
+            }else{
+                result[i] = template[i];
+            }
+        }
+        if(!found){
+            result = Arrays.copyOf(result, result.length + 1);
+            result[template.length] = input;
+        }
+        return result;
+    }
+
+    private static long getTimeout(Context ctx, Command cmd) {
+        Command.Descriptor desc = cmd.getDescriptor();
+        if(desc == null || ctx.getConfigurator() == null) return 0;
+        ShellConfiguration.CommandConfig config = 
+            ShellConfiguration.of(ctx.getConfigurator()).findCommand(desc.getNamespace(), desc.getName());
+        try{
+            return (config != null) ? config.getTimeout() : 0;
+        }catch(IllegalArgumentException ex){
+            return 0;
+        }
+    }
+
+    private static List<String> readInputs(String fileName) throws IOException {
+        List<String> inputs = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+        try{
+            for(String line = reader.readLine(); line != null; line = reader.readLine()){
+                if(!line.trim().isEmpty()) inputs.add(line.trim());
+            }
+        }finally{
+            reader.close();
+        }
+        return inputs;
+    }
+
+    /**
+     * Reads inputs typed on the console, up to an empty line.
+     */
+    private static List<String> readInputs(IOConsole c) {
+        c.printf("Enter inputs, one per line, end with an empty line:%n");
+        List<String> inputs = new ArrayList<String>();
+        for(String line = c.readLine("> "); line != null && !line.trim().isEmpty(); line = c.readLine("> ")){
+            inputs.add(line.trim());
+        }
+        return inputs;
+    }
+
+    @Override
+    public void plug(Context plug) {
+        // nothing to setup
+    }
+    
+    @Override
+    public void unplug(Context plug) {
+        // nothing to tear down
+    }
+    
+    @Override
+    public Command.Descriptor getDescriptor(){
+        return new Command.Descriptor() {
+            @Override public String getNamespace() {return NAMESPACE;}
+            
+            @Override
+            public String getName() {
+                return ACTION_NAME;
+            }
+
+            @Override
+            public String getDescription() {
+               return "Runs a command once per input, in parallel.";
+            }
+
+            @Override
+            public String getUsage() {
+                return "Type 'parallel [-j N] [-u] [-i file] [command_name] [args]', {} in args is replaced by each input";
+            }
+
+            @Override
+            public Map<String, String> getArguments() {
+                Map<String, String> result = new LinkedHashMap<String, String>();
+                result.put("-j", "Number of invocations run at once (default: number of processors).");
+                result.put("-u", "Prints the output of each input as soon as it is done, instead of in input order.");
+                result.put("-i", "File to read inputs from, one per line (default: lines typed up to an empty line).");
+                return result;
+            }
+        };
+    }
+}
@@ -18,6 +18,7 @@ package org.clamshellcli.impl.commands;
 import org.clamshellcli.api.Command;
 import org.clamshellcli.api.Configurator;
 import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
 import org.clamshellcli.api.IOConsole;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
@@ -48,7 +49,7 @@ import java.util.Map.Entry;
 public class SysInfoCmd implements Command{
     private static final String NAMESPACE = "syscmd";
     private static final String CMD_NAME = "sysinfo";
-    private SysInfoDescriptor descriptor;
+    private final SysInfoDescriptor descriptor = new SysInfoDescriptor();
     
     private class SysInfoParams {
         @Parameter
@@ -65,11 +66,14 @@ public class SysInfoCmd implements Command{
     }
     
     private class SysInfoDescriptor implements Command.Descriptor {
-        private JCommander commander;
-        SysInfoParams parameters;
-                
-        public void setCommandArgs(String[] args){
-            commander = new JCommander((parameters=new SysInfoParams()), args);
+        /**
+         * Parses the arguments of one invocation.  Nothing is kept in the
+         * descriptor, so concurrent invocations do not share flags.
+         */
+        public SysInfoParams parseCommandArgs(String[] args){
+            SysInfoParams parameters = new SysInfoParams();
+            new JCommander(parameters, args);
+            return parameters;
         }
 
         @Override public String getNamespace() {
@@ -102,7 +106,7 @@ public class SysInfoCmd implements Command{
 
         @Override
         public Map<String, String> getArguments() {
-            if(commander == null) commander = new JCommander(new SysInfoParams());
+            JCommander commander = new JCommander(new SysInfoParams());
             Map<String, String> result = new HashMap<String,String>();
             List<ParameterDescription> params = commander.getParameters();
             for(ParameterDescription param : params){
@@ -116,18 +120,17 @@ public class SysInfoCmd implements Command{
     
     @Override
     public Descriptor getDescriptor() {
-        return (descriptor !=  null) ? 
-            descriptor : 
-            (descriptor = new SysInfoDescriptor());
+        return descriptor;
     }
 
     @Override
     public Object execute(Context ctx) {
-        String[] args = (String[]) ctx.getValue(Context.KEY_COMMAND_LINE_ARGS);
+        String[] args = ContextKey.COMMAND_LINE_ARGS.get(ctx);
         IOConsole c = ctx.getIoConsole();
         if(args != null){
+            SysInfoParams params;
             try{
-                descriptor.setCommandArgs(args);
+                params = descriptor.parseCommandArgs(args);
             }catch(RuntimeException ex){
                 c.printf("%nUnable execute command: %s%n%n", ex.getMessage());
                 return null;
@@ -136,7 +139,7 @@ public class SysInfoCmd implements Command{
             // decipher args
             
             // >sysinfo -props
-            if(descriptor!=null && descriptor.parameters.props){
+            if(params.props){
                 c.printf("%nSystem Properties");
                 c.printf("%n-----------------");
                 displayAllSysProperties(ctx);
@@ -144,15 +147,18 @@ public class SysInfoCmd implements Command{
             }
             
             // >sysinfo -cp [or -classpath]
-            if(descriptor != null && descriptor.parameters.cp){
+            if(params.cp){
                 RuntimeMXBean bean = ManagementFactory.getRuntimeMXBean();
                 c.printf("%nClasspath: %s", bean.getClassPath());
-                c.printf("%nBoot Classpath: %s%n%n", bean.getBootClassPath());
+                if(bean.isBootClassPathSupported()){
+                    c.printf("%nBoot Classpath: %s", bean.getBootClassPath());
+                }
+                c.printf("%n%n");
             }
             
             
             // >sysinfo -mem
-            if(descriptor != null && descriptor.parameters.mem){
+            if(params.mem){
                 MemoryMXBean bean = ManagementFactory.getMemoryMXBean();
                 c.printf("%nHeap Memory Usage:%n");
                 c.printf("\t-Initial: %d%n", bean.getHeapMemoryUsage().getInit());
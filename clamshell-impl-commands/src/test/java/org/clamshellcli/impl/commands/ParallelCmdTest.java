@@ -0,0 +1,211 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.commands;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.core.BufferedConsole;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.ShellContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class ParallelCmdTest {
+    private ShellContext shell;
+    private BufferedConsole console;
+    private File inputs;
+
+    @Before
+    public void setUp() throws Exception {
+        console = BufferedConsole.createInstance();
+        shell = ShellContext.createInstance();
+        shell.putValue(ContextKey.CONSOLE_COMPONENT, console);
+        shell.putValue(Context.KEY_COMMANDS, Arrays.<Command>asList(new SleepCmd(), new WaitCmd()));
+
+        // the first input takes longest, so it ends last
+        inputs = new File("target/parallel-inputs.txt");
+        inputs.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(inputs);
+        try{
+            writer.write("300\n100\n0\n");
+        }finally{
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testExpand() {
+        Assert.assertArrayEquals(
+            new String[]{"-x", "host=a", "a.log"},
+            ParallelCmd.expand(new String[]{"-x", "host={}", "{}.log"}, "a")
+        );
+        Assert.assertArrayEquals(
+            new String[]{"-v", "a"},
+            ParallelCmd.expand(new String[]{"-v"}, "a")
+        );
+        Assert.assertArrayEquals(new String[]{"a"}, ParallelCmd.expand(new String[0], "a"));
+    }
+
+    @Test
+    public void testOutputInInputOrder() {
+        run("-j", "3", "-i", inputs.getPath(), "sleep");
+        Assert.assertEquals(Arrays.asList("<300>", "<100>", "<0>"), blocks());
+    }
+
+    @Test
+    public void testUnorderedOutputInCompletionOrder() {
+        run("-u", "-j", "3", "-i", inputs.getPath(), "sleep");
+        List<String> blocks = blocks();
+        Assert.assertEquals(3, blocks.size());
+        Assert.assertEquals("<300>", blocks.get(2));
+    }
+
+    @Test
+    public void testSummary() {
+        run("-j", "2", "-i", inputs.getPath(), "sleep");
+        Assert.assertTrue(console.takeOutput().contains("3 of 3 inputs done (0 failed)"));
+    }
+
+    @Test
+    public void testCancelStopsInvocations() throws Exception {
+        final Context ctx = InvocationContext.createInstance(shell, "parallel");
+        CancellationToken token = CancellationToken.createInstance();
+        ContextKey.CANCELLATION_TOKEN.put(ctx, token);
+        ContextKey.COMMAND_LINE_ARGS.put(ctx, new String[]{"-j", "3", "-i", inputs.getPath(), "wait"});
+        Thread parallel = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                new ParallelCmd().execute(ctx);
+            }
+        });
+        WaitCmd.started = new CountDownLatch(3);
+        WaitCmd.stopped = new CountDownLatch(3);
+        parallel.start();
+        Assert.assertTrue(WaitCmd.started.await(5, TimeUnit.SECONDS));
+
+        token.cancel();
+        Assert.assertTrue(WaitCmd.stopped.await(5, TimeUnit.SECONDS));
+        parallel.join(5000);
+        Assert.assertFalse(parallel.isAlive());
+    }
+
+    private void run(String... args) {
+        Context ctx = InvocationContext.createInstance(shell, "parallel");
+        ContextKey.COMMAND_LINE_ARGS.put(ctx, args);
+        new ParallelCmd().execute(ctx);
+    }
+
+    /**
+     * Returns the blocks printed by the invocations, in the order printed.
+     */
+    private List<String> blocks() {
+        List<String> result = new ArrayList<String>();
+        for(String line : console.takeOutput().split("\\r?\\n")){
+            if(line.startsWith("<")) result.add(line);
+        }
+        return result;
+    }
+
+    /**
+     * Sleeps for its argument, in milliseconds, then prints it.
+     */
+    private static class SleepCmd implements Command {
+        @Override
+        public Object execute(Context ctx) {
+            String[] args = ContextKey.COMMAND_LINE_ARGS.get(ctx);
+            try{
+                Thread.sleep(Long.parseLong(args[0]));
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+            ctx.getIoConsole().printf("<%s>%n", args[0]);
+            return null;
+        }
+
+        @Override
+        public Command.Descriptor getDescriptor() {
+            return new Command.Descriptor() {
+                @Override public String getNamespace() {return "test";}
+                @Override public String getName() {return "sleep";}
+                @Override public String getDescription() {return "Sleeps.";}
+                @Override public String getUsage() {return "sleep millis";}
+                @Override public Map<String, String> getArguments() {return Collections.emptyMap();}
+            };
+        }
+
+        @Override
+        public void plug(Context plug) {}
+
+        @Override
+        public void unplug(Context plug) {}
+    }
+
+    /**
+     * Waits until its invocation is cancelled.
+     */
+    private static class WaitCmd implements Command {
+        static volatile CountDownLatch started = new CountDownLatch(0);
+        static volatile CountDownLatch stopped = new CountDownLatch(0);
+
+        @Override
+        public Object execute(Context ctx) {
+            CancellationToken token = ContextKey.CANCELLATION_TOKEN.get(ctx);
+            started.countDown();
+            while(!token.isCancelled()){
+                try{
+                    Thread.sleep(10);
+                }catch(InterruptedException ex){
+                    // only the token stops the command
+                }
+            }
+            stopped.countDown();
+            return null;
+        }
+
+        @Override
+        public Command.Descriptor getDescriptor() {
+            return new Command.Descriptor() {
+                @Override public String getNamespace() {return "test";}
+                @Override public String getName() {return "wait";}
+                @Override public String getDescription() {return "Waits until cancelled.";}
+                @Override public String getUsage() {return "wait";}
+                @Override public Map<String, String> getArguments() {return Collections.emptyMap();}
+            };
+        }
+
+        @Override
+        public void plug(Context plug) {}
+
+        @Override
+        public void unplug(Context plug) {}
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.commands.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.core.BufferedConsole;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.JobManager;
+import org.clamshellcli.core.ShellContext;
+import org.clamshellcli.impl.commands.FgCmd;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class FgCmdTest {
+    private ShellContext shell;
+    private BufferedConsole console;
+    private JobManager jobs;
+
+    @Before
+    public void setUp() {
+        console = BufferedConsole.createInstance();
+        jobs = JobManager.createInstance();
+        shell = ShellContext.createInstance();
+        shell.putValue(ContextKey.CONSOLE_COMPONENT, console);
+        JobManager.KEY.put(shell, jobs);
+    }
+
+    @After
+    public void tearDown() {
+        jobs.shutdown();
+    }
+
+    @Test
+    public void testOutputShownUntilJobEnds() throws Exception {
+        final CountDownLatch proceed = new CountDownLatch(1);
+        JobManager.Job job = jobs.submit("export", new JobManager.Task() {
+            @Override
+            public void run(JobManager.Job job) throws Exception {
+                job.getConsole().printf("first%n");
+                proceed.await();
+                job.getConsole().printf("second%n");
+            }
+        });
+        Thread fg = fg("1", null);
+        waitForOutput("first");
+        Assert.assertTrue(fg.isAlive());
+
+        proceed.countDown();
+        fg.join(5000);
+        Assert.assertFalse(fg.isAlive());
+        Assert.assertTrue(console.takeOutput().contains("second"));
+        Assert.assertEquals(JobManager.State.DONE, job.getState());
+        Assert.assertNull(jobs.getJob(1));
+    }
+
+    @Test
+    public void testCancelKillsJob() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        JobManager.Job job = jobs.submit("export", new JobManager.Task() {
+            @Override
+            public void run(JobManager.Job job) throws Exception {
+                started.countDown();
+                while(!job.getCancellationToken().isCancelled()){
+                    Thread.sleep(10);
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CancellationToken token = CancellationToken.createInstance();
+        Thread fg = fg("%1", token);
+        waitForOutput("export");
+
+        token.cancel();
+        fg.join(5000);
+        Assert.assertFalse(fg.isAlive());
+        Assert.assertEquals(JobManager.State.KILLED, job.getState());
+        Assert.assertTrue(job.getCancellationToken().isCancelled());
+        Assert.assertTrue(console.takeOutput().contains("Job [1] killed."));
+    }
+
+    private Thread fg(String spec, CancellationToken token) {
+        final Context ctx = InvocationContext.createInstance(shell, "fg " + spec);
+        ContextKey.COMMAND_LINE_ARGS.put(ctx, new String[]{spec});
+        if(token != null) ContextKey.CANCELLATION_TOKEN.put(ctx, token);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                new FgCmd().execute(ctx);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    /**
+     * Waits until the console output contains text, keeping that output
+     * out of later checks.
+     */
+    private void waitForOutput(String text) throws InterruptedException {
+        StringBuilder out = new StringBuilder();
+        long end = System.currentTimeMillis() + 5000;
+        while(out.indexOf(text) < 0 && System.currentTimeMillis() < end){
+            out.append(console.takeOutput());
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(out.toString(), out.indexOf(text) >= 0);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.Writer;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.IOConsole;
+
+/**
+ * An IOConsole that keeps its output in memory, used by background jobs.
+ * <p>
+ * Output is appended to a buffer that takeOutput() empties, so it can be
+ * replayed on the terminal later.  The buffer holds at most a fixed number
+ * of characters; past that the oldest output is dropped and a note says
+ * how much was lost.  There is no input: the readLine() methods return
+ * null.  History and screen methods do nothing.
+ * </p>
+ * <p>
+ * While forwarding to another console (see forwardTo), output is written
+ * straight to that console instead of the buffer.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class BufferedConsole implements IOConsole {
+    public static final int DEFAULT_LIMIT = 1024 * 1024;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private final int limit;
+    private long dropped;
+    private PrintWriter target;
+    private final PrintWriter writer;
+
+    private BufferedConsole(int limit){
+        this.limit = limit;
+        this.writer = new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] chars, int off, int len) {
+                store(chars, off, len);
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        }, true);
+    }
+
+    /**
+     * Creates a console that keeps at most DEFAULT_LIMIT characters.
+     * @return BufferedConsole
+     */
+    public static BufferedConsole createInstance() {
+        return new BufferedConsole(DEFAULT_LIMIT);
+    }
+
+    /**
+     * Creates a console that keeps at most limit characters.
+     * @param limit
+     * @return BufferedConsole
+     */
+    public static BufferedConsole createInstance(int limit) {
+        if(limit <= 0){
+            throw new IllegalArgumentException("Buffer limit must be greater than 0.");
+        }
+        return new BufferedConsole(limit);
+    }
+
+    private synchronized void store(char[] chars, int off, int len) {
+        if(target != null){
+            target.write(chars, off, len);
+            target.flush();
+            return;
+        }
+        buffer.append(chars, off, len);
+        int over = buffer.length() - limit;
+        if(over > 0){
+            buffer.delete(0, over);
+            dropped += over;
+        }
+    }
+
+    /**
+     * Returns the output written since the last call and empties the buffer.
+     * @return the output, empty if there is none.
+     */
+    public synchronized String takeOutput() {
+        String output = buffer.toString();
+        buffer.setLength(0);
+        if(dropped > 0){
+            output = String.format("[%d characters of output dropped]%n", dropped) + output;
+            dropped = 0;
+        }
+        return output;
+    }
+
+    /**
+     * Writes the buffered output to a console, then sends all further
+     * output straight to it.
+     * @param console the console to forward to, or null to buffer again.
+     */
+    public synchronized void forwardTo(IOConsole console) {
+        if(console == null){
+            target = null;
+            return;
+        }
+        target = console.getWriter();
+        String output = takeOutput();
+        if(!output.isEmpty()){
+            target.write(output);
+            target.flush();
+        }
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public String readLine() {
+        return null;
+    }
+
+    @Override
+    public String readLine(String prompt) {
+        return null;
+    }
+
+    @Override
+    public String readLine(char maskChar) {
+        return null;
+    }
+
+    @Override
+    public String readLine(String prompt, char maskChar) {
+        return null;
+    }
+
+    @Override
+    public void print(String s) {
+        writer.print(s);
+        writer.flush();
+    }
+
+    @Override
+    public void printf(String format, Object... args) {
+        writer.printf(format, args);
+        writer.flush();
+    }
+
+    @Override
+    public void println() {
+        writer.println();
+    }
+
+    @Override
+    public void println(String s) {
+        writer.println(s);
+    }
+
+    @Override
+    public boolean isHistoryEnabled() {
+        return false;
+    }
+
+    @Override
+    public void saveHistory() {}
+
+    @Override
+    public void addToHistory(String s) {}
+
+    @Override
+    public File getHistoryFile() {
+        return null;
+    }
+
+    @Override
+    public void clearHistory() {}
+
+    @Override
+    public void clearScreen() {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void plug(Context plug) {}
+
+    @Override
+    public void unplug(Context plug) {}
+}
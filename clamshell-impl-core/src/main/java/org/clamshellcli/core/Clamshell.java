@@ -20,12 +20,15 @@
 package org.clamshellcli.core;
 
 import java.io.File;
-import java.io.FileFilter;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ServiceLoader;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import org.clamshellcli.api.Command;
@@ -41,33 +44,101 @@ public final class Clamshell {
     private Clamshell(){}
     
     public static class Runtime {
+        private static final String VALUE_COMMANDS_DIR = "commands";
         private static ShellContext ctx;
         private static Configurator config;
+        private static ServiceIndex index;
         
-        public static ShellContext getContext() {
+        public static synchronized ShellContext getContext() {
             return (ctx == null) ? ctx = ShellContext.createInstance() : ctx;
         }
         
-        public static Configurator getConfigurator () {
+        public static synchronized Configurator getConfigurator () {
             return (config == null) ? config = ShellConfigurator.createNewInstance(): config;
         }
                 
         /**
          * This function loads/returns all Classes of type T from classpath.
          * It uses Java's ServiceProvider architecture to locate specified type.
+         * Provider names are resolved through the persistent ServiceIndex so 
+         * that unchanged jars are not scanned again on every start.
          * @param <T>
          * @param type
          * @param parent
          * @return 
          */
         public static <T> List<T> loadServicePlugins(Class<T> type, ClassLoader parent) {
-             ServiceLoader<T> loadedTypes = ServiceLoader.load(type, parent);
+            StartupProfiler.Phase phase = StartupProfiler.start("load services " + type.getSimpleName());
+            try{
+                return loadServices(type, parent);
+            }finally{
+                phase.end();
+            }
+        }
+        
+        private static <T> List<T> loadServices(Class<T> type, ClassLoader parent) {
+            ClassLoader cl = (parent != null) ? parent : ClassLoader.getSystemClassLoader();
+            ServiceIndex index = getServiceIndex();
+            if(index != null){
+                try{
+                    List<String> providers = index.findProviders(type, cl);
+                    index.save();
+                    return instantiateProviders(type, providers, cl);
+                }catch(IOException ex){
+                    log.log(Level.FINE, "Service index unavailable, using ServiceLoader.", ex);
+                }
+            }
+            
+             ServiceLoader<T> loadedTypes = ServiceLoader.load(type, cl);
              List<T> result = new ArrayList<T>();
              for(T t : loadedTypes){
                  result.add(t);
              }
              return result;
         }
+        
+        /**
+         * Returns the persistent service index used by loadServicePlugins().
+         * @return the index or null if it is disabled.
+         */
+        public static synchronized ServiceIndex getServiceIndex() {
+            if(index == null && ServiceIndex.isEnabled()){
+                index = ServiceIndex.createInstance();
+            }
+            return index;
+        }
+        
+        private static <T> List<T> instantiateProviders(Class<T> type, List<String> providers, ClassLoader cl){
+            List<T> result = new ArrayList<T>(providers.size());
+            for(String name : providers){
+                T t = instantiateProvider(type, name, cl);
+                if(t != null){
+                    result.add(t);
+                }
+            }
+            return result;
+        }
+        
+        /**
+         * Creates an instance of a single provider class.
+         * @return the instance or null if it cannot be loaded.
+         */
+        static <T> T instantiateProvider(Class<T> type, String name, ClassLoader cl){
+            try{
+                Class<?> c = Class.forName(name, false, cl);
+                if(!type.isAssignableFrom(c)){
+                    return null; // declared under another type's service file
+                }
+                return type.cast(c.getDeclaredConstructor().newInstance());
+            }catch(InvocationTargetException ex){
+                log.log(Level.WARNING, "Unable to instantiate provider " + name, ex.getCause());
+            }catch(Exception ex){
+                log.log(Level.WARNING, "Unable to instantiate provider " + name, ex);
+            }catch(LinkageError err){
+                log.log(Level.WARNING, "Unable to load provider " + name, err);
+            }
+            return null;
+        }
 
         /**
          * Filters the provided list using the specified type.
@@ -93,6 +164,10 @@ public final class Clamshell {
         public static File getPluginsDir() {
             return new File(Configurator.VALUE_CONFIG_PLUGINSDIR);
         }
+        
+        public static File getCommandsDir() {
+            return new File(VALUE_COMMANDS_DIR);
+        }
     }
     
     /**
@@ -105,47 +180,38 @@ public final class Clamshell {
          * search directories.
          * @param searchPaths directory or files to add to class loaer.  If DIR 
          * search content of the dir that maches expression.  if FILE and matches
-         * expression, add to classloader.
+         * expression, add to classloader.  Duplicate jars are only added once
+         * (see JarDiscovery).
          * @param filePattern regex pattern used to match filename.
          * @param parent parent class loader
          * @return
          * @throws Exception 
          */
         public static ClassLoader getClassLoaderFromFiles(final File[] filePaths, final Pattern filePattern, final ClassLoader parent) throws Exception {
-            List<URL> classpath = new ArrayList<URL>();
-            
-            for(int i = 0; i < filePaths.length; i++){
-                File filePath = filePaths[i].getCanonicalFile();
-                
-                // if file is FILE and matches search, add to classloader
-                if (filePath.isFile() && 
-                    filePattern.matcher(filePath.getName()).matches()) {
-                    classpath.add(filePath.toURI().toURL());
-                    continue;
-                }                
-                
-                // if directory, search all matching files to add to classloader
-                if(filePath.isDirectory()){
-                    File[] files = filePath.listFiles(new FileFilter() {
-                        @Override
-                        public boolean accept(File file) {
-                            return filePattern.matcher(file.getName()).matches();
-                        }
-                    });
-
-                    for (int j = 0; j < files.length; j++) {
-                        URL url = files[j].toURI().toURL();
-                        classpath.add(url);
-                    }
-                }
+            List<URL> classpath = JarDiscovery.createInstance(filePattern).discover(filePaths);
+            return new URLClassLoader(classpath.toArray(new URL[classpath.size()]), parent);
+        }
+        
+        
+        /**
+         * Creates a single FlatClassLoader for the jars found in the search
+         * paths and the specified class directories.
+         * @param filePaths directories to search for jars (or jar files).
+         * @param classDirs directories of class files.
+         * @param parent parent class loader
+         * @return ClassLoader
+         * @throws Exception 
+         */
+        public static ClassLoader getFlatClassLoader(File[] filePaths, File[] classDirs, ClassLoader parent) throws Exception {
+            List<URL> jars = JarDiscovery.createInstance(Configurator.JARFILE_PATTERN).discover(filePaths);
+            ServiceIndex index = Runtime.getServiceIndex();
+            ClassLoader cl = FlatClassLoader.createInstance(jars, Arrays.asList(classDirs), index, parent);
+            if(index != null){
+                index.save();
             }
-
-            URL[] urls = new URL[classpath.size()];
-            ClassLoader cl = new URLClassLoader(classpath.toArray(urls), parent);
             return cl;
         }
         
-        
         /**
          * Creates classloader from directories.  The specified directory must
          * contain class files that will be searched by the ClassLoader
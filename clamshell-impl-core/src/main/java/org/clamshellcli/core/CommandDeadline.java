@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An execution deadline for the command running on the current thread.
+ * <p>
+ * When the deadline passes before finish() is called, the expiry action
+ * runs (i.e. reporting the timeout and cancelling the invocation's
+ * CancellationToken) and the thread is interrupted.  finish() and expiry
+ * are mutually exclusive, so a command that completes in time is never
+ * interrupted afterwards.  All deadlines share one timer thread.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class CommandDeadline {
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cli-deadline");
+                t.setDaemon(true);
+                return t;
+            }
+        }
+    );
+
+    private final Thread runner = Thread.currentThread();
+    private final long started = System.currentTimeMillis();
+    private final long timeout;
+    private final Runnable onExpire;
+    private ScheduledFuture<?> task;
+    private boolean done;
+    private boolean expired;
+
+    private CommandDeadline(long timeout, Runnable onExpire){
+        this.timeout = timeout;
+        this.onExpire = onExpire;
+    }
+
+    /**
+     * Starts a deadline for the current thread.
+     * @param timeout time allowed, in milliseconds (greater than 0).
+     * @param onExpire action run when the deadline passes, may be null.
+     * @return CommandDeadline
+     */
+    public static CommandDeadline start(long timeout, Runnable onExpire) {
+        if(timeout <= 0){
+            throw new IllegalArgumentException("Timeout must be greater than 0.");
+        }
+        final CommandDeadline deadline = new CommandDeadline(timeout, onExpire);
+        ScheduledFuture<?> task = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deadline.expire();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        synchronized(deadline){
+            deadline.task = task;
+        }
+        return deadline;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the time since the deadline was started, in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - started;
+    }
+
+    public synchronized boolean isExpired() {
+        return expired;
+    }
+
+    private synchronized void expire() {
+        if(done) return;
+        expired = true;
+        try{
+            if(onExpire != null) onExpire.run();
+        }finally{
+            runner.interrupt();
+        }
+    }
+
+    /**
+     * Ends the deadline; must be called by the thread that started it.  If
+     * the deadline expired, the interrupt it caused is cleared.
+     * @return true if the command finished in time.
+     */
+    public boolean finish() {
+        synchronized(this){
+            done = true;
+            if(task != null) task.cancel(false);
+            if(!expired) return true;
+        }
+        Thread.interrupted();
+        return false;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import org.clamshellcli.api.CliException;
+
+/**
+ * A command line split into tokens.
+ * <p>
+ * Tokens are separated by whitespace.  Text in single quotes is taken as
+ * is; in double quotes a backslash escapes " and \ only; outside quotes a
+ * backslash escapes a quote, whitespace or another backslash.  Any other
+ * backslash is kept, so a path such as C:\tmp passes through.  Quoted and
+ * unquoted parts next to each other form one token, so a"b c" is the
+ * token "ab c".
+ * </p>
+ * <p>
+ * A final, unquoted "&amp;" token after the command marks the line as a
+ * background request (see isBackground()); it is not part of the tokens.
+ * </p>
+ * <p>
+ * The line is scanned once.  Tokens are CharSequence views: a token
+ * without quotes or escapes is a view over the line itself, the others
+ * are views over one buffer shared by all tokens of the line.  Token 0
+ * is the command name, the others are its arguments.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class CommandLine {
+    private static final int[] NO_BOUNDS = new int[0];
+    private static final CharSequence[] NO_TOKENS = new CharSequence[0];
+    private static final int INITIAL_TOKENS = 8;
+
+    private final CharSequence line;
+    private final int[] bounds; // start, end pairs in the line
+    private final CharSequence[] tokens;
+    private final boolean background;
+
+    /**
+     * A range of characters of a line or of the decoded buffer.
+     */
+    private static final class Token implements CharSequence {
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+
+        Token(CharSequence source, int start, int end){
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if(index < 0 || index >= end - start){
+                throw new IndexOutOfBoundsException("Index " + index + ", length " + (end - start));
+            }
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if(from < 0 || to > end - start || from > to){
+                throw new IndexOutOfBoundsException("Range " + from + "-" + to + ", length " + (end - start));
+            }
+            return new Token(source, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return source.subSequence(start, end).toString();
+        }
+    }
+
+    private CommandLine(CharSequence line, int[] bounds, CharSequence[] tokens, boolean background){
+        this.line = line;
+        this.bounds = bounds;
+        this.tokens = tokens;
+        this.background = background;
+    }
+
+    /**
+     * Splits the line into tokens.
+     * @param line the input line, may be null.
+     * @return CommandLine
+     * @throws CliException if a quote is not closed.
+     */
+    public static CommandLine parse(CharSequence line) {
+        if(line == null) return new CommandLine("", NO_BOUNDS, NO_TOKENS, false);
+
+        // per token: raw start, raw end, decoded start, decoded end (-1 if plain)
+        int[] info = NO_BOUNDS;
+        int count = 0;
+        StringBuilder decoded = null;
+        int length = line.length();
+        int i = 0;
+        while(i < length){
+            if(isSpace(line.charAt(i))){
+                i++;
+                continue;
+            }
+            int start = i;
+            int decodedStart = -1;
+            char quote = 0;
+            int quoteAt = -1;
+            while(i < length){
+                char c = line.charAt(i);
+                if(quote == 0 && isSpace(c)) break;
+
+                boolean special = (quote == 0) ? (isEscape(line, i) || c == '\'' || c == '"') : true;
+                if(special && decodedStart < 0){
+                    // first quote/escape: the token no longer equals its raw text
+                    if(decoded == null) decoded = new StringBuilder();
+                    decodedStart = decoded.length();
+                    decoded.append(line, start, i);
+                }
+
+                if(quote == 0){
+                    if(c == '\'' || c == '"'){
+                        quote = c;
+                        quoteAt = i;
+                    }else if(isEscape(line, i)){
+                        decoded.append(line.charAt(++i));
+                    }else if(decodedStart >= 0){
+                        decoded.append(c);
+                    }
+                }else if(c == quote){
+                    quote = 0;
+                }else if(quote == '"' && c == '\\' && i + 1 < length
+                        && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')){
+                    decoded.append(line.charAt(++i));
+                }else{
+                    decoded.append(c);
+                }
+                i++;
+            }
+            if(quote != 0){
+                throw new CliException(
+                    String.format("Unterminated quote (%c) at position %d.", quote, quoteAt)
+                );
+            }
+
+            if((count + 1) * 4 > info.length){
+                int[] grown = new int[Math.max(INITIAL_TOKENS * 4, info.length * 2)];
+                System.arraycopy(info, 0, grown, 0, info.length);
+                info = grown;
+            }
+            info[count * 4] = start;
+            info[count * 4 + 1] = i;
+            info[count * 4 + 2] = decodedStart;
+            info[count * 4 + 3] = (decodedStart >= 0) ? decoded.length() : -1;
+            count++;
+        }
+
+        // trailing "&": run in the background
+        boolean background = false;
+        if(count > 1 && info[(count - 1) * 4 + 2] < 0
+                && info[(count - 1) * 4 + 1] - info[(count - 1) * 4] == 1
+                && line.charAt(info[(count - 1) * 4]) == '&'){
+            background = true;
+            count--;
+        }
+
+        String decodedChars = (decoded != null) ? decoded.toString() : null;
+        int[] bounds = new int[count * 2];
+        CharSequence[] tokens = new CharSequence[count];
+        for(int t = 0; t < count; t++){
+            bounds[t * 2] = info[t * 4];
+            bounds[t * 2 + 1] = info[t * 4 + 1];
+            tokens[t] = (info[t * 4 + 2] < 0)
+                ? new Token(line, info[t * 4], info[t * 4 + 1])
+                : new Token(decodedChars, info[t * 4 + 2], info[t * 4 + 3]);
+        }
+        return new CommandLine(line, bounds, tokens, background);
+    }
+
+    /**
+     * Returns true if the character at i is a backslash that escapes the
+     * next one (outside quotes): a quote, whitespace or a backslash.
+     */
+    private static boolean isEscape(CharSequence line, int i) {
+        if(line.charAt(i) != '\\' || i + 1 >= line.length()) return false;
+        char next = line.charAt(i + 1);
+        return next == '\\' || next == '\'' || next == '"' || isSpace(next);
+    }
+
+    /**
+     * Same characters as the regex class \s, plus the other control
+     * characters that String.trim() drops.
+     */
+    private static boolean isSpace(char c) {
+        return c <= ' ';
+    }
+
+    public CharSequence getLine() {
+        return line;
+    }
+
+    /**
+     * Returns true if the line ends with an unquoted "&amp;" token.
+     */
+    public boolean isBackground() {
+        return background;
+    }
+
+    public boolean isEmpty() {
+        return tokens.length == 0;
+    }
+
+    public int getTokenCount() {
+        return tokens.length;
+    }
+
+    /**
+     * Offset of the first character of the token in the line (the opening
+     * quote for a quoted token).
+     */
+    public int getStart(int token) {
+        checkIndex(token);
+        return bounds[token * 2];
+    }
+
+    /**
+     * Offset after the last character of the token in the line.
+     */
+    public int getEnd(int token) {
+        checkIndex(token);
+        return bounds[token * 2 + 1];
+    }
+
+    /**
+     * Returns the token, with quotes and escapes resolved.
+     * @param token index of the token, 0 is the command name.
+     * @return a view of the token's characters.
+     */
+    public CharSequence getToken(int token) {
+        checkIndex(token);
+        return tokens[token];
+    }
+
+    /**
+     * Returns the arguments (all tokens but the first) as a read-only list
+     * of views; nothing is copied.
+     * @return the arguments, empty if there are none.
+     */
+    public List<CharSequence> getArgumentList() {
+        if(tokens.length < 2) return Collections.emptyList();
+        return new AbstractList<CharSequence>() {
+            @Override
+            public CharSequence get(int index) {
+                if(index < 0 || index >= tokens.length - 1){
+                    throw new IndexOutOfBoundsException("Index " + index + ", size " + (tokens.length - 1));
+                }
+                return tokens[index + 1];
+            }
+
+            @Override
+            public int size() {
+                return tokens.length - 1;
+            }
+        };
+    }
+
+    /**
+     * Returns the arguments as Strings, for commands that read
+     * Context.KEY_COMMAND_LINE_ARGS from a context that does not make them
+     * from the argument list (InvocationContext does, on first read).
+     * @return a new array of arguments or null if there are none.
+     */
+    public String[] getArguments() {
+        if(tokens.length < 2) return null;
+        String[] args = new String[tokens.length - 1];
+        for(int i = 1; i < tokens.length; i++){
+            args[i - 1] = tokens[i].toString();
+        }
+        return args;
+    }
+
+    private void checkIndex(int token) {
+        if(token < 0 || token >= tokens.length){
+            throw new IndexOutOfBoundsException("Token " + token + ", count " + tokens.length);
+        }
+    }
+}
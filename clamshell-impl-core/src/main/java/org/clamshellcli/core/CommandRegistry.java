@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+
+/**
+ * Immutable index of the loaded commands.
+ * <p>
+ * Commands can be looked up by name, by namespace and by qualified name
+ * (namespace:name, i.e. "syscmd:help").  Each command's descriptor is read
+ * once, when the registry is built.  When two commands share a name the
+ * first one registered owns the plain name; both remain reachable by their
+ * qualified names.
+ * </p>
+ * <p>
+ * ShellContext builds a new registry whenever Context.KEY_COMMANDS is set
+ * and keeps it with the command list; the registry's name map is what is
+ * stored under Context.KEY_COMMAND_MAP.  Readers always see a consistent
+ * set of commands.  Use of(Context) to reach the registry of a context.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class CommandRegistry {
+    private static final Logger log = Logger.getLogger(CommandRegistry.class.getName());
+
+    /**
+     * Separates the namespace from the name in a qualified command name.
+     */
+    public static final char NAMESPACE_SEPARATOR = ':';
+
+    private static final CommandRegistry EMPTY = new CommandRegistry(Collections.<Command>emptyList());
+
+    private final List<Command> commands;
+    private final Map<String, Command> byName;
+    private final Map<String, Command> byQualifiedName;
+    private final Map<String, List<Command>> byNamespace;
+    private final CommandTable table;
+
+    private CommandRegistry(List<Command> cmds){
+        commands = Collections.unmodifiableList(new ArrayList<Command>(cmds));
+        Map<String, Command> names = new LinkedHashMap<String, Command>();
+        Map<String, Command> qualified = new LinkedHashMap<String, Command>();
+        Map<String, List<Command>> namespaces = new LinkedHashMap<String, List<Command>>();
+
+        for(Command cmd : commands){
+            Command.Descriptor desc = cmd.getDescriptor();
+            if(desc == null || desc.getName() == null) continue;
+            String name = desc.getName();
+            String ns = desc.getNamespace();
+
+            if(!names.containsKey(name)){
+                names.put(name, cmd);
+            }else{
+                log.log(Level.FINE, "Command name {0} is used more than once, use {1} to reach {2}",
+                    new Object[]{name, qualify(ns, name), cmd.getClass().getName()});
+            }
+            if(ns != null){
+                String qname = qualify(ns, name);
+                if(!qualified.containsKey(qname)){
+                    qualified.put(qname, cmd);
+                }
+                List<Command> list = namespaces.get(ns);
+                if(list == null){
+                    list = new ArrayList<Command>();
+                    namespaces.put(ns, list);
+                }
+                list.add(cmd);
+            }
+        }
+
+        for(Map.Entry<String, List<Command>> e : namespaces.entrySet()){
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+        }
+        byName = Collections.unmodifiableMap(names);
+        byQualifiedName = Collections.unmodifiableMap(qualified);
+        byNamespace = Collections.unmodifiableMap(namespaces);
+
+        Map<String, Command> lookup = new HashMap<String, Command>(qualified);
+        lookup.putAll(names);
+        table = CommandTable.createInstance(lookup);
+    }
+
+    /**
+     * Builds a registry of the specified commands.
+     * @param commands the commands, in load order, may be null.
+     * @return CommandRegistry
+     */
+    public static CommandRegistry createInstance(List<Command> commands) {
+        return (commands != null && !commands.isEmpty()) ? new CommandRegistry(commands) : EMPTY;
+    }
+
+    /**
+     * Returns the registry of the commands of a context: the one kept by a
+     * ShellContext (also behind an InvocationContext), or a registry built
+     * from Context.getCommands() for other contexts.
+     * @param ctx
+     * @return CommandRegistry, never null.
+     */
+    public static CommandRegistry of(Context ctx) {
+        while(ctx instanceof InvocationContext){
+            ctx = ((InvocationContext) ctx).getParent();
+        }
+        if(ctx instanceof ShellContext){
+            return ((ShellContext) ctx).getCommandRegistry();
+        }
+        return createInstance(ctx.getCommands());
+    }
+
+    /**
+     * Returns the qualified name of a command (namespace:name).
+     */
+    public static String qualify(String namespace, String name) {
+        return namespace + NAMESPACE_SEPARATOR + name;
+    }
+
+    /**
+     * Returns all commands, in load order.
+     */
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Looks up a command by name or by qualified name (namespace:name).
+     * @param name
+     * @return the Command or null if none is found.
+     */
+    public Command getCommand(String name) {
+        return table.get(name);
+    }
+
+    /**
+     * Looks up the command named by chars[start, end), by name or by
+     * qualified name, without creating a String.
+     */
+    public Command getCommand(CharSequence chars, int start, int end) {
+        return table.get(chars, start, end);
+    }
+
+    /**
+     * Returns the commands of a namespace, in load order.
+     * @param namespace
+     * @return the commands, empty if the namespace is unknown.
+     */
+    public List<Command> getCommandsByNamespace(String namespace) {
+        List<Command> result = byNamespace.get(namespace);
+        return (result != null) ? result : Collections.<Command>emptyList();
+    }
+
+    public Set<String> getNamespaces() {
+        return byNamespace.keySet();
+    }
+
+    /**
+     * Returns the commands keyed by Command.Descriptor.getName().
+     */
+    public Map<String, Command> getCommandMap() {
+        return byName;
+    }
+
+    /**
+     * Returns the commands keyed by their qualified name.
+     */
+    public Map<String, Command> getQualifiedCommandMap() {
+        return byQualifiedName;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.util.Map;
+import org.clamshellcli.api.Command;
+
+/**
+ * Immutable lookup table of commands by name.
+ * <p>
+ * Names are looked up directly from a range of characters of the input
+ * line (see CommandLine), so dispatching does not create a String for the
+ * command name.  The table uses open addressing with linear probing; it is
+ * built once when the commands are loaded and is safe to read from any
+ * thread.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class CommandTable {
+    private final String[] names;
+    private final Command[] commands;
+    private final int mask;
+    private final int size;
+
+    private CommandTable(Map<String, Command> map){
+        int capacity = 2;
+        while(capacity < map.size() * 2){
+            capacity <<= 1;
+        }
+        names = new String[capacity];
+        commands = new Command[capacity];
+        mask = capacity - 1;
+
+        int count = 0;
+        for(Map.Entry<String, Command> e : map.entrySet()){
+            if(e.getKey() == null || e.getValue() == null) continue;
+            int slot = spread(e.getKey().hashCode()) & mask;
+            while(names[slot] != null){
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = e.getKey();
+            commands[slot] = e.getValue();
+            count++;
+        }
+        size = count;
+    }
+
+    /**
+     * Creates a table from a map of command name to Command.
+     * @param commands
+     * @return CommandTable
+     */
+    public static CommandTable createInstance(Map<String, Command> commands) {
+        return new CommandTable(commands);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Command get(String name) {
+        return (name != null) ? get(name, 0, name.length()) : null;
+    }
+
+    /**
+     * Looks up the command named by chars[start, end).
+     * @param chars characters holding the name, i.e. the input line.
+     * @param start offset of the first char of the name.
+     * @param end offset after the last char of the name.
+     * @return the Command or null if none has that name.
+     */
+    public Command get(CharSequence chars, int start, int end) {
+        // same hash as String.hashCode() without creating the String
+        int h = 0;
+        for(int i = start; i < end; i++){
+            h = 31 * h + chars.charAt(i);
+        }
+        int length = end - start;
+        for(int slot = spread(h) & mask; names[slot] != null; slot = (slot + 1) & mask){
+            if(matches(names[slot], chars, start, length)){
+                return commands[slot];
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, CharSequence chars, int start, int length) {
+        if(name.length() != length) return false;
+        for(int i = 0; i < length; i++){
+            if(name.charAt(i) != chars.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
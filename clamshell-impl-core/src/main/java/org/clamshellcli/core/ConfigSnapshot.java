@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.clamshellcli.api.Configurator;
+
+/**
+ * Binary cache of a parsed config file.
+ * <p>
+ * The snapshot stores the SHA-1 of the config file content it was built
+ * from.  It is only used when that hash matches the current file, so any
+ * edit to the file causes a reparse (and a new snapshot).  Each config file
+ * gets its own snapshot under ~/.cli, named after a hash of its path.
+ * </p>
+ * @author vladimir.vivien
+ */
+class ConfigSnapshot {
+    private static final Logger log = Logger.getLogger(ConfigSnapshot.class.getName());
+    private static final int MAGIC = 0x434c4943; // "CLIC"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * System property used to turn off the snapshot (set to "false").
+     */
+    static final String KEY_SNAPSHOT_ENABLED = "cli.configSnapshot";
+
+    private final File snapshotFile;
+
+    private ConfigSnapshot(File file){
+        snapshotFile = file;
+    }
+
+    static ConfigSnapshot createInstance(File file){
+        return new ConfigSnapshot(file);
+    }
+
+    /**
+     * Creates the snapshot used for the specified config file.
+     */
+    static ConfigSnapshot forConfigFile(File configFile){
+        String name = FileUtil.sha1(configFile.getAbsolutePath().getBytes()).substring(0, 16);
+        return new ConfigSnapshot(new File(
+            new File(Configurator.VALUE_USERHOME, ".cli"), "config-" + name + ".snapshot")
+        );
+    }
+
+    static boolean isEnabled(){
+        return !"false".equalsIgnoreCase(System.getProperty(KEY_SNAPSHOT_ENABLED));
+    }
+
+    File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Reads the snapshot if it was built from content with the given hash.
+     * @return the configuration, or null if there is no usable snapshot.
+     */
+    ShellConfiguration load(String contentHash) {
+        if(!snapshotFile.isFile()) return null;
+        DataInputStream in = null;
+        try{
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+            if(in.readInt() != MAGIC || in.readInt() != SNAPSHOT_VERSION) return null;
+            if(!contentHash.equals(in.readUTF())) return null;
+            return ShellConfiguration.readFrom(in);
+        }catch(IOException ex){
+            log.log(Level.FINE, "Unable to read config snapshot " + snapshotFile, ex);
+            return null;
+        }finally{
+            FileUtil.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the snapshot, replacing any previous one.  Failures are logged
+     * and otherwise ignored; the snapshot is only a cache.
+     */
+    void save(final String contentHash, final ShellConfiguration config) {
+        try{
+            FileUtil.writeAtomically(snapshotFile, new FileUtil.Content() {
+                @Override
+                public void writeTo(OutputStream stream) throws IOException {
+                    DataOutputStream out = new DataOutputStream(stream);
+                    out.writeInt(MAGIC);
+                    out.writeInt(SNAPSHOT_VERSION);
+                    out.writeUTF(contentHash);
+                    config.writeTo(out);
+                    out.flush();
+                }
+            });
+        }catch(IOException ex){
+            log.log(Level.FINE, "Unable to save config snapshot " + snapshotFile, ex);
+        }
+    }
+}
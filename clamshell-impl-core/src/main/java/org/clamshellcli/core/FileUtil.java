@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * File helpers shared by the caches the shell and the launcher keep on
+ * disk (service index, config snapshot, jar hashes, CDS fingerprint):
+ * SHA-1 digests as hex strings, and files replaced with write-then-rename
+ * so a concurrent launch never reads a partial file.
+ * @author vladimir.vivien
+ */
+public final class FileUtil {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Writes the content of a file.
+     */
+    public static interface Content {
+        public void writeTo(OutputStream out) throws IOException;
+    }
+
+    private FileUtil(){}
+
+    /**
+     * Returns a new SHA-1 MessageDigest.
+     */
+    public static MessageDigest sha1() {
+        try{
+            return MessageDigest.getInstance("SHA-1");
+        }catch(NoSuchAlgorithmException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the bytes, as a hex string.
+     */
+    public static String sha1(byte[] content) {
+        return toHex(sha1().digest(content));
+    }
+
+    /**
+     * Returns the SHA-1 of what is left in the stream, as a hex string.
+     * The stream is not closed.
+     */
+    public static String sha1(InputStream in) throws IOException {
+        MessageDigest digest = sha1();
+        byte[] buf = new byte[BUFFER_SIZE];
+        int read;
+        while((read = in.read(buf)) != -1){
+            digest.update(buf, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the bytes as a lower-case hex string.
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++){
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Writes a temporary file next to the target, then renames it over the
+     * target, so concurrent launches never read a partial file.  The
+     * target's directory is created if needed.
+     * @param file the file to write.
+     * @param content writes the content; the stream is buffered and closed
+     * by this method.
+     */
+    public static void writeAtomically(File file, Content content) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if(dir != null && !dir.exists()){
+            dir.mkdirs();
+        }
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+        OutputStream out = null;
+        try{
+            out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            content.writeTo(out);
+            out.close();
+            out = null;
+            replace(tmpFile, file);
+        }finally{
+            closeQuietly(out);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Renames source to target, replacing target.  On platforms where a
+     * rename does not replace an existing file, the target is deleted
+     * first.
+     */
+    public static void replace(File source, File target) throws IOException {
+        if(!source.renameTo(target)){
+            target.delete();
+            if(!source.renameTo(target)){
+                throw new IOException("Unable to rename " + source + " to " + target);
+            }
+        }
+    }
+
+    /**
+     * Closes c, ignoring errors; c may be null.
+     */
+    public static void closeQuietly(Closeable c) {
+        if(c == null) return;
+        try{
+            c.close();
+        }catch(IOException ex){
+            // nothing to do
+        }
+    }
+}
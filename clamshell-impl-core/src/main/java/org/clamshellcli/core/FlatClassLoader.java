@@ -0,0 +1,384 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single class loader for the jars of lib/, plugins/ and commands/ (and
+ * the class directory commands/classes).
+ * <p>
+ * The loader keeps an index of package (resource directory) to the jars
+ * and directories that hold it.  A class or resource lookup goes straight
+ * to the jars listed for its package instead of searching every URL, and
+ * a lookup for a package no jar holds fails without opening any of them.
+ * Jar package lists come from the ServiceIndex, so unchanged jars are not
+ * opened to build the index.
+ * </p>
+ * <p>
+ * This mode is opt-in (-Dcli.flatClassLoader=true).  All jars share one
+ * name space, so it is only suitable when they do not carry conflicting
+ * versions of the same classes.  Classes from signed jars are defined
+ * without their signers.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class FlatClassLoader extends URLClassLoader {
+    private static final Logger log = Logger.getLogger(FlatClassLoader.class.getName());
+    private static final String CLASS_EXT = ".class";
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * System property used to turn on the flat class loader (set to "true").
+     */
+    public static final String KEY_FLAT_CLASSLOADER = "cli.flatClassLoader";
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final Map<String, Source[]> packages;
+    private final List<Source> sources;
+    private final Set<String> definedPackages =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * A jar file or class directory.
+     */
+    private static abstract class Source {
+        final URL url;
+        final CodeSource codeSource;
+
+        Source(URL url){
+            this.url = url;
+            this.codeSource = new CodeSource(url, (CodeSigner[]) null);
+        }
+
+        abstract byte[] read(String path) throws IOException;
+        abstract URL find(String path) throws IOException;
+        abstract Manifest getManifest() throws IOException;
+        void close() throws IOException {}
+    }
+
+    private static class JarSource extends Source {
+        private final File file;
+        private JarFile jar;
+
+        JarSource(File file, URL url){
+            super(url);
+            this.file = file;
+        }
+
+        private synchronized JarFile jar() throws IOException {
+            if(jar == null){
+                jar = new JarFile(file);
+            }
+            return jar;
+        }
+
+        @Override
+        byte[] read(String path) throws IOException {
+            JarFile jf = jar();
+            JarEntry entry = jf.getJarEntry(path);
+            return (entry != null) ? readFully(jf.getInputStream(entry)) : null;
+        }
+
+        @Override
+        URL find(String path) throws IOException {
+            return (jar().getJarEntry(path) != null) ? new URL("jar:" + url + "!/" + path) : null;
+        }
+
+        @Override
+        Manifest getManifest() throws IOException {
+            return jar().getManifest();
+        }
+
+        @Override
+        synchronized void close() throws IOException {
+            if(jar != null){
+                jar.close();
+                jar = null;
+            }
+        }
+    }
+
+    private static class DirSource extends Source {
+        private final File dir;
+
+        DirSource(File dir, URL url){
+            super(url);
+            this.dir = dir;
+        }
+
+        @Override
+        byte[] read(String path) throws IOException {
+            File f = new File(dir, path);
+            return f.isFile() ? readFully(new FileInputStream(f)) : null;
+        }
+
+        @Override
+        URL find(String path) throws IOException {
+            File f = new File(dir, path);
+            return f.exists() ? f.toURI().toURL() : null;
+        }
+
+        @Override
+        Manifest getManifest() {
+            return null;
+        }
+    }
+
+    private FlatClassLoader(URL[] urls, List<Source> sources, Map<String, Source[]> packages, ClassLoader parent){
+        super(urls, parent);
+        this.sources = sources;
+        this.packages = packages;
+    }
+
+    /**
+     * Returns true if the flat class loader was turned on with
+     * -Dcli.flatClassLoader=true.
+     * @return
+     */
+    public static boolean isEnabled(){
+        return Boolean.getBoolean(KEY_FLAT_CLASSLOADER);
+    }
+
+    /**
+     * Creates a loader for the specified jars and class directories.
+     * @param jars jar files, in search order.
+     * @param dirs class directories, searched after the jars.
+     * @param index used to read the package list of each jar, may be null.
+     * @param parent parent class loader
+     * @return FlatClassLoader
+     * @throws IOException if a jar cannot be read.
+     */
+    public static FlatClassLoader createInstance(List<URL> jars, List<File> dirs, ServiceIndex index, ClassLoader parent) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        List<Source> sources = new ArrayList<Source>();
+        Map<String, List<Source>> byPackage = new HashMap<String, List<Source>>();
+
+        for(URL url : jars){
+            File file = toFile(url);
+            Source source = new JarSource(file, url);
+            List<String> pkgs = (index != null) ? index.getPackages(file) : scanJar(file);
+            for(String pkg : pkgs){
+                addSource(byPackage, pkg, source);
+            }
+            urls.add(url);
+            sources.add(source);
+        }
+
+        for(File dir : dirs){
+            if(!dir.isDirectory()) continue;
+            URL url = dir.getCanonicalFile().toURI().toURL();
+            Source source = new DirSource(dir.getCanonicalFile(), url);
+            for(String pkg : scanDir(dir)){
+                addSource(byPackage, pkg, source);
+            }
+            urls.add(url);
+            sources.add(source);
+        }
+
+        Map<String, Source[]> packages = new HashMap<String, Source[]>(byPackage.size() * 2);
+        for(Map.Entry<String, List<Source>> e : byPackage.entrySet()){
+            packages.put(e.getKey(), e.getValue().toArray(new Source[e.getValue().size()]));
+        }
+        log.log(Level.FINE, "Flat class loader: {0} source(s), {1} package(s)",
+            new Object[]{sources.size(), packages.size()});
+        return new FlatClassLoader(urls.toArray(new URL[urls.size()]), sources, packages, parent);
+    }
+
+    /**
+     * Returns the number of indexed packages.
+     */
+    public int getPackageCount() {
+        return packages.size();
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(CLASS_EXT);
+        Source[] candidates = packages.get(directoryOf(path));
+        if(candidates != null){
+            for(Source source : candidates){
+                byte[] bytes;
+                try{
+                    bytes = source.read(path);
+                }catch(IOException ex){
+                    throw new ClassNotFoundException(name, ex);
+                }
+                if(bytes != null){
+                    definePackageFor(name, source);
+                    return defineClass(name, bytes, 0, bytes.length, source.codeSource);
+                }
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        if(name.endsWith("/")) return super.findResource(name);
+        Source[] candidates = packages.get(directoryOf(name));
+        if(candidates == null) return null;
+        for(Source source : candidates){
+            try{
+                URL url = source.find(name);
+                if(url != null) return url;
+            }catch(IOException ex){
+                log.log(Level.FINE, "Unable to read " + source.url, ex);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if(name.endsWith("/")) return super.findResources(name);
+        Source[] candidates = packages.get(directoryOf(name));
+        if(candidates == null) return Collections.enumeration(Collections.<URL>emptyList());
+        List<URL> result = new ArrayList<URL>(candidates.length);
+        for(Source source : candidates){
+            URL url = source.find(name);
+            if(url != null) result.add(url);
+        }
+        return Collections.enumeration(result);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(Source source : sources){
+            source.close();
+        }
+        super.close();
+    }
+
+    private void definePackageFor(String className, Source source) {
+        int dot = className.lastIndexOf('.');
+        if(dot < 0) return;
+        String pkgName = className.substring(0, dot);
+        if(!definedPackages.add(pkgName)) return;
+        try{
+            Manifest manifest = source.getManifest();
+            if(manifest != null){
+                definePackage(pkgName, manifest, source.url);
+            }else{
+                definePackage(pkgName, null, null, null, null, null, null, null);
+            }
+        }catch(IllegalArgumentException ex){
+            // already defined, by a parent loader or by another thread
+        }catch(IOException ex){
+            definedPackages.remove(pkgName);
+            log.log(Level.FINE, "Unable to read manifest of " + source.url, ex);
+        }
+    }
+
+    private static void addSource(Map<String, List<Source>> byPackage, String pkg, Source source) {
+        List<Source> list = byPackage.get(pkg);
+        if(list == null){
+            list = new ArrayList<Source>(1);
+            byPackage.put(pkg, list);
+        }
+        list.add(source);
+    }
+
+    private static String directoryOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return (slash > 0) ? path.substring(0, slash) : "";
+    }
+
+    private static List<String> scanJar(File file) throws IOException {
+        Set<String> result = new LinkedHashSet<String>();
+        JarFile jar = new JarFile(file);
+        try{
+            Enumeration<JarEntry> entries = jar.entries();
+            while(entries.hasMoreElements()){
+                JarEntry entry = entries.nextElement();
+                if(!entry.isDirectory()){
+                    result.add(directoryOf(entry.getName()));
+                }
+            }
+        }finally{
+            jar.close();
+        }
+        return new ArrayList<String>(result);
+    }
+
+    private static List<String> scanDir(File dir) {
+        List<String> result = new ArrayList<String>();
+        scanDir(dir, "", result);
+        return result;
+    }
+
+    private static void scanDir(File dir, String path, List<String> result) {
+        File[] files = dir.listFiles();
+        if(files == null) return;
+        boolean hasFiles = false;
+        for(File f : files){
+            if(f.isDirectory()){
+                scanDir(f, path.isEmpty() ? f.getName() : path + "/" + f.getName(), result);
+            }else{
+                hasFiles = true;
+            }
+        }
+        if(hasFiles) result.add(path);
+    }
+
+    private static File toFile(URL url) {
+        try{
+            return new File(url.toURI());
+        }catch(URISyntaxException ex){
+            return new File(url.getPath());
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try{
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while((read = in.read(buf)) != -1){
+                out.write(buf, 0, read);
+            }
+            return out.toByteArray();
+        }finally{
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Handles SIGINT (Ctrl-C) in the JVM, instead of letting it shut the JVM
+ * down.
+ * <p>
+ * The handler is installed through sun.misc.Signal, which not every JVM
+ * has; the class is reached by reflection so the shell still loads (and
+ * Ctrl-C still exits) where it is missing.  The action runs on the JVM's
+ * signal thread and should return quickly.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class InterruptSignal {
+    private static final Logger log = Logger.getLogger(InterruptSignal.class.getName());
+    private static final String SIGNAL_NAME = "INT";
+
+    private final Object signal;
+    private final Object previous;
+    private final Method handle;
+
+    private InterruptSignal(Object signal, Object previous, Method handle){
+        this.signal = signal;
+        this.previous = previous;
+        this.handle = handle;
+    }
+
+    /**
+     * Routes SIGINT to the action.
+     * @param action run on each SIGINT.
+     * @return the installed handler, or null if the JVM does not allow it.
+     */
+    public static InterruptSignal install(final Runnable action) {
+        try{
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Object signal = signalClass.getConstructor(String.class).newInstance(SIGNAL_NAME);
+            Object handler = Proxy.newProxyInstance(
+                InterruptSignal.class.getClassLoader(), 
+                new Class<?>[]{handlerClass}, 
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if("handle".equals(method.getName())){
+                            action.run();
+                            return null;
+                        }
+                        // Object methods
+                        if("equals".equals(method.getName())) return proxy == args[0];
+                        if("hashCode".equals(method.getName())) return System.identityHashCode(proxy);
+                        return "InterruptSignal handler";
+                    }
+                }
+            );
+            Method handle = signalClass.getMethod("handle", signalClass, handlerClass);
+            Object previous = handle.invoke(null, signal, handler);
+            return new InterruptSignal(signal, previous, handle);
+        }catch(Exception ex){
+            log.log(Level.FINE, "Unable to handle SIGINT, Ctrl-C will stop the shell", ex);
+            return null;
+        }catch(LinkageError ex){
+            log.log(Level.FINE, "Unable to handle SIGINT, Ctrl-C will stop the shell", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Puts back the handler that was in place before install().
+     */
+    public void restore() {
+        try{
+            handle.invoke(null, signal, previous);
+        }catch(Exception ex){
+            log.log(Level.FINE, "Unable to restore SIGINT handler", ex);
+        }
+    }
+
+    /**
+     * Sends SIGINT to the JVM, for tests.
+     */
+    public void raise() {
+        try{
+            signal.getClass().getMethod("raise", signal.getClass()).invoke(null, signal);
+        }catch(Exception ex){
+            throw new IllegalStateException("Unable to raise SIGINT", ex);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Configurator;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.api.InputController;
+import org.clamshellcli.api.Plugin;
+import org.clamshellcli.api.Prompt;
+import org.clamshellcli.api.ResultChannel;
+import org.clamshellcli.api.Shell;
+import org.clamshellcli.api.TypedContext;
+import org.clamshellcli.api.SplashScreen;
+
+/**
+ * The context of a single command-line invocation.
+ * <p>
+ * The invocation keys (KEY_COMMAND_LINE_INPUT, KEY_COMMAND_LINE_ARGS,
+ * KEY_COMMAND_LINE_TOKENS, KEY_RESULT_CHANNEL and KEY_CANCELLATION_TOKEN)
+ * are held in this object; every other value is read from and written to
+ * the parent context.  Each input line gets its
+ * own InvocationContext, so two invocations in flight (or a command that
+ * runs another one) never see each other's arguments.  Creating one costs
+ * a single small object.
+ * </p>
+ * <p>
+ * When KEY_COMMAND_LINE_ARGS was not set, it is made from the token views
+ * of KEY_COMMAND_LINE_TOKENS the first time it is read, so a line whose
+ * command never reads it does not copy its arguments.  Setting the tokens
+ * drops arguments made from earlier tokens.
+ * </p>
+ * <p>
+ * An invocation can also be given its own IOConsole, i.e. a background job
+ * whose output is buffered instead of written to the terminal.  Such an
+ * invocation also keeps KEY_CONSOLE_COMPONENT writes to itself, so a
+ * command that swaps its console does not swap the shell's.
+ * </p>
+ * <p>
+ * The invocation values are volatile so an invocation can be handed to
+ * another thread; the parent is expected to be thread-safe (see
+ * ShellContext).
+ * </p>
+ * @author vladimir.vivien
+ */
+public class InvocationContext implements TypedContext {
+    private final Context parent;
+    private volatile String input;
+    private volatile String[] args;
+    private volatile List<CharSequence> tokens;
+    private volatile ResultChannel channel;
+    private volatile CancellationToken cancellation;
+    private final boolean ownConsole;
+    private volatile IOConsole console;
+
+    private InvocationContext(Context parent, String input, IOConsole console){
+        this.parent = parent;
+        this.input = input;
+        this.console = console;
+        this.ownConsole = (console != null);
+    }
+
+    /**
+     * Creates the context of an invocation.
+     * @param parent context that holds everything but the invocation values.
+     * @param input the command line being handled.
+     * @return InvocationContext
+     */
+    public static InvocationContext createInstance(Context parent, String input) {
+        return createInstance(parent, input, null);
+    }
+
+    /**
+     * Creates the context of an invocation that uses its own console.
+     * @param parent context that holds everything but the invocation values.
+     * @param input the command line being handled.
+     * @param console console of the invocation, null to use the parent's.
+     * @return InvocationContext
+     */
+    public static InvocationContext createInstance(Context parent, String input, IOConsole console) {
+        if(parent == null){
+            throw new IllegalArgumentException("Parent context cannot be null.");
+        }
+        return new InvocationContext(parent, input, console);
+    }
+
+    /**
+     * Returns true if the key is held by the invocation, not the parent.
+     */
+    public static boolean isInvocationKey(String key) {
+        return KEY_COMMAND_LINE_INPUT.equals(key)
+            || KEY_COMMAND_LINE_ARGS.equals(key)
+            || KEY_COMMAND_LINE_TOKENS.equals(key)
+            || KEY_RESULT_CHANNEL.equals(key)
+            || KEY_CANCELLATION_TOKEN.equals(key);
+    }
+
+    public Context getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the parent's values with this invocation's values on top.
+     */
+    @Override
+    public Map<String, ? extends Object> getValues() {
+        Map<String, Object> result = new HashMap<String, Object>(parent.getValues());
+        result.put(KEY_COMMAND_LINE_INPUT, input);
+        result.put(KEY_COMMAND_LINE_ARGS, getArgs());
+        result.put(KEY_COMMAND_LINE_TOKENS, tokens);
+        result.put(KEY_RESULT_CHANNEL, channel);
+        result.put(KEY_CANCELLATION_TOKEN, cancellation);
+        if(ownConsole) result.put(KEY_CONSOLE_COMPONENT, console);
+        return result;
+    }
+
+    @Override
+    public void putValues(Map<String, ? extends Object> values) {
+        for(Map.Entry<String, ? extends Object> e : values.entrySet()){
+            putValue(e.getKey(), e.getValue());
+        }
+    }
+
+    @Override
+    public void putValue(String key, Object val) {
+        if(KEY_COMMAND_LINE_INPUT.equals(key)){
+            input = (String) val;
+        }else if(KEY_COMMAND_LINE_ARGS.equals(key)){
+            args = (String[]) val;
+        }else if(KEY_COMMAND_LINE_TOKENS.equals(key)){
+            putTokens(ContextKey.COMMAND_LINE_TOKENS.cast(val));
+        }else if(KEY_RESULT_CHANNEL.equals(key)){
+            channel = (ResultChannel) val;
+        }else if(KEY_CANCELLATION_TOKEN.equals(key)){
+            cancellation = (CancellationToken) val;
+        }else if(ownConsole && KEY_CONSOLE_COMPONENT.equals(key)){
+            console = (IOConsole) val;
+        }else{
+            parent.putValue(key, val);
+        }
+    }
+
+    @Override
+    public Object getValue(String key) {
+        if(KEY_COMMAND_LINE_INPUT.equals(key)) return input;
+        if(KEY_COMMAND_LINE_ARGS.equals(key)) return getArgs();
+        if(KEY_COMMAND_LINE_TOKENS.equals(key)) return tokens;
+        if(KEY_RESULT_CHANNEL.equals(key)) return channel;
+        if(KEY_CANCELLATION_TOKEN.equals(key)) return cancellation;
+        if(ownConsole && KEY_CONSOLE_COMPONENT.equals(key)) return console;
+        return parent.getValue(key);
+    }
+
+    @Override
+    public <T> void putValue(ContextKey<T> key, T val) {
+        if(key == ContextKey.COMMAND_LINE_INPUT){
+            input = (String) val;
+        }else if(key == ContextKey.COMMAND_LINE_ARGS){
+            args = (String[]) val;
+        }else if(key == ContextKey.COMMAND_LINE_TOKENS){
+            putTokens(ContextKey.COMMAND_LINE_TOKENS.cast(val));
+        }else if(key == ContextKey.RESULT_CHANNEL){
+            channel = (ResultChannel) val;
+        }else if(key == ContextKey.CANCELLATION_TOKEN){
+            cancellation = (CancellationToken) val;
+        }else if(ownConsole && key == ContextKey.CONSOLE_COMPONENT){
+            console = (IOConsole) val;
+        }else if(key.isBuiltIn()){
+            key.put(parent, val);
+        }else{
+            putValue(key.getName(), val);
+        }
+    }
+
+    @Override
+    public <T> T getValue(ContextKey<T> key) {
+        if(key == ContextKey.COMMAND_LINE_INPUT) return key.cast(input);
+        if(key == ContextKey.COMMAND_LINE_ARGS) return key.cast(getArgs());
+        if(key == ContextKey.COMMAND_LINE_TOKENS) return key.cast(tokens);
+        if(key == ContextKey.RESULT_CHANNEL) return key.cast(channel);
+        if(key == ContextKey.CANCELLATION_TOKEN) return key.cast(cancellation);
+        if(ownConsole && key == ContextKey.CONSOLE_COMPONENT) return key.cast(console);
+        return key.isBuiltIn() ? key.get(parent) : key.cast(getValue(key.getName()));
+    }
+
+    private void putTokens(List<CharSequence> val) {
+        tokens = val;
+        args = null;
+    }
+
+    /**
+     * Returns the arguments that were set, or the ones made from the tokens.
+     */
+    private String[] getArgs() {
+        String[] result = args;
+        List<CharSequence> views = tokens;
+        if(result == null && views != null && !views.isEmpty()){
+            result = new String[views.size()];
+            for(int i = 0; i < result.length; i++){
+                result[i] = views.get(i).toString();
+            }
+            args = result;
+        }
+        return result;
+    }
+
+    @Override
+    public void removeValue(String key) {
+        if(isInvocationKey(key) || (ownConsole && KEY_CONSOLE_COMPONENT.equals(key))){
+            putValue(key, null);
+        }else{
+            parent.removeValue(key);
+        }
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return parent.getClassLoader();
+    }
+
+    @Override
+    public Configurator getConfigurator() {
+        return parent.getConfigurator();
+    }
+
+    @Override
+    public Shell getShell() {
+        return parent.getShell();
+    }
+
+    @Override
+    public IOConsole getIoConsole() {
+        return ownConsole ? console : parent.getIoConsole();
+    }
+
+    @Override
+    public Prompt getPrompt() {
+        return parent.getPrompt();
+    }
+
+    @Override
+    public List<Plugin> getPlugins() {
+        return parent.getPlugins();
+    }
+
+    @Override
+    public <T> List<T> getPluginsByType(Class<T> type) {
+        return parent.getPluginsByType(type);
+    }
+
+    @Override
+    public List<InputController> getControllers() {
+        return parent.getControllers();
+    }
+
+    @Override
+    public List<SplashScreen> getSplashScreens() {
+        return parent.getSplashScreens();
+    }
+
+    @Override
+    public List<Command> getCommands() {
+        return parent.getCommands();
+    }
+
+    @Override
+    public List<Command> getCommandsByNamespace(String namespace) {
+        return parent.getCommandsByNamespace(namespace);
+    }
+
+    @Override
+    public Map<String, Command> mapCommands(List<Command> commands) {
+        return parent.mapCommands(commands);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the jar files used to build a class loader.
+ * <p>
+ * Directories are listed with a DirectoryStream (one pass, no File per
+ * entry).  Candidate jars are then checked in parallel: each one is resolved
+ * to its real path, sized and its zip header read.  Jars reached through
+ * more than one path (links, repeated search paths) are kept once, and jars
+ * with identical content under different names are detected by hashing
+ * only the files whose sizes collide.  Unreadable or non-zip files are
+ * skipped with a warning.
+ * </p>
+ * <p>
+ * The number of threads is bounded by -Dcli.discovery.threads (default 8).
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class JarDiscovery {
+    private static final Logger log = Logger.getLogger(JarDiscovery.class.getName());
+    public static final String KEY_DISCOVERY_THREADS = "cli.discovery.threads";
+    private static final int VALUE_DISCOVERY_THREADS = 8;
+    private static final int ZIP_MAGIC = 0x504b0304; // PK\003\004
+
+    private final Pattern filePattern;
+    private long elapsedNanos;
+    private int duplicateCount;
+
+    private JarDiscovery(Pattern filePattern){
+        this.filePattern = filePattern;
+    }
+
+    public static JarDiscovery createInstance(Pattern filePattern) {
+        return new JarDiscovery(filePattern);
+    }
+
+    /**
+     * A jar found during discovery.
+     */
+    private static class Candidate {
+        final Path path;
+        Path realPath;
+        long size;
+        String hash;
+
+        Candidate(Path path){
+            this.path = path;
+        }
+    }
+
+    /**
+     * Searches the paths for matching jars.
+     * @param filePaths directories to search or files to add if they match.
+     * @return URLs of the distinct jars, in search order.
+     * @throws IOException if a directory cannot be listed.
+     */
+    public List<URL> discover(File[] filePaths) throws IOException {
+        long start = System.nanoTime();
+        duplicateCount = 0;
+
+        List<Candidate> candidates = list(filePaths);
+        List<URL> result = new ArrayList<URL>(candidates.size());
+        if(!candidates.isEmpty()){
+            ExecutorService executor = createExecutor(candidates.size());
+            try{
+                for(Candidate c : dedupe(check(candidates, executor), executor)){
+                    result.add(c.realPath.toUri().toURL());
+                }
+            }finally{
+                executor.shutdown();
+            }
+        }
+
+        elapsedNanos = System.nanoTime() - start;
+        log.log(Level.FINE, "Discovered {0} jar(s) ({1} duplicate(s)) in {2} ms",
+            new Object[]{result.size(), duplicateCount, getElapsedMillis()});
+        return result;
+    }
+
+    /**
+     * Returns the time taken by the last call to discover().
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Returns the number of jars dropped as duplicates by the last call
+     * to discover().
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    private List<Candidate> list(File[] filePaths) throws IOException {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for(File file : filePaths){
+            Path path = file.toPath();
+            if(Files.isRegularFile(path)){
+                if(filePattern.matcher(path.getFileName().toString()).matches()){
+                    candidates.add(new Candidate(path));
+                }
+                continue;
+            }
+            if(!Files.isDirectory(path)) continue;
+
+            List<Path> entries = new ArrayList<Path>();
+            DirectoryStream<Path> stream = Files.newDirectoryStream(path, new DirectoryStream.Filter<Path>() {
+                @Override
+                public boolean accept(Path entry) {
+                    return filePattern.matcher(entry.getFileName().toString()).matches();
+                }
+            });
+            try{
+                for(Path entry : stream){
+                    entries.add(entry);
+                }
+            }finally{
+                stream.close();
+            }
+            // directory order is unspecified, keep the class path stable
+            Collections.sort(entries);
+            for(Path entry : entries){
+                candidates.add(new Candidate(entry));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Resolves, sizes and validates every candidate in parallel.
+     * @return the valid candidates, in search order.
+     */
+    private List<Candidate> check(List<Candidate> candidates, ExecutorService executor) throws IOException {
+        List<Future<Candidate>> checks = new ArrayList<Future<Candidate>>(candidates.size());
+        for(final Candidate c : candidates){
+            checks.add(executor.submit(new Callable<Candidate>() {
+                @Override
+                public Candidate call() throws Exception {
+                    c.realPath = c.path.toRealPath();
+                    if(!Files.isRegularFile(c.realPath)) return null;
+                    c.size = Files.size(c.realPath);
+                    return isZip(c.realPath) ? c : null;
+                }
+            }));
+        }
+
+        List<Candidate> valid = new ArrayList<Candidate>(candidates.size());
+        for(int i = 0; i < checks.size(); i++){
+            Candidate c = await(checks.get(i), candidates.get(i));
+            if(c != null){
+                valid.add(c);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Drops candidates with the same real path or the same content as an
+     * earlier one.  Only candidates sharing a size are hashed.
+     */
+    private List<Candidate> dedupe(List<Candidate> candidates, ExecutorService executor) throws IOException {
+        Map<Path, Candidate> byPath = new LinkedHashMap<Path, Candidate>();
+        for(Candidate c : candidates){
+            if(byPath.containsKey(c.realPath)){
+                duplicateCount++;
+            }else{
+                byPath.put(c.realPath, c);
+            }
+        }
+
+        Map<Long, List<Candidate>> bySize = new LinkedHashMap<Long, List<Candidate>>();
+        for(Candidate c : byPath.values()){
+            List<Candidate> group = bySize.get(c.size);
+            if(group == null){
+                group = new ArrayList<Candidate>(1);
+                bySize.put(c.size, group);
+            }
+            group.add(c);
+        }
+
+        List<Candidate> toHash = new ArrayList<Candidate>();
+        for(List<Candidate> group : bySize.values()){
+            if(group.size() > 1) toHash.addAll(group);
+        }
+        List<Future<Candidate>> hashes = new ArrayList<Future<Candidate>>(toHash.size());
+        for(final Candidate c : toHash){
+            hashes.add(executor.submit(new Callable<Candidate>() {
+                @Override
+                public Candidate call() throws Exception {
+                    c.hash = hash(c.realPath);
+                    return c;
+                }
+            }));
+        }
+        for(int i = 0; i < hashes.size(); i++){
+            await(hashes.get(i), toHash.get(i));
+        }
+
+        List<Candidate> result = new ArrayList<Candidate>(byPath.size());
+        Map<String, Candidate> byHash = new LinkedHashMap<String, Candidate>();
+        for(Candidate c : byPath.values()){
+            if(c.hash != null){
+                Candidate first = byHash.get(c.hash);
+                if(first != null){
+                    duplicateCount++;
+                    log.log(Level.FINE, "Skipping {0}, same content as {1}",
+                        new Object[]{c.path, first.path});
+                    continue;
+                }
+                byHash.put(c.hash, c);
+            }
+            result.add(c);
+        }
+        return result;
+    }
+
+    private static Candidate await(Future<Candidate> f, Candidate c) throws IOException {
+        try{
+            return f.get();
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IOException("Jar discovery interrupted.", ex);
+        }catch(ExecutionException ex){
+            log.log(Level.WARNING, "Skipping unreadable jar " + c.path, ex.getCause());
+            return null;
+        }
+    }
+
+    private static boolean isZip(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try{
+            int magic = 0;
+            for(int i = 0; i < 4; i++){
+                int b = in.read();
+                if(b == -1) break;
+                magic = (magic << 8) | b;
+            }
+            if(magic != ZIP_MAGIC){
+                log.log(Level.WARNING, "Skipping {0}, not a jar file.", path);
+                return false;
+            }
+            return true;
+        }finally{
+            in.close();
+        }
+    }
+
+    private static String hash(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try{
+            return FileUtil.sha1(in);
+        }finally{
+            in.close();
+        }
+    }
+
+    private static ExecutorService createExecutor(int tasks) {
+        int threads = Math.max(1, Math.min(tasks, Integer.getInteger(KEY_DISCOVERY_THREADS, VALUE_DISCOVERY_THREADS)));
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cli-discovery-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.CommandExecutor;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.api.IOConsole;
+
+/**
+ * Runs commands in the background and keeps track of them as jobs.
+ * <p>
+ * Each job gets a number, starting at 1, and a BufferedConsole that
+ * collects its output until it is brought to the foreground.  Jobs stay
+ * in the manager until they are removed (fg and kill do that once a job
+ * is over), so their output can still be read after they finish.
+ * </p>
+ * <p>
+ * Killing a job cancels its CancellationToken and interrupts its thread; a
+ * command that checks neither keeps running, but its job is reported as
+ * killed and its output is discarded.  The shell stores its JobManager under KEY.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class JobManager {
+    /**
+     * Context key of the shell's JobManager.
+     */
+    public static final ContextKey<JobManager> KEY = ContextKey.create("key.jobManager");
+
+    public static enum State { RUNNING, DONE, FAILED, KILLED }
+
+    /**
+     * The work done by a job.
+     */
+    public static interface Task {
+        public void run(Job job) throws Exception;
+    }
+
+    /**
+     * A command running (or that ran) in the background.
+     */
+    public static final class Job {
+        private final int id;
+        private final String commandLine;
+        private final long started = System.currentTimeMillis();
+        private final BufferedConsole console = BufferedConsole.createInstance();
+        private final AtomicReference<State> state = new AtomicReference<State>(State.RUNNING);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final CancellationToken cancellation = CancellationToken.createInstance();
+        private volatile long ended;
+        private volatile Throwable error;
+        private volatile Future<?> future;
+        private volatile boolean reported;
+
+        private Job(int id, String commandLine){
+            this.id = id;
+            this.commandLine = commandLine;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getCommandLine() {
+            return commandLine;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        public boolean isDone() {
+            return state.get() != State.RUNNING;
+        }
+
+        /**
+         * Returns what the job's task threw, if it failed.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Returns the time the job ran for so far, in milliseconds.
+         */
+        public long getElapsedMillis() {
+            long end = ended;
+            return ((end != 0) ? end : System.currentTimeMillis()) - started;
+        }
+
+        /**
+         * Returns the console the job writes its output to.
+         */
+        public IOConsole getConsole() {
+            return console;
+        }
+
+        /**
+         * Returns the token cancelled when the job is killed.
+         */
+        public CancellationToken getCancellationToken() {
+            return cancellation;
+        }
+
+        /**
+         * Returns the output written since the last call.
+         */
+        public String takeOutput() {
+            return console.takeOutput();
+        }
+
+        /**
+         * Sends the job's output, buffered and to come, to a console.
+         * @param out the console, or null to buffer the output again.
+         */
+        public void forwardOutput(IOConsole out) {
+            console.forwardTo(out);
+        }
+
+        /**
+         * Waits for the job to be over, killed or not.
+         */
+        public void await() throws InterruptedException {
+            finished.await();
+        }
+
+        /**
+         * Waits for the job to be over.
+         * @param millis maximum time to wait.
+         * @return true if the job is over.
+         */
+        public boolean await(long millis) throws InterruptedException {
+            return finished.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Kills the job if it is running.
+         * @return true if the job was running.
+         */
+        public boolean kill() {
+            if(!finish(State.KILLED, null)) return false;
+            cancellation.cancel();
+            Future<?> f = future;
+            if(f != null) f.cancel(true);
+            console.takeOutput();
+            return true;
+        }
+
+        private boolean finish(State result, Throwable cause) {
+            if(!state.compareAndSet(State.RUNNING, result)) return false;
+            error = cause;
+            ended = System.currentTimeMillis();
+            finished.countDown();
+            return true;
+        }
+    }
+
+    private final CommandExecutor executor;
+    private final ExecutorService pool; // owned by the manager, may be null
+    private final AtomicInteger ids = new AtomicInteger();
+    private final ConcurrentSkipListMap<Integer, Job> jobs = new ConcurrentSkipListMap<Integer, Job>();
+
+    private JobManager(CommandExecutor executor, ExecutorService pool){
+        this.executor = executor;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a manager that runs each job on its own daemon thread.
+     * @return JobManager
+     */
+    public static JobManager createInstance() {
+        final ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cli-job-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        CommandExecutor executor = new CommandExecutor() {
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                return pool.submit(task);
+            }
+
+            @Override
+            public void plug(Context plug) {}
+
+            @Override
+            public void unplug(Context plug) {}
+        };
+        return new JobManager(executor, pool);
+    }
+
+    /**
+     * Creates a manager that runs jobs on the shell's CommandExecutor.
+     * The executor is not shut down with the manager.
+     * @param executor
+     * @return JobManager
+     */
+    public static JobManager createInstance(CommandExecutor executor) {
+        if(executor == null){
+            throw new IllegalArgumentException("Executor cannot be null.");
+        }
+        return new JobManager(executor, null);
+    }
+
+    /**
+     * Returns the JobManager stored in the context.
+     * @param ctx
+     * @return the JobManager or null if the shell has none.
+     */
+    public static JobManager getInstance(Context ctx) {
+        return KEY.get(ctx);
+    }
+
+    /**
+     * Starts a job.
+     * @param commandLine the command line the job runs, for display.
+     * @param task the work of the job.
+     * @return the running Job.
+     */
+    public Job submit(String commandLine, final Task task) {
+        final Job job = new Job(ids.incrementAndGet(), commandLine);
+        jobs.put(job.getId(), job);
+        job.future = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                try{
+                    task.run(job);
+                    job.finish(State.DONE, null);
+                }catch(InterruptedException ex){
+                    job.finish(State.KILLED, ex);
+                }catch(Throwable ex){
+                    job.finish(State.FAILED, ex);
+                }
+                return null;
+            }
+        });
+        // killed before the future was known
+        if(job.getState() == State.KILLED){
+            job.future.cancel(true);
+        }
+        return job;
+    }
+
+    /**
+     * Returns the jobs, by number.
+     */
+    public List<Job> getJobs() {
+        return new ArrayList<Job>(jobs.values());
+    }
+
+    /**
+     * Returns a job by its number.
+     * @return the Job or null if there is none.
+     */
+    public Job getJob(int id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Returns a job by its number as typed by the user, i.e. "2" or "%2".
+     * @return the Job or null if there is none.
+     */
+    public Job getJob(String spec) {
+        if(spec == null) return null;
+        String number = spec.startsWith("%") ? spec.substring(1) : spec;
+        try{
+            return jobs.get(Integer.parseInt(number));
+        }catch(NumberFormatException ex){
+            return null;
+        }
+    }
+
+    /**
+     * Forgets a job.
+     * @return the Job or null if there is none.
+     */
+    public Job remove(int id) {
+        return jobs.remove(id);
+    }
+
+    /**
+     * Returns the jobs that ended since the last call, so the shell can
+     * report them once.
+     */
+    public List<Job> takeFinished() {
+        List<Job> result = new ArrayList<Job>();
+        for(Job job : jobs.values()){
+            if(job.isDone() && !job.reported){
+                job.reported = true;
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Kills the running jobs, and stops the threads of the manager if it
+     * has its own.
+     */
+    public void shutdown() {
+        for(Job job : jobs.values()){
+            job.kill();
+        }
+        if(pool != null){
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.clamshellcli.api.CliException;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+
+/**
+ * A Command placeholder that creates and plugs the actual Command the first
+ * time it is executed.
+ * <p>
+ * The descriptor of each command is recorded in the ServiceIndex the first
+ * time the command's jar (or class directory) is seen.  On later starts the
+ * command is listed (for help, hints, etc) from that record alone; its class
+ * is not loaded until the command is dispatched.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class LazyCommand implements Command {
+    private static final Logger log = Logger.getLogger(LazyCommand.class.getName());
+    private static final String META_NAMESPACE = "namespace";
+    private static final String META_NAME = "name";
+    private static final String META_DESCRIPTION = "description";
+    private static final String META_USAGE = "usage";
+    private static final String META_ARG_PREFIX = "arg:";
+
+    private final String className;
+    private final ClassLoader classLoader;
+    private final Command.Descriptor cachedDescriptor;
+    private Command command;
+    private boolean plugged;
+
+    private LazyCommand(String className, ClassLoader cl, Command.Descriptor desc){
+        this.className = className;
+        this.classLoader = cl;
+        this.cachedDescriptor = desc;
+    }
+
+    private LazyCommand(Command cmd){
+        this(cmd.getClass().getName(), cmd.getClass().getClassLoader(), null);
+        command = cmd;
+    }
+
+    /**
+     * Loads the commands visible to the class loader using the default
+     * service index.
+     * @param cl class loader used to find the commands
+     * @return List<Command> of LazyCommand instances
+     */
+    public static List<Command> loadCommands(ClassLoader cl){
+        return loadCommands(cl, Clamshell.Runtime.getServiceIndex());
+    }
+
+    /**
+     * Loads the commands visible to the class loader.  Commands whose
+     * descriptor is recorded in the index are not instantiated.
+     * @param cl class loader used to find the commands
+     * @param index the service index, if null all commands are instantiated.
+     * @return List<Command> of LazyCommand instances
+     */
+    public static List<Command> loadCommands(ClassLoader cl, ServiceIndex index){
+        List<Command> result = new ArrayList<Command>();
+        if(index == null){
+            for(Command cmd : Clamshell.Runtime.loadServicePlugins(Command.class, cl)){
+                result.add(new LazyCommand(cmd));
+            }
+            return result;
+        }
+
+        List<String> providers;
+        try{
+            providers = index.findProviders(Command.class, cl);
+        }catch(IOException ex){
+            log.log(Level.FINE, "Service index unavailable, loading all commands.", ex);
+            return loadCommands(cl, null);
+        }
+
+        for(String name : providers){
+            Map<String,String> meta = index.getMetadata(name);
+            if(meta != null){
+                result.add(new LazyCommand(name, cl, createDescriptor(meta)));
+                continue;
+            }
+
+            // first time we see this command: create it to learn its descriptor
+            StartupProfiler.Phase phase = StartupProfiler.start("command create " + name);
+            Command cmd = Clamshell.Runtime.instantiateProvider(Command.class, name, cl);
+            phase.end();
+            if(cmd == null) continue;
+            Command.Descriptor desc = cmd.getDescriptor();
+            if(desc != null){
+                index.putMetadata(name, createMetadata(desc));
+            }
+            result.add(new LazyCommand(cmd));
+        }
+        index.save();
+        return result;
+    }
+
+    /**
+     * Returns the class name of the actual command.
+     * @return
+     */
+    public String getCommandClassName() {
+        return className;
+    }
+
+    /**
+     * Returns true if the actual command has been created.
+     * @return
+     */
+    public synchronized boolean isLoaded() {
+        return command != null;
+    }
+
+    @Override
+    public Command.Descriptor getDescriptor() {
+        Command cmd;
+        synchronized(this){
+            cmd = command;
+        }
+        return (cmd != null) ? cmd.getDescriptor() : cachedDescriptor;
+    }
+
+    /**
+     * Creates and plugs the actual command (first call only), then delegates
+     * execution to it.
+     * @param ctx
+     * @return
+     */
+    @Override
+    public Object execute(Context ctx) {
+        return resolve(ctx).execute(ctx);
+    }
+
+    @Override
+    public void plug(Context plug) {
+        // deferred until the first execution.
+    }
+
+    @Override
+    public void unplug(Context plug) {
+        Command cmd;
+        synchronized(this){
+            if(!plugged) return;
+            cmd = command;
+            plugged = false;
+        }
+        cmd.unplug(plug);
+    }
+
+    private synchronized Command resolve(Context ctx) {
+        if(command == null){
+            command = Clamshell.Runtime.instantiateProvider(Command.class, className, classLoader);
+            if(command == null){
+                throw new CliException("Unable to load command " + className);
+            }
+        }
+        if(!plugged){
+            StartupProfiler.Phase phase = StartupProfiler.start("command plug " + className);
+            try{
+                command.plug(ctx);
+            }finally{
+                phase.end();
+            }
+            plugged = true;
+        }
+        return command;
+    }
+
+    private static Map<String,String> createMetadata(Command.Descriptor desc){
+        Map<String,String> meta = new LinkedHashMap<String,String>();
+        meta.put(META_NAMESPACE, desc.getNamespace());
+        meta.put(META_NAME, desc.getName());
+        meta.put(META_DESCRIPTION, desc.getDescription());
+        meta.put(META_USAGE, desc.getUsage());
+        Map<String,String> args = desc.getArguments();
+        if(args != null){
+            for(Map.Entry<String,String> arg : args.entrySet()){
+                meta.put(META_ARG_PREFIX + arg.getKey(), arg.getValue());
+            }
+        }
+        return meta;
+    }
+
+    private static Command.Descriptor createDescriptor(Map<String,String> meta){
+        final String namespace = meta.get(META_NAMESPACE);
+        final String name = meta.get(META_NAME);
+        final String description = meta.get(META_DESCRIPTION);
+        final String usage = meta.get(META_USAGE);
+        Map<String,String> args = new LinkedHashMap<String,String>();
+        for(Map.Entry<String,String> e : meta.entrySet()){
+            if(e.getKey().startsWith(META_ARG_PREFIX)){
+                args.put(e.getKey().substring(META_ARG_PREFIX.length()), e.getValue());
+            }
+        }
+        final Map<String,String> arguments = Collections.unmodifiableMap(args);
+
+        return new Command.Descriptor() {
+            @Override public String getNamespace() {return namespace;}
+            @Override public String getName() {return name;}
+            @Override public String getDescription() {return description;}
+            @Override public String getUsage() {return usage;}
+            @Override public Map<String, String> getArguments() {return arguments;}
+        };
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.clamshellcli.api.Plugin;
+
+/**
+ * An immutable set of loaded plugins with a by-type index.
+ * <p>
+ * The plugins of a given type are filtered the first time that type is
+ * asked for; the read-only list is cached and returned on every later
+ * call.  Adding or removing a plugin returns a new registry (with an empty
+ * cache), so a registry never serves stale results.  ShellContext keeps
+ * the registry of the plugin list stored under Context.KEY_PLUGINS.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class PluginRegistry {
+    private static final PluginRegistry EMPTY = new PluginRegistry(Collections.<Plugin>emptyList());
+
+    private final List<Plugin> plugins;
+    private final ConcurrentMap<Class<?>, List<?>> byType = new ConcurrentHashMap<Class<?>, List<?>>();
+
+    private PluginRegistry(List<? extends Plugin> list){
+        plugins = Collections.unmodifiableList(new ArrayList<Plugin>(list));
+    }
+
+    /**
+     * Creates a registry of the specified plugins.
+     * @param plugins plugins in load order, may be null.
+     * @return PluginRegistry
+     */
+    public static PluginRegistry createInstance(List<? extends Plugin> plugins) {
+        return (plugins != null && !plugins.isEmpty()) ? new PluginRegistry(plugins) : EMPTY;
+    }
+
+    /**
+     * Returns all plugins, in load order.
+     */
+    public List<Plugin> getPlugins() {
+        return plugins;
+    }
+
+    /**
+     * Returns the plugins that implement the specified type.
+     * @param type the type used as filter
+     * @return read-only list of plugins, in load order.
+     */
+    public <T> List<T> getPluginsByType(Class<T> type) {
+        List<?> result = byType.get(type);
+        if(result == null){
+            List<T> filtered = Collections.unmodifiableList(Clamshell.Runtime.filterPluginsByType(plugins, type));
+            List<?> raced = byType.putIfAbsent(type, filtered);
+            result = (raced != null) ? raced : filtered;
+        }
+        return cast(result);
+    }
+
+    /**
+     * The list cached under a Class&lt;T&gt; is always a List&lt;T&gt;.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> cast(List<?> list) {
+        return (List<T>) list;
+    }
+
+    /**
+     * Returns a registry with the plugin added at the end.
+     */
+    public PluginRegistry withPlugin(Plugin plugin) {
+        List<Plugin> list = new ArrayList<Plugin>(plugins);
+        list.add(plugin);
+        return new PluginRegistry(list);
+    }
+
+    /**
+     * Returns a registry without the plugin, or this registry if the plugin
+     * is not in it.
+     */
+    public PluginRegistry withoutPlugin(Plugin plugin) {
+        if(!plugins.contains(plugin)) return this;
+        List<Plugin> list = new ArrayList<Plugin>(plugins);
+        list.remove(plugin);
+        return createInstance(list);
+    }
+
+    public int size() {
+        return plugins.size();
+    }
+}
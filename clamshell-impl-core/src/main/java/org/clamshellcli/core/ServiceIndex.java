@@ -0,0 +1,452 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.clamshellcli.api.Configurator;
+
+/**
+ * A persistent index of the service providers declared in jar files.
+ * <p>
+ * Each jar is recorded by path, size and last-modified time along with the
+ * content of its META-INF/services entries.  When a jar has not changed since
+ * it was last recorded, its providers are read from the index instead of
+ * opening the jar.  Only new or modified jars are rescanned.  The index is
+ * saved under the user's ~/.cli directory so it survives restarts.
+ * </p>
+ * <p>
+ * Callers can also attach small metadata maps to providers found in indexed
+ * jars (i.e. a command's descriptor).  Metadata is dropped along with the rest
+ * of the jar's record when the jar changes.  Service files found in class
+ * directories are recorded too, so their providers can carry metadata.
+ * </p>
+ * <p>
+ * The record of a jar also lists the directories (packages) it contains,
+ * used by FlatClassLoader to go straight to the jar holding a class.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class ServiceIndex {
+    private static final Logger log = Logger.getLogger(ServiceIndex.class.getName());
+    private static final String SERVICES_DIR = "META-INF/services/";
+    private static final int INDEX_VERSION = 2;
+
+    /**
+     * System property used to turn off the index (set to "false").
+     */
+    public static final String KEY_INDEX_ENABLED = "cli.serviceIndex";
+    public static final String VALUE_INDEX_FILE = "services.idx";
+
+    private final File indexFile;
+    private Map<String, JarRecord> jars;
+    private final Set<String> visited = new HashSet<String>();
+    private final Map<String, JarRecord> sources = new HashMap<String, JarRecord>();
+    private boolean dirty;
+    private int reusedCount;
+    private int rescannedCount;
+
+    /**
+     * Stored state for a single jar file.
+     */
+    private static class JarRecord {
+        long size;
+        long lastModified;
+        Map<String, List<String>> services = new HashMap<String, List<String>>();
+        List<String> packages = new ArrayList<String>();
+        Map<String, Map<String, String>> metadata;
+    }
+
+    /**
+     * The persisted form of the index.
+     */
+    private static class IndexData {
+        int version = INDEX_VERSION;
+        Map<String, JarRecord> jars = new HashMap<String, JarRecord>();
+    }
+
+    private ServiceIndex(File file){
+        indexFile = file;
+    }
+
+    /**
+     * Creates an index backed by the specified file.
+     * @param file the file used to persist the index.
+     * @return ServiceIndex
+     */
+    public static ServiceIndex createInstance(File file){
+        return new ServiceIndex(file);
+    }
+
+    /**
+     * Creates an index backed by the default file ~/.cli/services.idx.
+     * @return ServiceIndex
+     */
+    public static ServiceIndex createInstance(){
+        return new ServiceIndex(new File(
+            new File(Configurator.VALUE_USERHOME, ".cli"), VALUE_INDEX_FILE)
+        );
+    }
+
+    /**
+     * Returns true unless the index was disabled with -Dcli.serviceIndex=false.
+     * @return
+     */
+    public static boolean isEnabled(){
+        return !"false".equalsIgnoreCase(System.getProperty(KEY_INDEX_ENABLED));
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Number of jars, visited this session, whose providers came from the index.
+     * @return
+     */
+    public synchronized int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Number of jars, visited this session, that had to be opened and scanned.
+     * @return
+     */
+    public synchronized int getRescannedCount() {
+        return rescannedCount;
+    }
+
+    /**
+     * Returns the provider class names declared for the specified service type
+     * that are visible to the class loader.  The names are returned in the same
+     * order ServiceLoader would find them (parent loaders first).
+     * @param type the service type
+     * @param cl the class loader used to search for providers
+     * @return list of provider class names
+     * @throws IOException
+     */
+    public synchronized List<String> findProviders(Class<?> type, ClassLoader cl) throws IOException {
+        load();
+        String serviceName = type.getName();
+
+        // walk up the chain of URL class loaders, these are the ones we can index
+        List<URLClassLoader> chain = new ArrayList<URLClassLoader>();
+        ClassLoader base = cl;
+        while(base instanceof URLClassLoader){
+            chain.add(0, (URLClassLoader)base);
+            base = base.getParent();
+        }
+
+        Set<String> result = new LinkedHashSet<String>();
+
+        // anything above the indexed loaders (i.e. the launcher classpath)
+        // is searched the usual way.
+        if(base != null){
+            Enumeration<URL> resources = base.getResources(SERVICES_DIR + serviceName);
+            while(resources.hasMoreElements()){
+                result.addAll(readProviders(resources.nextElement()));
+            }
+        }
+
+        for(URLClassLoader loader : chain){
+            for(URL url : loader.getURLs()){
+                result.addAll(findProviders(serviceName, url));
+            }
+        }
+
+        return new ArrayList<String>(result);
+    }
+
+    /**
+     * Returns the directories holding files in the jar, as resource paths
+     * without the trailing slash ("" for the root, "org/clamshellcli/core", etc).
+     * @param jar the jar file
+     * @return list of directories, empty if the jar does not exist.
+     * @throws IOException
+     */
+    public synchronized List<String> getPackages(File jar) throws IOException {
+        load();
+        JarRecord rec = getJarRecord(jar);
+        return (rec != null && rec.packages != null) ? 
+            Collections.unmodifiableList(rec.packages) : 
+            Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the metadata recorded for a provider found by findProviders().
+     * @param provider provider class name
+     * @return the metadata or null if none was recorded, or the provider's
+     * jar changed since it was.
+     */
+    public synchronized Map<String, String> getMetadata(String provider) {
+        JarRecord rec = sources.get(provider);
+        return (rec != null && rec.metadata != null) ? rec.metadata.get(provider) : null;
+    }
+
+    /**
+     * Records metadata for a provider found by findProviders().  The metadata
+     * is only kept for providers that come from an indexed jar or class
+     * directory.
+     * @param provider provider class name
+     * @param metadata values to record
+     */
+    public synchronized void putMetadata(String provider, Map<String, String> metadata) {
+        JarRecord rec = sources.get(provider);
+        if(rec == null) return;
+        if(rec.metadata == null){
+            rec.metadata = new HashMap<String, Map<String, String>>();
+        }
+        rec.metadata.put(provider, new LinkedHashMap<String, String>(metadata));
+        dirty = true;
+    }
+
+    /**
+     * Writes the index back to disk if it was modified.
+     * Stale entries for jars that no longer exist are dropped.
+     */
+    public synchronized void save() {
+        log.log(Level.FINE, "Service index: {0} jar(s) reused, {1} jar(s) rescanned.",
+            new Object[]{reusedCount, rescannedCount});
+        if(!dirty || jars == null) return;
+
+        for(Iterator<String> it = jars.keySet().iterator(); it.hasNext();){
+            String path = it.next();
+            if(!visited.contains(path) && !new File(path).isFile()){
+                it.remove();
+            }
+        }
+
+        final IndexData data = new IndexData();
+        data.jars = jars;
+        try{
+            FileUtil.writeAtomically(indexFile, new FileUtil.Content() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    Writer writer = new OutputStreamWriter(out, "UTF-8");
+                    new Gson().toJson(data, writer);
+                    writer.flush();
+                }
+            });
+            dirty = false;
+        }catch(IOException ex){
+            log.log(Level.FINE, "Unable to save service index " + indexFile, ex);
+        }
+    }
+
+    private List<String> findProviders(String serviceName, URL url) throws IOException {
+        if(!"file".equals(url.getProtocol())){
+            return readProviders(new URL("jar:" + url + "!/" + SERVICES_DIR + serviceName));
+        }
+
+        File file;
+        try{
+            file = new File(url.toURI());
+        }catch(URISyntaxException ex){
+            file = new File(url.getPath());
+        }
+
+        if(file.isDirectory()){
+            return findDirectoryProviders(serviceName, file);
+        }
+
+        JarRecord rec = getJarRecord(file);
+        if(rec == null) return Collections.emptyList();
+        List<String> names = rec.services.get(serviceName);
+        if(names == null) return Collections.emptyList();
+        addSources(names, rec);
+        return names;
+    }
+
+    /**
+     * Finds the providers declared in a class directory (i.e. commands/classes).
+     * The service file is cheap to read so it is read every time; it is
+     * recorded only so metadata can be kept for its providers.  The record
+     * is keyed by the service file and stamped with the latest modification
+     * time of that file and of the providers' class files, so the metadata
+     * is dropped when any of them changes.
+     */
+    private List<String> findDirectoryProviders(String serviceName, File dir) throws IOException {
+        File svcFile = new File(dir, SERVICES_DIR + serviceName);
+        if(!svcFile.isFile()) return Collections.emptyList();
+        List<String> names = readProviders(svcFile.toURI().toURL());
+
+        long size = svcFile.length();
+        long lastModified = svcFile.lastModified();
+        for(String name : names){
+            File classFile = new File(dir, name.replace('.', '/') + ".class");
+            lastModified = Math.max(lastModified, classFile.lastModified());
+        }
+
+        String path = svcFile.getPath();
+        visited.add(path);
+        JarRecord rec = jars.get(path);
+        if(rec == null || rec.size != size || rec.lastModified != lastModified){
+            rec = new JarRecord();
+            rec.size = size;
+            rec.lastModified = lastModified;
+            rec.services.put(serviceName, names);
+            jars.put(path, rec);
+            dirty = true;
+        }
+        addSources(names, rec);
+        return names;
+    }
+
+    private void addSources(List<String> names, JarRecord rec) {
+        for(String name : names){
+            if(!sources.containsKey(name)){
+                sources.put(name, rec);
+            }
+        }
+    }
+
+    private JarRecord getJarRecord(File file) throws IOException {
+        String path = file.getPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if(lastModified == 0L){
+            return null; // file does not exist
+        }
+
+        JarRecord rec = jars.get(path);
+        boolean firstVisit = visited.add(path);
+        if(rec != null && rec.size == size && rec.lastModified == lastModified){
+            if(firstVisit) reusedCount++;
+            return rec;
+        }
+
+        rec = scanJar(file);
+        rec.size = size;
+        rec.lastModified = lastModified;
+        jars.put(path, rec);
+        dirty = true;
+        if(firstVisit) rescannedCount++;
+        return rec;
+    }
+
+    private JarRecord scanJar(File file) throws IOException {
+        JarRecord rec = new JarRecord();
+        Set<String> packages = new LinkedHashSet<String>();
+        JarFile jar = new JarFile(file);
+        try{
+            Enumeration<JarEntry> entries = jar.entries();
+            while(entries.hasMoreElements()){
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if(!entry.isDirectory()){
+                    int slash = name.lastIndexOf('/');
+                    packages.add((slash > 0) ? name.substring(0, slash) : "");
+                }
+                if(entry.isDirectory() ||
+                   !name.startsWith(SERVICES_DIR) ||
+                   name.length() == SERVICES_DIR.length()){
+                    continue;
+                }
+                rec.services.put(
+                    name.substring(SERVICES_DIR.length()),
+                    readProviders(jar.getInputStream(entry))
+                );
+            }
+        }finally{
+            jar.close();
+        }
+        rec.packages.addAll(packages);
+        return rec;
+    }
+
+    private void load() {
+        if(jars != null) return;
+        jars = new HashMap<String, JarRecord>();
+        if(!indexFile.isFile()) return;
+
+        Reader reader = null;
+        try{
+            reader = new InputStreamReader(new FileInputStream(indexFile), "UTF-8");
+            IndexData data = new Gson().fromJson(reader, IndexData.class);
+            if(data != null && data.version == INDEX_VERSION && data.jars != null){
+                jars = data.jars;
+            }
+        }catch(IOException ex){
+            log.log(Level.FINE, "Unable to read service index " + indexFile, ex);
+        }catch(JsonParseException ex){
+            log.log(Level.FINE, "Ignoring corrupt service index " + indexFile, ex);
+        }finally{
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    private static List<String> readProviders(URL url) throws IOException {
+        InputStream in;
+        try{
+            in = url.openStream();
+        }catch(IOException ex){
+            return Collections.emptyList(); // no such service file
+        }
+        return readProviders(in);
+    }
+
+    /**
+     * Parses a provider-configuration file as specified by ServiceLoader.
+     */
+    private static List<String> readProviders(InputStream in) throws IOException {
+        List<String> result = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try{
+            String line;
+            while((line = reader.readLine()) != null){
+                int comment = line.indexOf('#');
+                if(comment >= 0){
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if(!line.isEmpty() && !result.contains(line)){
+                    result.add(line);
+                }
+            }
+        }finally{
+            reader.close();
+        }
+        return result;
+    }
+}
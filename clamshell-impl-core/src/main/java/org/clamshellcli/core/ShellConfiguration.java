@@ -0,0 +1,477 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.clamshellcli.api.Configurator;
+
+/**
+ * A typed, immutable view of the shell configuration (cli.config).
+ * <p>
+ * Properties are exposed as strings, each entry of the "controllers"
+ * section as a ControllerConfig with its input pattern already compiled,
+ * and each entry of the "commands" section as a CommandConfig.
+ * The raw map is kept (read-only) for Configurator.getConfigMap().
+ * Instances can be written to and read from a compact binary form, which
+ * ShellConfigurator uses to cache the parsed file.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class ShellConfiguration {
+    public static final String KEY_CTRL_ENABLED = "enabled";
+    public static final String KEY_CTRL_INPUT_PATTERN = "inputPattern";
+    public static final String KEY_CTRL_PRIORITY = "priority";
+    public static final String KEY_CMD_TIMEOUT = "timeout";
+    /**
+     * Entry of the "commands" section that applies to all commands; "ns:*"
+     * applies to the commands of namespace ns.
+     */
+    public static final String VALUE_ANY_COMMAND = "*";
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_NUMBER = 2;
+    private static final byte TYPE_BOOLEAN = 3;
+    private static final byte TYPE_LIST = 4;
+    private static final byte TYPE_MAP = 5;
+
+    private static final ShellConfiguration EMPTY =
+        new ShellConfiguration(Collections.<String,Object>emptyMap());
+
+    private final Map<String, Map<String, ?>> configMap;
+    private final Map<String, String> properties;
+    private final Map<String, ControllerConfig> controllers;
+    private final Map<String, CommandConfig> commands;
+
+    /**
+     * Configuration of a single controller, keyed by its class name.
+     */
+    public static final class ControllerConfig {
+        private final String className;
+        private final boolean enabled;
+        private final Pattern inputPattern;
+        private final String patternError;
+        private final Integer priority;
+        private final Map<String, ?> attributes;
+
+        private ControllerConfig(String className, Map<String, ?> attributes){
+            this.className = className;
+            this.attributes = attributes;
+
+            Object flag = attributes.get(KEY_CTRL_ENABLED);
+            enabled = Boolean.valueOf((flag != null) ? flag.toString() : "true");
+
+            Object regex = attributes.get(KEY_CTRL_INPUT_PATTERN);
+            Pattern p = null;
+            String error = null;
+            try{
+                p = Pattern.compile((regex != null) ? regex.toString() : ".*");
+            }catch(PatternSyntaxException ex){
+                error = ex.getMessage();
+            }
+            inputPattern = p;
+            patternError = error;
+
+            Object value = attributes.get(KEY_CTRL_PRIORITY);
+            Integer prio = 0;
+            if(value instanceof Number){
+                prio = ((Number) value).intValue();
+            }else if(value != null){
+                try{
+                    prio = Integer.valueOf(value.toString().trim());
+                }catch(NumberFormatException ex){
+                    prio = null;
+                }
+            }
+            priority = prio;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Returns the compiled input pattern (".*" if none is configured).
+         * @throws IllegalArgumentException if the configured pattern is invalid.
+         */
+        public Pattern getInputPattern() {
+            if(inputPattern == null){
+                throw new IllegalArgumentException(
+                    String.format("Invalid inputPattern for controller %s: %s", className, patternError)
+                );
+            }
+            return inputPattern;
+        }
+
+        /**
+         * Returns the dispatch priority of the controller (0 if none is
+         * configured).  Controllers with a higher priority get input first.
+         * @throws IllegalArgumentException if the configured priority is not a number.
+         */
+        public int getPriority() {
+            if(priority == null){
+                throw new IllegalArgumentException(
+                    String.format("Invalid priority for controller %s: %s", className, attributes.get(KEY_CTRL_PRIORITY))
+                );
+            }
+            return priority;
+        }
+
+        /**
+         * Returns all values configured for the controller.
+         */
+        public Map<String, ?> getAttributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     * Configuration of commands, keyed by command name ("sysinfo"),
+     * qualified name ("syscmd:sysinfo"), namespace ("syscmd:*") or "*".
+     */
+    public static final class CommandConfig {
+        private final String key;
+        private final Long timeout;
+        private final Map<String, ?> attributes;
+
+        private CommandConfig(String key, Map<String, ?> attributes){
+            this.key = key;
+            this.attributes = attributes;
+            this.timeout = parseMillis(attributes.get(KEY_CMD_TIMEOUT));
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the execution timeout in milliseconds, 0 if there is none.
+         * The configured value is a number of milliseconds or a number with
+         * unit ms, s, m or h (i.e. "30s").
+         * @throws IllegalArgumentException if the configured value is invalid.
+         */
+        public long getTimeout() {
+            if(timeout == null){
+                throw new IllegalArgumentException(
+                    String.format("Invalid timeout for commands %s: %s", key, attributes.get(KEY_CMD_TIMEOUT))
+                );
+            }
+            return timeout;
+        }
+
+        /**
+         * Returns all values configured for the entry.
+         */
+        public Map<String, ?> getAttributes() {
+            return attributes;
+        }
+
+        private static Long parseMillis(Object value) {
+            if(value == null) return 0L;
+            if(value instanceof Number){
+                long millis = ((Number) value).longValue();
+                return (millis >= 0) ? millis : null;
+            }
+            String s = value.toString().trim().toLowerCase();
+            long unit = 1;
+            if(s.endsWith("ms")){
+                s = s.substring(0, s.length() - 2);
+            }else if(s.endsWith("s")){
+                unit = 1000;
+                s = s.substring(0, s.length() - 1);
+            }else if(s.endsWith("m")){
+                unit = 60 * 1000;
+                s = s.substring(0, s.length() - 1);
+            }else if(s.endsWith("h")){
+                unit = 60 * 60 * 1000;
+                s = s.substring(0, s.length() - 1);
+            }
+            try{
+                long amount = Long.parseLong(s.trim());
+                return (amount >= 0) ? amount * unit : null;
+            }catch(NumberFormatException ex){
+                return null;
+            }
+        }
+    }
+
+    private ShellConfiguration(Map<String, ?> raw){
+        Map<String, Map<String, ?>> sections = new LinkedHashMap<String, Map<String, ?>>();
+        for(Map.Entry<String, ?> e : raw.entrySet()){
+            if(e.getValue() instanceof Map){
+                sections.put(e.getKey(), asMap(e.getValue()));
+            }
+        }
+        configMap = Collections.unmodifiableMap(sections);
+
+        Map<String, String> props = new LinkedHashMap<String, String>();
+        Map<String, ?> propsSection = sections.get(Configurator.KEY_CONFIG_PROPS);
+        if(propsSection != null){
+            for(Map.Entry<String, ?> e : propsSection.entrySet()){
+                props.put(e.getKey(), (e.getValue() != null) ? e.getValue().toString() : null);
+            }
+        }
+        properties = Collections.unmodifiableMap(props);
+
+        Map<String, ControllerConfig> ctrls = new LinkedHashMap<String, ControllerConfig>();
+        Map<String, ?> ctrlsSection = sections.get(Configurator.KEY_CONFIG_CTRLS);
+        if(ctrlsSection != null){
+            for(Map.Entry<String, ?> e : ctrlsSection.entrySet()){
+                if(e.getValue() instanceof Map){
+                    ctrls.put(e.getKey(), new ControllerConfig(e.getKey(), asMap(e.getValue())));
+                }
+            }
+        }
+        controllers = Collections.unmodifiableMap(ctrls);
+
+        Map<String, CommandConfig> cmds = new LinkedHashMap<String, CommandConfig>();
+        Map<String, ?> cmdsSection = sections.get(Configurator.KEY_CONFIG_CMDS);
+        if(cmdsSection != null){
+            for(Map.Entry<String, ?> e : cmdsSection.entrySet()){
+                if(e.getValue() instanceof Map){
+                    cmds.put(e.getKey(), new CommandConfig(e.getKey(), asMap(e.getValue())));
+                }
+            }
+        }
+        commands = Collections.unmodifiableMap(cmds);
+    }
+
+    /**
+     * Builds a configuration from a parsed config map.  The map is copied.
+     * @param raw the parsed content of the config file, may be null.
+     * @return ShellConfiguration
+     */
+    public static ShellConfiguration fromMap(Map<String, ?> raw) {
+        return (raw != null) ? new ShellConfiguration(asMap(copy(raw))) : EMPTY;
+    }
+
+    /**
+     * Returns the typed configuration of a Configurator.  For a
+     * ShellConfigurator this is the instance it loaded; for others it is
+     * built from getConfigMap().
+     * @param config
+     * @return ShellConfiguration
+     */
+    public static ShellConfiguration of(Configurator config) {
+        if(config instanceof ShellConfigurator){
+            return ((ShellConfigurator) config).getConfiguration();
+        }
+        return (config != null) ? fromMap(config.getConfigMap()) : EMPTY;
+    }
+
+    public Map<String, Map<String, ?>> getConfigMap() {
+        return configMap;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public String getProperty(String name) {
+        return properties.get(name);
+    }
+
+    public String getProperty(String name, String defaultValue) {
+        String value = properties.get(name);
+        return (value != null) ? value : defaultValue;
+    }
+
+    public Map<String, ControllerConfig> getControllers() {
+        return controllers;
+    }
+
+    /**
+     * Returns the configuration of a controller.
+     * @param className class name of the controller.
+     * @return the ControllerConfig or null if the controller is not configured.
+     */
+    public ControllerConfig getController(String className) {
+        return controllers.get(className);
+    }
+
+    public Map<String, CommandConfig> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Returns the entry of the "commands" section that applies to a
+     * command: its qualified name, else its name, else its namespace
+     * ("ns:*"), else "*".
+     * @param namespace namespace of the command, may be null.
+     * @param name name of the command.
+     * @return the CommandConfig or null if no entry applies.
+     */
+    public CommandConfig findCommand(String namespace, String name) {
+        if(commands.isEmpty()) return null;
+        CommandConfig result = null;
+        if(namespace != null){
+            result = commands.get(CommandRegistry.qualify(namespace, name));
+        }
+        if(result == null){
+            result = commands.get(name);
+        }
+        if(result == null && namespace != null){
+            result = commands.get(CommandRegistry.qualify(namespace, VALUE_ANY_COMMAND));
+        }
+        return (result != null) ? result : commands.get(VALUE_ANY_COMMAND);
+    }
+
+    /**
+     * Writes the configuration in binary form.
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        writeValue(out, configMap);
+    }
+
+    /**
+     * Reads a configuration written by writeTo().
+     * @param in
+     * @return ShellConfiguration
+     * @throws IOException
+     */
+    public static ShellConfiguration readFrom(DataInputStream in) throws IOException {
+        Object raw = readValue(in);
+        if(!(raw instanceof Map)){
+            throw new IOException("Invalid configuration snapshot.");
+        }
+        return new ShellConfiguration(asMap(raw));
+    }
+
+    /**
+     * Casts a map made by copy() or readValue(); both only create maps
+     * with String keys, so the cast cannot fail later.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> asMap(Object value) {
+        return (Map<String, ?>) value;
+    }
+
+    /**
+     * Deep, read-only copy of parsed values.
+     */
+    private static Object copy(Object value) {
+        if(value instanceof Map){
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for(Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()){
+                map.put(String.valueOf(e.getKey()), copy(e.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        if(value instanceof List){
+            List<Object> list = new ArrayList<Object>();
+            for(Object o : (List<?>) value){
+                list.add(copy(o));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return value;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if(value == null){
+            out.writeByte(TYPE_NULL);
+        }else if(value instanceof Map){
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TYPE_MAP);
+            out.writeInt(map.size());
+            for(Map.Entry<?, ?> e : map.entrySet()){
+                writeString(out, String.valueOf(e.getKey()));
+                writeValue(out, e.getValue());
+            }
+        }else if(value instanceof List){
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for(Object o : list){
+                writeValue(out, o);
+            }
+        }else if(value instanceof Number){
+            out.writeByte(TYPE_NUMBER);
+            out.writeDouble(((Number) value).doubleValue());
+        }else if(value instanceof Boolean){
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }else{
+            out.writeByte(TYPE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch(type){
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_NUMBER:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<Object>(size);
+                for(int i = 0; i < size; i++){
+                    list.add(readValue(in));
+                }
+                return Collections.unmodifiableList(list);
+            }
+            case TYPE_MAP: {
+                int size = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<String, Object>(size * 2);
+                for(int i = 0; i < size; i++){
+                    String key = readString(in);
+                    map.put(key, readValue(in));
+                }
+                return Collections.unmodifiableMap(map);
+            }
+            default:
+                throw new IOException("Invalid configuration snapshot, unknown value type " + type);
+        }
+    }
+
+    // writeUTF() is limited to 64K, values are written as length + UTF-8 bytes
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0){
+            throw new IOException("Invalid configuration snapshot, bad string length.");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -19,13 +19,17 @@
  */
 package org.clamshellcli.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.logging.Logger;
 import org.clamshellcli.api.Configurator;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
-import java.io.FileReader;
 import java.lang.reflect.Type;
 import java.util.Map;
 import static org.clamshellcli.api.Configurator.KEY_CONFIG_FILE;
@@ -33,13 +37,22 @@ import static org.clamshellcli.api.Configurator.KEY_CONFIG_FILE;
 /**
  * This is a default implementation of the Configurator.
  * It provides configuration infomation about the shell.
+ * <p>
+ * The config file is parsed into an immutable ShellConfiguration.  The
+ * parsed result is cached in a binary snapshot (see ConfigSnapshot) that is
+ * reused for as long as the content of the file is unchanged.  Set
+ * -Dcli.configSnapshot=false to always parse the file.
+ * </p>
  * @author vvivien
  */
 public class ShellConfigurator implements Configurator{
     private static final Logger log = Logger.getLogger(ShellConfigurator.class.getName());
     private static final String CONFIG_FILE_PATH = "./" + VALUE_CONFIG_FILE;
     private File configFile;
-    private Map<String, Map<String,?>> configMap;
+    private ShellConfiguration configuration;
+    private boolean loaded;
+    private boolean fromSnapshot;
+    private File snapshotFile;
 
     private ShellConfigurator(String configFileName){
         configFile = createConfigFile(configFileName);
@@ -58,23 +71,48 @@ public class ShellConfigurator implements Configurator{
         return configFile; 
     }
     
+    /**
+     * Returns the typed configuration.  Never null; empty if there is no
+     * config file.
+     * @return ShellConfiguration
+     */
+    public ShellConfiguration getConfiguration() {
+        return configuration;
+    }
+    
+    /**
+     * Returns true if the configuration was read from the snapshot instead
+     * of parsing the config file.
+     * @return 
+     */
+    public boolean isFromSnapshot() {
+        return fromSnapshot;
+    }
+    
+    /**
+     * Returns the snapshot file used to cache the configuration.
+     * @return the file or null if snapshots are disabled.
+     */
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+    
     @Override
     public Map<String, Map<String,? extends Object>> getControllersMap() {
-        return (configMap != null) ? 
-            (Map<String, Map<String, ? extends Object>>) configMap.get(KEY_CONFIG_CTRLS) :
-            null;
+        return (Map<String, Map<String, ? extends Object>>) 
+            configuration.getConfigMap().get(KEY_CONFIG_CTRLS);
     }
     
     @Override
     public Map<String,String> getPropertiesMap(){
-        return (configMap != null ) ? 
-            (Map<String, String>) configMap.get(KEY_CONFIG_PROPS) :
+        return configuration.getConfigMap().containsKey(KEY_CONFIG_PROPS) ? 
+            configuration.getProperties() :
             null;
     }
     
     @Override
     public Map<String,Map<String, ?>> getConfigMap(){
-        return configMap;
+        return loaded ? configuration.getConfigMap() : null;
     }
     
     private File createConfigFile(String fileName){
@@ -87,14 +125,60 @@ public class ShellConfigurator implements Configurator{
     }
 
     private void initialize() {
+        configuration = ShellConfiguration.fromMap(null);
         if(configFile != null && configFile.exists() && configFile.isFile()){
-            Gson gson = new Gson();
-            Type mapType = new TypeToken<Map<String,? extends Object>>(){}.getType();
+            StartupProfiler.Phase phase = StartupProfiler.start("config parse");
             try {
-                configMap = gson.fromJson(new FileReader(configFile), mapType);
-            } catch (FileNotFoundException ex) {
+                byte[] content = readContent(configFile);
+                String hash = FileUtil.sha1(content);
+                ConfigSnapshot snapshot = ConfigSnapshot.isEnabled() ? 
+                    ConfigSnapshot.forConfigFile(configFile) : 
+                    null;
+                
+                snapshotFile = (snapshot != null) ? snapshot.getSnapshotFile() : null;
+                ShellConfiguration cached = (snapshot != null) ? snapshot.load(hash) : null;
+                if(cached != null){
+                    configuration = cached;
+                    fromSnapshot = true;
+                }else{
+                    configuration = parse(content);
+                    if(snapshot != null){
+                        snapshot.save(hash, configuration);
+                    }
+                }
+                loaded = true;
+            } catch (IOException ex) {
                 throw new RuntimeException(ex);
+            } finally {
+                phase.end();
+            }
+        }
+    }
+    
+    private static ShellConfiguration parse(byte[] content) throws IOException {
+        Gson gson = new Gson();
+        Type mapType = new TypeToken<Map<String,? extends Object>>(){}.getType();
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(content), "UTF-8");
+        try{
+            Map<String,?> map = gson.fromJson(reader, mapType);
+            return ShellConfiguration.fromMap(map);
+        }finally{
+            reader.close();
+        }
+    }
+    
+    private static byte[] readContent(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try{
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int)file.length());
+            byte[] buf = new byte[8192];
+            int read;
+            while((read = in.read(buf)) != -1){
+                out.write(buf, 0, read);
             }
+            return out.toByteArray();
+        }finally{
+            in.close();
         }
     }
    
@@ -23,87 +23,318 @@ import org.clamshellcli.api.Command;
 import org.clamshellcli.api.IOConsole;
 import org.clamshellcli.api.Prompt;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import org.clamshellcli.api.Configurator;
 import org.clamshellcli.api.Context;
-import static org.clamshellcli.api.Context.KEY_CONSOLE_COMPONENT;
-import static org.clamshellcli.api.Context.KEY_SHELL_COMPONENT;
+import org.clamshellcli.api.ContextKey;
 import org.clamshellcli.api.InputController;
 import org.clamshellcli.api.Plugin;
 import org.clamshellcli.api.Shell;
 import org.clamshellcli.api.SplashScreen;
+import org.clamshellcli.api.TypedContext;
 
 /**
  * Implementation of the Context used to provide shell information at runtime.
+ * <p>
+ * Values of the built-in keys (see ContextKey) are kept in an array indexed
+ * by the key's slot, so the shell and controllers read and write them
+ * without hashing.  Other values are kept in a map by name.  A String key
+ * that names a built-in key is mapped to its slot.
+ * </p>
+ * <p>
+ * The context is safe to use from any thread.  The built-in values are held
+ * in an immutable state object: reads take no lock, and each write installs
+ * a modified copy of the slot array with a compare-and-set.  User values
+ * are kept in a ConcurrentHashMap, so writing one costs the same however
+ * many values the context holds.  snapshot() returns a read-only context
+ * frozen at the current state, for background work that needs a consistent
+ * view while the shell keeps running; the user values are copied then, and
+ * the copy is retried if a write completes during it.
+ * </p>
  * @author vvivien
  */
-public class ShellContext implements Context{
+public class ShellContext implements TypedContext{
     private static final Logger log = Logger.getLogger(ShellContext.class.getName());
-    private Map<String, Object> values;
+    private static final int SLOT_COMMANDS = ContextKey.COMMANDS.getSlot();
+    private static final int SLOT_COMMAND_MAP = ContextKey.COMMAND_MAP.getSlot();
+    private static final int SLOT_PLUGINS = ContextKey.PLUGINS.getSlot();
+    private final AtomicReference<State> state;
+    private final Map<String, Object> values;
+    private final AtomicLong writes = new AtomicLong();
+    private final boolean readOnly;
+
+    /**
+     * Immutable built-in content of the context.
+     */
+    private static final class State {
+        final Object[] slots;
+        final PluginRegistry plugins;
+        final CommandRegistry commands;
+
+        State(Object[] slots, PluginRegistry plugins, CommandRegistry commands){
+            this.slots = slots;
+            this.plugins = plugins;
+            this.commands = commands;
+        }
+
+        State withSlot(int slot, Object val) {
+            if(slots[slot] == val) return this;
+            Object[] copy = slots.clone();
+            copy[slot] = val;
+            return new State(copy, plugins, commands);
+        }
+
+        State withPlugins(PluginRegistry registry) {
+            Object list = (registry.size() > 0) ? registry.getPlugins() : null;
+            return new State(withSlot(SLOT_PLUGINS, list).slots, registry, commands);
+        }
+
+        State withCommands(CommandRegistry registry, Object list) {
+            Object map = (list != null) ? registry.getCommandMap() : null;
+            return new State(
+                withSlot(SLOT_COMMANDS, list).withSlot(SLOT_COMMAND_MAP, map).slots, plugins, registry
+            );
+        }
+    }
 
     /**
      * Creates an instance of ShellContext.
      * @return ShellContex
      */
     public static ShellContext createInstance() {
-        return new ShellContext();
+        return new ShellContext(
+            new State(
+                new Object[ContextKey.getSlotCount()], 
+                PluginRegistry.createInstance(null),
+                CommandRegistry.createInstance(null)
+            ),
+            new ConcurrentHashMap<String, Object>(),
+            false
+        );
     }
     
     /**
      * Private constructor
      */
-    private ShellContext(){
-        values = new HashMap<String, Object>();
+    private ShellContext(State initial, Map<String, Object> values, boolean readOnly){
+        this.state = new AtomicReference<State>(initial);
+        this.values = values;
+        this.readOnly = readOnly;
     }
     
     /**
-     * Returns a copy of the internal Map that stores context values.
+     * Returns a read-only copy of the context as it is now.  Later changes
+     * to this context are not visible in the snapshot.  The built-in values
+     * are shared with this context, the user values are copied.
+     * @return ShellContext whose put/remove methods throw
+     * UnsupportedOperationException.
+     */
+    public ShellContext snapshot() {
+        if(readOnly) return this;
+        State current;
+        Map<String, Object> copy;
+        long before;
+        do{
+            before = writes.get();
+            current = state.get();
+            copy = new HashMap<String, Object>(values);
+        }while(writes.get() != before);
+        return new ShellContext(current, Collections.unmodifiableMap(copy), true);
+    }
+    
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+    
+    /**
+     * Returns a copy of the values stored in the context.
      * @return copy of values.
      */
     @Override
     public Map<String, ? extends Object> getValues() {
-        return values;
+        State current = state.get();
+        Map<String, Object> result = new HashMap<String, Object>(values);
+        for(ContextKey<?> key : ContextKey.getBuiltIns().values()){
+            Object val = current.slots[key.getSlot()];
+            if(val != null) result.put(key.getName(), val);
+        }
+        return result;
     }
 
     /**
-     * Adds a full map of values to the internal context Map.
+     * Adds a full map of values to the context.
      * @param values 
      */
     @Override
     public void putValues(Map<String, ? extends Object> values) {
-        this.values.putAll(values);
+        for(Map.Entry<String, ? extends Object> e : values.entrySet()){
+            putValue(e.getKey(), e.getValue());
+        }
     }
 
     /**
-     * Adds one value to the internal context map.
+     * Adds one value to the context.
      * @param key
      * @param val 
      */
     @Override
     public void putValue(String key, Object val) {
-        values.put(key,val);
+        ContextKey<?> builtIn = ContextKey.forName(key);
+        if(builtIn != null){
+            putSlot(builtIn.getSlot(), val);
+        }else{
+            putUserValue(key, val);
+        }
+    }
+    
+    @Override
+    public <T> void putValue(ContextKey<T> key, T val) {
+        if(key.isBuiltIn()){
+            putSlot(key.getSlot(), val);
+        }else{
+            putUserValue(key.getName(), val);
+        }
+    }
+    
+    private void putUserValue(String key, Object val) {
+        checkWritable();
+        if(key == null){
+            if(val == null) return;
+            throw new IllegalArgumentException("Context key cannot be null.");
+        }
+        if(val != null){
+            values.put(key, val);
+        }else{
+            values.remove(key);
+        }
+        writes.incrementAndGet();
+    }
+    
+    private void putSlot(int slot, Object val) {
+        checkWritable();
+        if(slot == SLOT_COMMANDS){
+            putCommands(ContextKey.COMMANDS.cast(val));
+            return;
+        }
+        if(slot == SLOT_COMMAND_MAP){
+            putCommandMap(ContextKey.COMMAND_MAP.cast(val));
+            return;
+        }
+        if(slot == SLOT_PLUGINS){
+            PluginRegistry registry = PluginRegistry.createInstance(ContextKey.PLUGINS.cast(val));
+            State current;
+            do{
+                current = state.get();
+            }while(!state.compareAndSet(current, current.withPlugins(registry)));
+            writes.incrementAndGet();
+            return;
+        }
+        State current;
+        do{
+            current = state.get();
+        }while(!state.compareAndSet(current, current.withSlot(slot, val)));
+        writes.incrementAndGet();
+    }
+    
+    /**
+     * Builds the command registry and stores it with the command list and
+     * the command map (KEY_COMMAND_MAP), in one step, so readers never see
+     * one without the others.
+     */
+    private void putCommands(List<Command> commands) {
+        CommandRegistry registry = CommandRegistry.createInstance(commands);
+        Object list = (commands != null) ? registry.getCommands() : null;
+        State current;
+        do{
+            current = state.get();
+        }while(!state.compareAndSet(current, current.withCommands(registry, list)));
+        writes.incrementAndGet();
+    }
+    
+    /**
+     * KEY_COMMAND_MAP is derived from KEY_COMMANDS.  A map that differs
+     * from the current one replaces the commands with the map's commands,
+     * so the map, the command list and the registry always agree.
+     */
+    private void putCommandMap(Map<String, Command> map) {
+        if(map == null){
+            putCommands(null);
+        }else if(!map.equals(getCommandRegistry().getCommandMap())){
+            putCommands(new ArrayList<Command>(map.values()));
+        }
+    }
+    
+    /**
+     * Adds a plugin to the plugins stored under KEY_PLUGINS.
+     * @param plugin 
+     */
+    public void addPlugin(Plugin plugin) {
+        checkWritable();
+        State current;
+        do{
+            current = state.get();
+        }while(!state.compareAndSet(current, current.withPlugins(current.plugins.withPlugin(plugin))));
+        writes.incrementAndGet();
+    }
+    
+    /**
+     * Removes a plugin from the plugins stored under KEY_PLUGINS.
+     * @param plugin 
+     */
+    public void removePlugin(Plugin plugin) {
+        checkWritable();
+        State current;
+        do{
+            current = state.get();
+        }while(!state.compareAndSet(current, current.withPlugins(current.plugins.withoutPlugin(plugin))));
+        writes.incrementAndGet();
+    }
+    
+    /**
+     * Returns the by-type index of the plugins stored under KEY_PLUGINS.
+     * @return PluginRegistry, never null.
+     */
+    public PluginRegistry getPluginRegistry() {
+        return state.get().plugins;
+    }
+    
+    private void checkWritable() {
+        if(readOnly){
+            throw new UnsupportedOperationException("Context snapshot is read-only.");
+        }
     }
 
     /**
-     * Returns a value from the context map.
+     * Returns a value from the context.
      * @param key
      * @return 
      */
     @Override
     public Object getValue(String key) {
-        return values.get(key);
+        ContextKey<?> builtIn = ContextKey.forName(key);
+        if(builtIn != null) return state.get().slots[builtIn.getSlot()];
+        return (key != null) ? values.get(key) : null;
+    }
+    
+    @Override
+    public <T> T getValue(ContextKey<T> key) {
+        return key.cast(key.isBuiltIn() ? state.get().slots[key.getSlot()] : values.get(key.getName()));
     }
 
     /**
-     * Removes a single value from the context map.
+     * Removes a single value from the context.
      * @param key 
      */
     @Override
     public void removeValue(String key) {
-        values.remove(key);
+        putValue(key, null);
     }
 
     /**
@@ -121,18 +352,19 @@ public class ShellContext implements Context{
      */
     @Override
     public List<Plugin> getPlugins(){
-        return (List<Plugin>) values.get(KEY_PLUGINS);
+        return getValue(ContextKey.PLUGINS);
     }
     
     /**
-     * Retrieves a list of Class instances using the provided Type.
+     * Retrieves a list of Class instances using the provided Type.  The
+     * list is computed once per type and plugin set, and is read-only.
      * @param <T> The generic type used to filter the plugins by type
      * @param type the Class to used as filter
      * @return List of components of type <T> 
      */
     @Override
     public <T> List<T> getPluginsByType(Class<T> type) {
-        return Clamshell.Runtime.filterPluginsByType(getPlugins(),type);
+        return getPluginRegistry().getPluginsByType(type);
     }
     
     /**
@@ -141,7 +373,7 @@ public class ShellContext implements Context{
      */
     @Override
     public ClassLoader getClassLoader() {
-        return (ClassLoader) values.get(KEY_CLASS_LOADER);
+        return getValue(ContextKey.CLASS_LOADER);
     }
     
     /**
@@ -150,56 +382,62 @@ public class ShellContext implements Context{
      */
     @Override
     public Shell getShell() {
-        return (Shell) values.get(KEY_SHELL_COMPONENT);
+        return getValue(ContextKey.SHELL_COMPONENT);
     }
     
 
     @Override
     public IOConsole getIoConsole() {
-        return (IOConsole) values.get(KEY_CONSOLE_COMPONENT);
+        return getValue(ContextKey.CONSOLE_COMPONENT);
     }
 
     @Override
     public Prompt getPrompt() {
-        return (Prompt)values.get(KEY_PROMPT_COMPONENT);
+        return getValue(ContextKey.PROMPT_COMPONENT);
     }
     
     @Override
     public List<InputController> getControllers() {
-        return (List<InputController>) values.get(KEY_CONTROLLERS);
+        return getValue(ContextKey.CONTROLLERS);
     }
     
     @Override
     public List<SplashScreen> getSplashScreens() {
-        return (List<SplashScreen>) values.get(KEY_SPLASH_SCREENS);
+        return getValue(ContextKey.SPLASH_SCREENS);
     }
 
     @Override
     public List<Command> getCommands() {
-        return (List<Command>) values.get(KEY_COMMANDS);
+        return getValue(ContextKey.COMMANDS);
+    }
+    
+    /**
+     * Returns the registry of the commands stored under KEY_COMMANDS.
+     * @return CommandRegistry, never null.
+     */
+    public CommandRegistry getCommandRegistry() {
+        return state.get().commands;
+    }
+    
+    /**
+     * Looks up a command by name or by qualified name (namespace:name).
+     * @param name
+     * @return the Command or null if none is found.
+     */
+    public Command getCommand(String name) {
+        return getCommandRegistry().getCommand(name);
     }
     
     @Override
     public List<Command> getCommandsByNamespace(String namespace){
-        List<Command> result = new ArrayList();
-        for(Command cmd: getCommands()){
-            Command.Descriptor desc = cmd.getDescriptor();
-            if(desc != null && desc.getNamespace().equals(namespace)){
-                result.add(cmd);
-            }
-        }
-        return result;
+        return getCommandRegistry().getCommandsByNamespace(namespace);
     }
     
     @Override
     public Map<String,Command> mapCommands(List<Command> commands){
-        Map<String,Command> cmdMap = new HashMap<String,Command>();
-        for(Command cmd : commands){
-            Command.Descriptor desc = cmd.getDescriptor();
-            if(desc != null && desc.getName() != null){
-                cmdMap.put(desc.getName(), cmd);
-            }
-        }
-        return cmdMap;
+        CommandRegistry registry = getCommandRegistry();
+        return (commands == registry.getCommands()) ? 
+            registry.getCommandMap() : 
+            CommandRegistry.createInstance(commands).getCommandMap();
     }    
 }
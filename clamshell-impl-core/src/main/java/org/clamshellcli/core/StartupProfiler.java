@@ -0,0 +1,290 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.core;
+
+import com.google.gson.GsonBuilder;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of the startup phases
+ * (config parse, class loaders, plugin loading, plugging of each component,
+ * etc) and prints a breakdown before the first prompt.
+ * <p>
+ * The profiler is off unless enabled by the launcher (--startup-profile).
+ * While off, start() returns a shared no-op phase so instrumented code pays
+ * nothing but a volatile read.  CPU time and allocations are measured on
+ * the thread that runs the phase; allocations are only available on JVMs
+ * that implement com.sun.management.ThreadMXBean.
+ * </p>
+ * <p>
+ * Phases nest (the shell plug includes the controller plugs) and may run in
+ * parallel, so the phase times do not add up to the total.  The report waits
+ * (briefly) for phases still open on other threads.
+ * </p>
+ * @author vladimir.vivien
+ */
+public final class StartupProfiler {
+    private static final Phase NO_PHASE = new Phase(null);
+    private static final long REPORT_WAIT_MILLIS = 5000;
+    private static volatile boolean enabled;
+    private static int open;
+    private static File jsonFile;
+    private static ThreadMXBean threads;
+    private static final List<Record> records = new ArrayList<Record>();
+
+    private StartupProfiler(){}
+
+    /**
+     * A phase being measured.  Call end() once the phase is done.
+     */
+    public static class Phase {
+        private final String name;
+        private final long startNanos;
+        private final long startCpu;
+        private final long startAlloc;
+        private boolean ended;
+
+        private Phase(String name){
+            this.name = name;
+            startNanos = System.nanoTime();
+            startCpu = (name != null) ? cpuTime() : 0;
+            startAlloc = (name != null) ? allocatedBytes() : 0;
+        }
+
+        public void end() {
+            if(name == null || ended) return;
+            ended = true;
+            long wall = System.nanoTime() - startNanos;
+            Record r = new Record();
+            r.phase = name;
+            r.thread = Thread.currentThread().getName();
+            r.startMillis = uptimeMillis() - toMillis(wall);
+            r.wallMillis = toMillis(wall);
+            r.cpuMillis = (startCpu >= 0) ? toMillis(cpuTime() - startCpu) : -1;
+            r.allocatedBytes = (startAlloc >= 0) ? allocatedBytes() - startAlloc : -1;
+            add(r);
+        }
+    }
+
+    /**
+     * A measured phase.
+     */
+    public static class Record {
+        String phase;
+        String thread;
+        double startMillis;
+        double wallMillis;
+        double cpuMillis;
+        long allocatedBytes;
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public double getWallMillis() {
+            return wallMillis;
+        }
+
+        public double getCpuMillis() {
+            return cpuMillis;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /**
+     * Turns profiling on.
+     * @param json file to write the report to as JSON, or null.
+     */
+    public static synchronized void enable(File json) {
+        jsonFile = json;
+        threads = ManagementFactory.getThreadMXBean();
+        try{
+            if(threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()){
+                threads.setThreadCpuTimeEnabled(true);
+            }
+        }catch(UnsupportedOperationException ex){
+            // no cpu time then
+        }
+        records.clear();
+        enabled = true;
+
+        // time spent by the JVM before the launcher got control
+        Record r = new Record();
+        r.phase = "jvm start";
+        r.thread = Thread.currentThread().getName();
+        r.wallMillis = uptimeMillis();
+        r.cpuMillis = -1;
+        r.allocatedBytes = -1;
+        records.add(r);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts measuring a phase.
+     * @param name name of the phase, shown in the report.
+     * @return the phase, to be ended by the caller.
+     */
+    public static Phase start(String name) {
+        if(!enabled) return NO_PHASE;
+        synchronized(StartupProfiler.class){
+            open++;
+        }
+        return new Phase(name);
+    }
+
+    /**
+     * Returns the phases recorded so far.
+     * @return
+     */
+    public static synchronized List<Record> getRecords() {
+        return new ArrayList<Record>(records);
+    }
+
+    /**
+     * Prints the breakdown, slowest phase first, writes the JSON file if one
+     * was requested, then turns profiling off.
+     * @param out where to print the report
+     */
+    public static void report(PrintWriter out) {
+        double total = uptimeMillis();
+        List<Record> sorted;
+        File json;
+        synchronized(StartupProfiler.class){
+            if(!enabled) return;
+            enabled = false;
+            long deadline = System.currentTimeMillis() + REPORT_WAIT_MILLIS;
+            long wait;
+            while(open > 0 && (wait = deadline - System.currentTimeMillis()) > 0){
+                try{
+                    StartupProfiler.class.wait(wait);
+                }catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            sorted = new ArrayList<Record>(records);
+            json = jsonFile;
+        }
+        Collections.sort(sorted, new Comparator<Record>() {
+            @Override
+            public int compare(Record a, Record b) {
+                return Double.compare(b.wallMillis, a.wallMillis);
+            }
+        });
+
+        out.printf("%nStartup profile (first prompt after %.1f ms)%n", total);
+        out.printf("%-60s %9s %9s %9s %11s%n", "Phase", "Start ms", "Wall ms", "CPU ms", "Alloc KB");
+        for(Record r : sorted){
+            out.printf("%-60s %9.1f %9.1f %9s %11s%n",
+                abbreviate(r.phase, 60), r.startMillis, r.wallMillis,
+                (r.cpuMillis >= 0) ? String.format("%.1f", r.cpuMillis) : "-",
+                (r.allocatedBytes >= 0) ? String.format("%,d", r.allocatedBytes / 1024) : "-"
+            );
+        }
+
+        ServiceIndex index = Clamshell.Runtime.getServiceIndex();
+        if(index != null){
+            out.printf("Service index: %d jar(s) reused, %d rescanned%n",
+                index.getReusedCount(), index.getRescannedCount());
+        }else{
+            out.printf("Service index: disabled (-D%s=false)%n", ServiceIndex.KEY_INDEX_ENABLED);
+        }
+
+        if(json != null){
+            try{
+                writeJson(json, total, sorted, index);
+                out.printf("Startup profile written to %s%n", json.getPath());
+            }catch(IOException ex){
+                out.printf("WARNING: unable to write startup profile %s: %s%n", json, ex.getMessage());
+            }
+        }
+        out.println();
+        out.flush();
+    }
+
+    private static void writeJson(File f, double total, List<Record> sorted, ServiceIndex index) throws IOException {
+        Map<String,Object> doc = new LinkedHashMap<String,Object>();
+        doc.put("firstPromptMillis", total);
+        doc.put("phases", sorted);
+        if(index != null){
+            Map<String,Integer> counts = new LinkedHashMap<String,Integer>();
+            counts.put("reused", index.getReusedCount());
+            counts.put("rescanned", index.getRescannedCount());
+            doc.put("serviceIndex", counts);
+        }
+        FileWriter writer = new FileWriter(f);
+        try{
+            new GsonBuilder().setPrettyPrinting().create().toJson(doc, writer);
+        }finally{
+            writer.close();
+        }
+    }
+
+    private static synchronized void add(Record r) {
+        records.add(r);
+        open--;
+        StartupProfiler.class.notifyAll();
+    }
+
+    private static String abbreviate(String s, int max) {
+        // keep the end, it holds the class name
+        return (s.length() <= max) ? s : "..." + s.substring(s.length() - max + 3);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static double uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    private static long cpuTime() {
+        ThreadMXBean mx = threads;
+        return (mx != null && mx.isThreadCpuTimeSupported()) ? mx.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean mx = threads;
+        try{
+            if(mx instanceof com.sun.management.ThreadMXBean){
+                return ((com.sun.management.ThreadMXBean)mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }catch(LinkageError err){
+            // not a HotSpot style JVM
+        }catch(UnsupportedOperationException ex){
+            // allocation measurement disabled
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.core.InterruptSignal;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.ShellContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class CancellationTest {
+
+    @Test
+    public void testCancelRunsActionsOnce() {
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable action = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        CancellationToken token = CancellationToken.createInstance();
+        token.onCancel(action);
+        token.checkCancelled();
+        Assert.assertFalse(token.isCancelled());
+
+        Assert.assertTrue(token.cancel());
+        Assert.assertFalse(token.cancel());
+        Assert.assertTrue(token.isCancelled());
+        Assert.assertEquals(1, runs.get());
+
+        // registered after the fact: runs right away
+        token.onCancel(action);
+        Assert.assertEquals(2, runs.get());
+        try{
+            token.checkCancelled();
+            Assert.fail("expected CancellationException");
+        }catch(CancellationException ex){
+            // expected
+        }
+    }
+
+    @Test
+    public void testTokenIsPerInvocation() {
+        ShellContext parent = ShellContext.createInstance();
+        InvocationContext invocation = InvocationContext.createInstance(parent, "x");
+        CancellationToken token = CancellationToken.createInstance();
+        invocation.putValue(ContextKey.CANCELLATION_TOKEN, token);
+        Assert.assertSame(token, invocation.getValue(ContextKey.CANCELLATION_TOKEN));
+        Assert.assertNull(parent.getValue(ContextKey.CANCELLATION_TOKEN));
+    }
+
+    @Test
+    public void testInterruptSignal() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        InterruptSignal signal = InterruptSignal.install(new Runnable() {
+            @Override
+            public void run() {
+                received.countDown();
+            }
+        });
+        if(signal == null) return; // JVM without sun.misc.Signal
+        try{
+            signal.raise();
+            Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+        }finally{
+            signal.restore();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.clamshellcli.core.CommandDeadline;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class CommandDeadlineTest {
+
+    @Test
+    public void testExpiredCommandIsInterrupted() {
+        final AtomicBoolean reported = new AtomicBoolean();
+        CommandDeadline deadline = CommandDeadline.start(50, new Runnable() {
+            @Override
+            public void run() {
+                reported.set(true);
+            }
+        });
+        try{
+            Thread.sleep(10000);
+            Assert.fail("expected an interrupt");
+        }catch(InterruptedException ex){
+            // expected
+        }
+        Assert.assertTrue(deadline.isExpired());
+        Assert.assertTrue(reported.get());
+        Assert.assertFalse(deadline.finish());
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testFinishedInTime() throws Exception {
+        final AtomicBoolean reported = new AtomicBoolean();
+        CommandDeadline deadline = CommandDeadline.start(100, new Runnable() {
+            @Override
+            public void run() {
+                reported.set(true);
+            }
+        });
+        Assert.assertTrue(deadline.finish());
+        Thread.sleep(200);
+        Assert.assertFalse(deadline.isExpired());
+        Assert.assertFalse(reported.get());
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
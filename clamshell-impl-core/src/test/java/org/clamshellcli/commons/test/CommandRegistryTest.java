@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.core.CommandRegistry;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.ShellContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class CommandRegistryTest {
+
+    @Test
+    public void testLookups() {
+        Command help = command("syscmd", "help");
+        Command exit = command("syscmd", "exit");
+        Command deploy = command("app", "deploy");
+        Command otherHelp = command("app", "help");
+        CommandRegistry registry = CommandRegistry.createInstance(
+            Arrays.asList(help, exit, deploy, otherHelp)
+        );
+
+        Assert.assertEquals(4, registry.size());
+        Assert.assertSame(help, registry.getCommand("help"));
+        Assert.assertSame(help, registry.getCommand("syscmd:help"));
+        Assert.assertSame(otherHelp, registry.getCommand("app:help"));
+        Assert.assertSame(deploy, registry.getCommand("deploy"));
+        Assert.assertNull(registry.getCommand("app:exit"));
+        Assert.assertEquals(Arrays.asList(deploy, otherHelp), registry.getCommandsByNamespace("app"));
+        Assert.assertTrue(registry.getCommandsByNamespace("none").isEmpty());
+        Assert.assertEquals(3, registry.getCommandMap().size());
+
+        String line = "x app:help";
+        Assert.assertSame(otherHelp, registry.getCommand(line, 2, line.length()));
+    }
+
+    @Test
+    public void testContextRebuildsRegistry() {
+        ShellContext ctx = ShellContext.createInstance();
+        Command help = command("syscmd", "help");
+        ctx.putValue(Context.KEY_COMMANDS, Arrays.asList(help));
+        CommandRegistry first = ctx.getCommandRegistry();
+        Assert.assertSame(help, ctx.getCommand("help"));
+        Assert.assertSame(first.getCommandMap(), ctx.getValue(Context.KEY_COMMAND_MAP));
+        Assert.assertSame(first, CommandRegistry.of(InvocationContext.createInstance(ctx, "help")));
+
+        Command exit = command("syscmd", "exit");
+        ctx.putValue(Context.KEY_COMMANDS, Arrays.asList(help, exit));
+        Assert.assertNotSame(first, ctx.getCommandRegistry());
+        Assert.assertSame(exit, ctx.getCommand("syscmd:exit"));
+        List<Command> ns = ctx.getCommandsByNamespace("syscmd");
+        Assert.assertEquals(2, ns.size());
+        Assert.assertSame(ctx.getCommandRegistry().getCommandMap(), ctx.mapCommands(ctx.getCommands()));
+    }
+
+    @Test
+    public void testCommandMapWriteUpdatesRegistry() {
+        ShellContext ctx = ShellContext.createInstance();
+        Command help = command("syscmd", "help");
+        Command exit = command("syscmd", "exit");
+        ctx.putValue(Context.KEY_COMMANDS, Arrays.asList(help, exit));
+        CommandRegistry registry = ctx.getCommandRegistry();
+
+        // writing back the same map changes nothing
+        ctx.putValue(Context.KEY_COMMAND_MAP, new HashMap<String, Command>(registry.getCommandMap()));
+        Assert.assertSame(registry, ctx.getCommandRegistry());
+
+        Map<String, Command> map = new HashMap<String, Command>();
+        map.put("help", help);
+        ctx.putValue(Context.KEY_COMMAND_MAP, map);
+        Assert.assertSame(help, ctx.getCommand("help"));
+        Assert.assertNull(ctx.getCommand("exit"));
+        Assert.assertEquals(Arrays.asList(help), ctx.getCommands());
+        Assert.assertEquals(map, ctx.getValue(Context.KEY_COMMAND_MAP));
+
+        ctx.removeValue(Context.KEY_COMMAND_MAP);
+        Assert.assertNull(ctx.getCommands());
+        Assert.assertEquals(0, ctx.getCommandRegistry().size());
+    }
+
+    private static Command command(final String namespace, final String name) {
+        return new Command() {
+            private final Command.Descriptor desc = new Command.Descriptor() {
+                @Override
+                public String getNamespace() {
+                    return namespace;
+                }
+
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public String getDescription() {
+                    return null;
+                }
+
+                @Override
+                public String getUsage() {
+                    return null;
+                }
+
+                @Override
+                public Map<String, String> getArguments() {
+                    return null;
+                }
+            };
+
+            @Override
+            public Command.Descriptor getDescriptor() {
+                return desc;
+            }
+
+            @Override
+            public Object execute(Context ctx) {
+                return null;
+            }
+
+            @Override
+            public void plug(Context plug) {}
+
+            @Override
+            public void unplug(Context plug) {}
+        };
+    }
+}
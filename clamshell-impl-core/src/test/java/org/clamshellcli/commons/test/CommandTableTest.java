@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.clamshellcli.api.CliException;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.core.CommandLine;
+import org.clamshellcli.core.CommandTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class CommandTableTest {
+
+    @Test
+    public void testParseCommandLine() {
+        String input = "  help \t sysinfo  -os ";
+        CommandLine line = CommandLine.parse(input);
+        Assert.assertEquals(3, line.getTokenCount());
+        Assert.assertEquals("help", line.getToken(0).toString());
+        Assert.assertEquals(2, line.getStart(0));
+        Assert.assertEquals(6, line.getEnd(0));
+        Assert.assertArrayEquals(new String[]{"sysinfo", "-os"}, line.getArguments());
+
+        Assert.assertNull(CommandLine.parse("exit").getArguments());
+        Assert.assertTrue(CommandLine.parse("   ").isEmpty());
+        Assert.assertTrue(CommandLine.parse(null).isEmpty());
+        Assert.assertFalse(line.isBackground());
+    }
+
+    @Test
+    public void testBackground() {
+        CommandLine line = CommandLine.parse("export -all & ");
+        Assert.assertTrue(line.isBackground());
+        Assert.assertArrayEquals(new String[]{"-all"}, line.getArguments());
+
+        Assert.assertNull(CommandLine.parse("export &").getArguments());
+        Assert.assertFalse(CommandLine.parse("echo '&'").isBackground());
+        Assert.assertFalse(CommandLine.parse("echo a&").isBackground());
+        Assert.assertFalse(CommandLine.parse("&").isBackground());
+    }
+
+    @Test
+    public void testQuotesAndEscapes() {
+        String input = "echo 'a  b' \"say \\\"hi\\\"\" x\\ y pre\"fix\"ed plain \"\"";
+        CommandLine line = CommandLine.parse(input);
+        Assert.assertArrayEquals(
+            new String[]{"a  b", "say \"hi\"", "x y", "prefixed", "plain", ""},
+            line.getArguments()
+        );
+        Assert.assertEquals(6, line.getArgumentList().size());
+        Assert.assertEquals("a  b", line.getArgumentList().get(0).toString());
+        Assert.assertEquals("b", line.getArgumentList().get(0).subSequence(3, 4).toString());
+        Assert.assertEquals(5, line.getStart(1));
+        Assert.assertEquals(11, line.getEnd(1));
+
+        // unquoted tokens are views over the line itself
+        CharSequence plain = line.getArgumentList().get(4);
+        Assert.assertEquals("plain", plain.toString());
+        Assert.assertEquals(input.indexOf("plain"), line.getStart(5));
+    }
+
+    @Test
+    public void testBackslashKeptUnlessEscaping() {
+        CommandLine line = CommandLine.parse("cd C:\\tmp\\new");
+        Assert.assertArrayEquals(new String[]{"C:\\tmp\\new"}, line.getArguments());
+        // a plain token stays a view over the line
+        Assert.assertEquals(line.getEnd(1) - line.getStart(1), line.getToken(1).length());
+
+        line = CommandLine.parse("cp a\\\\b 'c d'\\ e\\\" \\");
+        Assert.assertArrayEquals(new String[]{"a\\b", "c d e\"", "\\"}, line.getArguments());
+    }
+
+    @Test(expected = CliException.class)
+    public void testUnterminatedQuote() {
+        CommandLine.parse("echo 'abc");
+    }
+
+    @Test
+    public void testLookupByRange() {
+        Map<String,Command> map = new HashMap<String,Command>();
+        for(int i = 0; i < 50; i++){
+            map.put("cmd" + i, new NamedCommand("cmd" + i));
+        }
+        CommandTable table = CommandTable.createInstance(map);
+        Assert.assertEquals(50, table.size());
+
+        String input = "  cmd42 arg";
+        CommandLine line = CommandLine.parse(input);
+        Command cmd = table.get(input, line.getStart(0), line.getEnd(0));
+        Assert.assertNotNull(cmd);
+        Assert.assertEquals("cmd42", cmd.getDescriptor().getName());
+
+        Assert.assertNull(table.get("cmd50"));
+        Assert.assertNull(table.get("cmd420"));
+        Assert.assertNull(table.get(""));
+        Assert.assertNotNull(table.get("cmd0"));
+    }
+
+    private static class NamedCommand implements Command {
+        private final String name;
+
+        NamedCommand(String name){
+            this.name = name;
+        }
+
+        @Override
+        public Object execute(Context ctx) {
+            return null;
+        }
+
+        @Override
+        public void plug(Context plug) {}
+
+        @Override
+        public void unplug(Context plug) {}
+
+        @Override
+        public Command.Descriptor getDescriptor() {
+            return new Command.Descriptor() {
+                @Override
+                public String getNamespace() {
+                    return "test";
+                }
+
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public String getDescription() {
+                    return null;
+                }
+
+                @Override
+                public String getUsage() {
+                    return null;
+                }
+
+                @Override
+                public Map<String, String> getArguments() {
+                    return null;
+                }
+            };
+        }
+    }
+}
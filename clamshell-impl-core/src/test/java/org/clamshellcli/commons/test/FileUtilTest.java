@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.clamshellcli.core.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class FileUtilTest {
+    private static final String SHA1_ABC = "a9993e364706816aba3e25717850c26c9cd0d89d";
+
+    @Test
+    public void testSha1() throws Exception {
+        Assert.assertEquals(SHA1_ABC, FileUtil.sha1("abc".getBytes("UTF-8")));
+        Assert.assertEquals(SHA1_ABC, FileUtil.sha1(new ByteArrayInputStream("abc".getBytes("UTF-8"))));
+        Assert.assertEquals("00ff10", FileUtil.toHex(new byte[]{0, (byte)0xff, 0x10}));
+    }
+
+    @Test
+    public void testWriteAtomicallyReplacesFile() throws Exception {
+        File dir = new File("target/fileutil-test");
+        File file = new File(dir, "cache.bin");
+        file.delete();
+        write(file, "first");
+        write(file, "second");
+        Assert.assertEquals("second", read(file));
+        Assert.assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void testFailedWriteKeepsFile() throws Exception {
+        File file = new File("target/fileutil-test/kept.bin");
+        write(file, "kept");
+        try{
+            FileUtil.writeAtomically(file, new FileUtil.Content() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    out.write(1);
+                    throw new IOException("failed");
+                }
+            });
+            Assert.fail("expected an IOException");
+        }catch(IOException ex){
+            // expected
+        }
+        Assert.assertEquals("kept", read(file));
+        file.delete();
+    }
+
+    private static void write(File file, final String content) throws IOException {
+        FileUtil.writeAtomically(file, new FileUtil.Content() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(content.getBytes("UTF-8"));
+            }
+        });
+    }
+
+    private static String read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try{
+            byte[] buf = new byte[(int) file.length()];
+            int n = in.read(buf);
+            return new String(buf, 0, Math.max(n, 0), "UTF-8");
+        }finally{
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import org.clamshellcli.api.Plugin;
+import org.clamshellcli.api.Configurator;
+import org.clamshellcli.core.Clamshell;
+import org.clamshellcli.core.FlatClassLoader;
+import org.clamshellcli.core.JarDiscovery;
+import org.clamshellcli.core.ServiceIndex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class FlatClassLoaderTest {
+    private File indexFile;
+    private FlatClassLoader cl;
+
+    @Before
+    public void setUp() throws Exception {
+        indexFile = File.createTempFile("services", ".idx");
+        indexFile.delete();
+        List<URL> jars = JarDiscovery.createInstance(Configurator.JARFILE_PATTERN)
+            .discover(new File[]{new File("../mock-env/plugins")});
+        cl = FlatClassLoader.createInstance(
+            jars, 
+            Collections.singletonList(new File("./target/test-classes")),
+            ServiceIndex.createInstance(indexFile), 
+            Thread.currentThread().getContextClassLoader()
+        );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cl.close();
+        indexFile.delete();
+    }
+
+    @Test
+    public void testLoadClassFromIndexedJar() throws Exception {
+        Assert.assertTrue(cl.getPackageCount() > 0);
+        Class<?> c = cl.loadClass("org.clamshellcli.test.MockShell");
+        Assert.assertSame(cl, c.getClassLoader());
+        Assert.assertNotNull(c.getPackage());
+    }
+
+    @Test
+    public void testFindInDirectory() throws Exception {
+        URL url = cl.findResource("org/clamshellcli/commons/test/FlatClassLoaderTest.class");
+        Assert.assertNotNull(url);
+        Assert.assertEquals("file", url.getProtocol());
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownPackage() throws Exception {
+        cl.loadClass("org.clamshellcli.nowhere.Missing");
+    }
+
+    @Test
+    public void testResources() throws Exception {
+        URL url = cl.findResource("META-INF/services/" + Plugin.class.getName());
+        Assert.assertNotNull(url);
+        Assert.assertEquals("jar", url.getProtocol());
+        Assert.assertNull(cl.findResource("META-INF/nothing/here"));
+
+        List<Plugin> plugins = Clamshell.Runtime.loadServicePlugins(Plugin.class, cl);
+        Assert.assertEquals(5, plugins.size());
+    }
+}
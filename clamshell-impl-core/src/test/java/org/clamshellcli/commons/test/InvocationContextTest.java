@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.core.BufferedConsole;
+import org.clamshellcli.core.CommandLine;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.ShellContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class InvocationContextTest {
+
+    @Test
+    public void testInvocationValuesStayLocal() {
+        ShellContext parent = ShellContext.createInstance();
+        InvocationContext first = InvocationContext.createInstance(parent, "help exit");
+        InvocationContext second = InvocationContext.createInstance(parent, "sysinfo -mem");
+        first.putValue(ContextKey.COMMAND_LINE_ARGS, new String[]{"exit"});
+        second.putValue(Context.KEY_COMMAND_LINE_ARGS, new String[]{"-mem"});
+
+        Assert.assertEquals("help exit", first.getValue(ContextKey.COMMAND_LINE_INPUT));
+        Assert.assertEquals("sysinfo -mem", second.getValue(Context.KEY_COMMAND_LINE_INPUT));
+        Assert.assertArrayEquals(new String[]{"exit"}, first.getValue(ContextKey.COMMAND_LINE_ARGS));
+        Assert.assertArrayEquals(new String[]{"-mem"}, second.getValue(ContextKey.COMMAND_LINE_ARGS));
+        Assert.assertNull(parent.getValue(ContextKey.COMMAND_LINE_ARGS));
+        Assert.assertNull(parent.getValue(ContextKey.COMMAND_LINE_INPUT));
+    }
+
+    @Test
+    public void testArgumentsMadeFromTokens() {
+        ShellContext parent = ShellContext.createInstance();
+        InvocationContext invocation = InvocationContext.createInstance(parent, "sysinfo -os \"a b\"");
+        ContextKey.COMMAND_LINE_TOKENS.put(invocation, CommandLine.parse("sysinfo -os \"a b\"").getArgumentList());
+
+        String[] args = ContextKey.COMMAND_LINE_ARGS.get(invocation);
+        Assert.assertArrayEquals(new String[]{"-os", "a b"}, args);
+        Assert.assertSame(args, invocation.getValue(Context.KEY_COMMAND_LINE_ARGS));
+
+        ContextKey.COMMAND_LINE_TOKENS.put(invocation, CommandLine.parse("help exit").getArgumentList());
+        Assert.assertArrayEquals(new String[]{"exit"}, ContextKey.COMMAND_LINE_ARGS.get(invocation));
+
+        ContextKey.COMMAND_LINE_ARGS.put(invocation, new String[]{"-mem"});
+        Assert.assertArrayEquals(new String[]{"-mem"}, ContextKey.COMMAND_LINE_ARGS.get(invocation));
+    }
+
+    @Test
+    public void testOtherValuesGoToParent() {
+        ShellContext parent = ShellContext.createInstance();
+        parent.putValue(ContextKey.PROMPT_VALUE, "cli>");
+        InvocationContext invocation = InvocationContext.createInstance(parent, "x");
+
+        Assert.assertEquals("cli>", invocation.getValue(ContextKey.PROMPT_VALUE));
+        invocation.putValue("user.value", "one");
+        Assert.assertEquals("one", parent.getValue("user.value"));
+        Assert.assertEquals("one", invocation.getValues().get("user.value"));
+        Assert.assertEquals("x", invocation.getValues().get(Context.KEY_COMMAND_LINE_INPUT));
+
+        // nested invocations
+        InvocationContext nested = InvocationContext.createInstance(invocation, "y");
+        Assert.assertEquals("y", nested.getValue(ContextKey.COMMAND_LINE_INPUT));
+        Assert.assertEquals("x", invocation.getValue(ContextKey.COMMAND_LINE_INPUT));
+        Assert.assertSame(invocation, nested.getParent());
+    }
+
+    @Test
+    public void testOwnConsoleStaysLocal() {
+        ShellContext parent = ShellContext.createInstance();
+        IOConsole shellConsole = BufferedConsole.createInstance();
+        parent.putValue(ContextKey.CONSOLE_COMPONENT, shellConsole);
+
+        IOConsole jobConsole = BufferedConsole.createInstance();
+        InvocationContext job = InvocationContext.createInstance(parent, "x &", jobConsole);
+        IOConsole swapped = BufferedConsole.createInstance();
+        ContextKey.CONSOLE_COMPONENT.put(job, swapped);
+        Assert.assertSame(swapped, job.getIoConsole());
+        Assert.assertSame(swapped, job.getValue(Context.KEY_CONSOLE_COMPONENT));
+        Assert.assertSame(shellConsole, parent.getIoConsole());
+
+        job.putValue(Context.KEY_CONSOLE_COMPONENT, jobConsole);
+        Assert.assertSame(jobConsole, ContextKey.CONSOLE_COMPONENT.get(job));
+        job.removeValue(Context.KEY_CONSOLE_COMPONENT);
+        Assert.assertSame(shellConsole, parent.getIoConsole());
+
+        // without its own console, the invocation writes the shell's
+        InvocationContext plain = InvocationContext.createInstance(parent, "x");
+        ContextKey.CONSOLE_COMPONENT.put(plain, swapped);
+        Assert.assertSame(swapped, parent.getIoConsole());
+    }
+
+    @Test
+    public void testTypedKeysOnPlainContext() {
+        // a Context implemented without TypedContext, i.e. by a third-party plugin
+        final Map<String, Object> values = new HashMap<String, Object>();
+        Context plain = (Context) Proxy.newProxyInstance(
+            Context.class.getClassLoader(), new Class<?>[]{Context.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if("putValue".equals(method.getName())){
+                        return values.put((String) args[0], args[1]);
+                    }
+                    if("getValue".equals(method.getName())){
+                        return values.get((String) args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+        ContextKey.PROMPT_VALUE.put(plain, "cli>");
+        Assert.assertEquals("cli>", values.get(Context.KEY_PROMPT_VALUE));
+        Assert.assertEquals("cli>", ContextKey.PROMPT_VALUE.get(plain));
+
+        InvocationContext invocation = InvocationContext.createInstance(plain, "help");
+        ContextKey.COMMAND_LINE_ARGS.put(invocation, new String[]{"exit"});
+        Assert.assertNull(values.get(Context.KEY_COMMAND_LINE_ARGS));
+        Assert.assertEquals("help", ContextKey.COMMAND_LINE_INPUT.get(invocation));
+        Assert.assertEquals("cli>", ContextKey.PROMPT_VALUE.get(invocation));
+    }
+}
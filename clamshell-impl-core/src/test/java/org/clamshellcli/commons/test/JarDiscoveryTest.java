@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import org.clamshellcli.core.JarDiscovery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class JarDiscoveryTest {
+    private static final Pattern JARS = Pattern.compile(".*\\.jar");
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("discovery").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for(File f : dir.listFiles()){
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testDuplicateContentIsSkipped() throws Exception {
+        createJar("b.jar", "one");
+        createJar("a.jar", "one");
+        createJar("c.jar", "two");
+        new File(dir, "notes.txt").createNewFile();
+
+        JarDiscovery discovery = JarDiscovery.createInstance(JARS);
+        List<URL> urls = discovery.discover(new File[]{dir});
+        Assert.assertEquals(2, urls.size());
+        Assert.assertTrue(urls.get(0).getPath().endsWith("/a.jar"));
+        Assert.assertTrue(urls.get(1).getPath().endsWith("/c.jar"));
+        Assert.assertEquals(1, discovery.getDuplicateCount());
+    }
+
+    @Test
+    public void testSamePathIsAddedOnce() throws Exception {
+        File jar = createJar("a.jar", "one");
+        JarDiscovery discovery = JarDiscovery.createInstance(JARS);
+        List<URL> urls = discovery.discover(new File[]{dir, jar, new File(dir, "../" + dir.getName())});
+        Assert.assertEquals(1, urls.size());
+        Assert.assertEquals(2, discovery.getDuplicateCount());
+    }
+
+    @Test
+    public void testInvalidJarIsSkipped() throws Exception {
+        createJar("a.jar", "one");
+        FileOutputStream out = new FileOutputStream(new File(dir, "broken.jar"));
+        try{
+            out.write("not a jar".getBytes("UTF-8"));
+        }finally{
+            out.close();
+        }
+        List<URL> urls = JarDiscovery.createInstance(JARS).discover(new File[]{dir});
+        Assert.assertEquals(1, urls.size());
+    }
+
+    private File createJar(String name, String content) throws Exception {
+        File f = new File(dir, name);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(f));
+        try{
+            ZipEntry entry = new ZipEntry("content.txt");
+            entry.setTime(0);
+            out.putNextEntry(entry);
+            out.write(content.getBytes("UTF-8"));
+            out.closeEntry();
+        }finally{
+            out.close();
+        }
+        return f;
+    }
+}
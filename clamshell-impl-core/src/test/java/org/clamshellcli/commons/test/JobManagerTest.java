@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import org.clamshellcli.core.JobManager;
+import org.clamshellcli.core.JobManager.Job;
+import org.clamshellcli.core.JobManager.State;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class JobManagerTest {
+    private JobManager jobs;
+
+    @Before
+    public void setUp() {
+        jobs = JobManager.createInstance();
+    }
+
+    @After
+    public void tearDown() {
+        jobs.shutdown();
+    }
+
+    @Test
+    public void testOutputIsBuffered() throws Exception {
+        final CountDownLatch proceed = new CountDownLatch(1);
+        Job job = jobs.submit("export", new JobManager.Task() {
+            @Override
+            public void run(Job job) throws Exception {
+                job.getConsole().printf("first%n");
+                proceed.await();
+                job.getConsole().println("second");
+            }
+        });
+        Assert.assertEquals(1, job.getId());
+        Assert.assertSame(job, jobs.getJob("%1"));
+        Assert.assertNull(jobs.getJob("x"));
+
+        String out = job.takeOutput();
+        for(int i = 0; out.isEmpty() && i < 1000; i++){
+            Thread.sleep(5);
+            out = job.takeOutput();
+        }
+        Assert.assertEquals(String.format("first%n"), out);
+        Assert.assertEquals(State.RUNNING, job.getState());
+        Assert.assertTrue(jobs.takeFinished().isEmpty());
+
+        proceed.countDown();
+        Assert.assertTrue(job.await(5000));
+        Assert.assertEquals(State.DONE, job.getState());
+        Assert.assertEquals(String.format("second%n"), job.takeOutput());
+        Assert.assertEquals(Arrays.asList(job), jobs.takeFinished());
+        Assert.assertTrue(jobs.takeFinished().isEmpty());
+    }
+
+    @Test
+    public void testKillAndFailure() throws Exception {
+        Job sleeper = jobs.submit("sleep", new JobManager.Task() {
+            @Override
+            public void run(Job job) throws Exception {
+                Thread.sleep(60000);
+            }
+        });
+        Job failing = jobs.submit("fail", new JobManager.Task() {
+            @Override
+            public void run(Job job) throws Exception {
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        Assert.assertTrue(sleeper.kill());
+        Assert.assertFalse(sleeper.kill());
+        Assert.assertEquals(State.KILLED, sleeper.getState());
+        Assert.assertTrue(sleeper.await(0));
+
+        Assert.assertTrue(failing.await(5000));
+        Assert.assertEquals(State.FAILED, failing.getState());
+        Assert.assertEquals("boom", failing.getError().getMessage());
+
+        Assert.assertSame(sleeper, jobs.remove(sleeper.getId()));
+        Assert.assertEquals(Arrays.asList(failing), jobs.getJobs());
+    }
+}
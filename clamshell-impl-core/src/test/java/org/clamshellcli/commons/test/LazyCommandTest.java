@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.core.LazyCommand;
+import org.clamshellcli.core.ServiceIndex;
+import org.clamshellcli.core.ShellContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class LazyCommandTest {
+    private static int created;
+    private static int plugged;
+    private File indexFile;
+    private File jarFile;
+
+    public static class CountingCommand implements Command {
+        public CountingCommand(){
+            created++;
+        }
+
+        @Override
+        public Descriptor getDescriptor() {
+            return new Command.Descriptor() {
+                @Override public String getNamespace() {return "test";}
+                @Override public String getName() {return "count";}
+                @Override public String getDescription() {return "Counts instances.";}
+                @Override public String getUsage() {return "Type 'count'";}
+                @Override public Map<String, String> getArguments() {
+                    return Collections.singletonMap("-all", "All of them.");
+                }
+            };
+        }
+
+        @Override
+        public Object execute(Context ctx) {
+            return "executed";
+        }
+
+        @Override
+        public void plug(Context plug) {
+            plugged++;
+        }
+
+        @Override
+        public void unplug(Context plug) {
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        created = 0;
+        plugged = 0;
+        indexFile = File.createTempFile("services", ".idx");
+        indexFile.delete();
+        jarFile = File.createTempFile("commands", ".jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile));
+        try{
+            out.putNextEntry(new ZipEntry("META-INF/services/" + Command.class.getName()));
+            out.write(CountingCommand.class.getName().getBytes("UTF-8"));
+            out.closeEntry();
+        }finally{
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        indexFile.delete();
+        jarFile.delete();
+    }
+
+    @Test
+    public void testColdStartRecordsDescriptor() throws Exception {
+        List<Command> cmds = LazyCommand.loadCommands(createLoader(), ServiceIndex.createInstance(indexFile));
+        Assert.assertEquals(1, cmds.size());
+        Assert.assertEquals(1, created);
+        Assert.assertEquals(0, plugged);
+        Assert.assertEquals("count", cmds.get(0).getDescriptor().getName());
+    }
+
+    @Test
+    public void testWarmStartDefersCreation() throws Exception {
+        LazyCommand.loadCommands(createLoader(), ServiceIndex.createInstance(indexFile));
+        created = 0;
+
+        List<Command> cmds = LazyCommand.loadCommands(createLoader(), ServiceIndex.createInstance(indexFile));
+        Assert.assertEquals(1, cmds.size());
+        Assert.assertEquals(0, created);
+
+        LazyCommand cmd = (LazyCommand) cmds.get(0);
+        Assert.assertFalse(cmd.isLoaded());
+        Command.Descriptor desc = cmd.getDescriptor();
+        Assert.assertEquals("test", desc.getNamespace());
+        Assert.assertEquals("count", desc.getName());
+        Assert.assertEquals("Type 'count'", desc.getUsage());
+        Assert.assertEquals("All of them.", desc.getArguments().get("-all"));
+
+        Context ctx = ShellContext.createInstance();
+        Assert.assertEquals("executed", cmd.execute(ctx));
+        Assert.assertEquals("executed", cmd.execute(ctx));
+        Assert.assertTrue(cmd.isLoaded());
+        Assert.assertEquals(1, created);
+        Assert.assertEquals(1, plugged);
+    }
+
+    @Test
+    public void testWarmStartDefersCreationFromClassDirectory() throws Exception {
+        File classesDir = new File("target/lazy-command-classes");
+        File svcFile = new File(classesDir, "META-INF/services/" + Command.class.getName());
+        svcFile.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(svcFile);
+        try{
+            writer.write(CountingCommand.class.getName());
+        }finally{
+            writer.close();
+        }
+        ClassLoader cl = new URLClassLoader(
+            new URL[]{classesDir.toURI().toURL()},
+            Thread.currentThread().getContextClassLoader()
+        );
+
+        LazyCommand.loadCommands(cl, ServiceIndex.createInstance(indexFile));
+        Assert.assertEquals(1, created);
+        created = 0;
+
+        List<Command> cmds = LazyCommand.loadCommands(cl, ServiceIndex.createInstance(indexFile));
+        Assert.assertEquals(1, cmds.size());
+        Assert.assertEquals(0, created);
+        Assert.assertEquals("count", cmds.get(0).getDescriptor().getName());
+        Assert.assertFalse(((LazyCommand) cmds.get(0)).isLoaded());
+        svcFile.delete();
+    }
+
+    private ClassLoader createLoader() throws Exception {
+        return new URLClassLoader(
+            new URL[]{jarFile.toURI().toURL()},
+            Thread.currentThread().getContextClassLoader()
+        );
+    }
+}
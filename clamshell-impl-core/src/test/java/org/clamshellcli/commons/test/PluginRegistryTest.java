@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.Plugin;
+import org.clamshellcli.api.Prompt;
+import org.clamshellcli.core.PluginRegistry;
+import org.clamshellcli.core.ShellContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class PluginRegistryTest {
+
+    @Test
+    public void testListsAreCachedPerType() {
+        Plugin plain = new TestPlugin();
+        Prompt prompt = new TestPrompt();
+        PluginRegistry registry = PluginRegistry.createInstance(Arrays.asList(plain, prompt));
+
+        List<Prompt> prompts = registry.getPluginsByType(Prompt.class);
+        Assert.assertEquals(Arrays.asList(prompt), prompts);
+        Assert.assertSame(prompts, registry.getPluginsByType(Prompt.class));
+        Assert.assertEquals(2, registry.getPluginsByType(Plugin.class).size());
+        try{
+            prompts.add(new TestPrompt());
+            Assert.fail("cached lists should be read-only");
+        }catch(UnsupportedOperationException ex){
+            // expected
+        }
+    }
+
+    @Test
+    public void testContextKeepsIndexCurrent() {
+        ShellContext ctx = ShellContext.createInstance();
+        ctx.putValue(Context.KEY_PLUGINS, new ArrayList<Plugin>(Arrays.asList(new TestPlugin())));
+        Assert.assertTrue(ctx.getPluginsByType(Prompt.class).isEmpty());
+
+        Prompt prompt = new TestPrompt();
+        ctx.addPlugin(prompt);
+        Assert.assertEquals(Arrays.asList(prompt), ctx.getPluginsByType(Prompt.class));
+        Assert.assertEquals(2, ctx.getPlugins().size());
+
+        ctx.removePlugin(prompt);
+        Assert.assertTrue(ctx.getPluginsByType(Prompt.class).isEmpty());
+        Assert.assertEquals(1, ctx.getPlugins().size());
+    }
+
+    private static class TestPlugin implements Plugin {
+        @Override
+        public void plug(Context plug) {}
+
+        @Override
+        public void unplug(Context plug) {}
+    }
+
+    private static class TestPrompt extends TestPlugin implements Prompt {
+        @Override
+        public String getValue(Context ctx) {
+            return "test>";
+        }
+    }
+}
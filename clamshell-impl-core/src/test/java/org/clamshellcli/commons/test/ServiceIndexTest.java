@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.clamshellcli.api.Plugin;
+import org.clamshellcli.api.Shell;
+import org.clamshellcli.core.ServiceIndex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class ServiceIndexTest {
+    private File indexFile;
+    private File jarFile;
+
+    @Before
+    public void setUp() throws Exception {
+        indexFile = File.createTempFile("services", ".idx");
+        indexFile.delete();
+        jarFile = File.createTempFile("plugin", ".jar");
+        writeJar(jarFile, "test.PluginA\n# a comment\ntest.PluginB");
+    }
+
+    @After
+    public void tearDown() {
+        indexFile.delete();
+        jarFile.delete();
+    }
+
+    @Test
+    public void testFindProviders() throws Exception {
+        ServiceIndex index = ServiceIndex.createInstance(indexFile);
+        List<String> names = index.findProviders(Plugin.class, createLoader());
+        Assert.assertEquals(2, names.size());
+        Assert.assertEquals("test.PluginA", names.get(0));
+        Assert.assertEquals("test.PluginB", names.get(1));
+        Assert.assertTrue(index.findProviders(Shell.class, createLoader()).isEmpty());
+        Assert.assertEquals(1, index.getRescannedCount());
+        Assert.assertEquals(0, index.getReusedCount());
+    }
+
+    @Test
+    public void testWarmStartReusesIndex() throws Exception {
+        ServiceIndex index = ServiceIndex.createInstance(indexFile);
+        index.findProviders(Plugin.class, createLoader());
+        index.save();
+        Assert.assertTrue(indexFile.exists());
+
+        ServiceIndex warm = ServiceIndex.createInstance(indexFile);
+        List<String> names = warm.findProviders(Plugin.class, createLoader());
+        Assert.assertEquals(2, names.size());
+        Assert.assertEquals(1, warm.getReusedCount());
+        Assert.assertEquals(0, warm.getRescannedCount());
+    }
+
+    @Test
+    public void testChangedJarIsRescanned() throws Exception {
+        ServiceIndex index = ServiceIndex.createInstance(indexFile);
+        index.findProviders(Plugin.class, createLoader());
+        index.save();
+
+        writeJar(jarFile, "test.PluginC");
+        jarFile.setLastModified(jarFile.lastModified() + 2000);
+
+        ServiceIndex warm = ServiceIndex.createInstance(indexFile);
+        List<String> names = warm.findProviders(Plugin.class, createLoader());
+        Assert.assertEquals(1, names.size());
+        Assert.assertEquals("test.PluginC", names.get(0));
+        Assert.assertEquals(0, warm.getReusedCount());
+        Assert.assertEquals(1, warm.getRescannedCount());
+    }
+
+    private ClassLoader createLoader() throws Exception {
+        return new URLClassLoader(new URL[]{jarFile.toURI().toURL()}, null);
+    }
+
+    private static void writeJar(File file, String providers) throws Exception {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try{
+            out.putNextEntry(new ZipEntry("META-INF/services/" + Plugin.class.getName()));
+            out.write(providers.getBytes("UTF-8"));
+            out.closeEntry();
+        }finally{
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.clamshellcli.api.Configurator;
+import org.clamshellcli.core.ShellConfiguration;
+import org.clamshellcli.core.ShellConfigurator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class ShellConfigurationTest {
+    private File configFile;
+
+    @Before
+    public void setUp() throws Exception {
+        configFile = File.createTempFile("cli", ".config");
+    }
+
+    @After
+    public void tearDown() {
+        configFile.delete();
+    }
+
+    @Test
+    public void testTypedModel() {
+        ShellConfiguration config = ShellConfiguration.fromMap(createMap());
+        Assert.assertEquals("4", config.getProperty("startupThreads"));
+        Assert.assertEquals("x", config.getProperty("missing", "x"));
+
+        ShellConfiguration.ControllerConfig ctrl = config.getController("test.Controller");
+        Assert.assertFalse(ctrl.isEnabled());
+        Assert.assertTrue(ctrl.getInputPattern().matcher("help me").matches());
+        Assert.assertEquals(10, ctrl.getPriority());
+        Assert.assertTrue(config.getController("test.Other").isEnabled());
+        Assert.assertEquals(0, config.getController("test.Other").getPriority());
+        Assert.assertNull(config.getController("test.Unknown"));
+    }
+
+    @Test
+    public void testCommandTimeouts() {
+        Map<String,Object> raw = createMap();
+        Map<String,Object> cmds = new HashMap<String,Object>();
+        cmds.put("*", timeout("1m"));
+        cmds.put("syscmd:*", timeout("30s"));
+        cmds.put("sysinfo", timeout(1500.0));
+        cmds.put("syscmd:help", timeout("250ms"));
+        cmds.put("bad", timeout("soon"));
+        raw.put(Configurator.KEY_CONFIG_CMDS, cmds);
+        ShellConfiguration config = ShellConfiguration.fromMap(raw);
+
+        Assert.assertEquals(250, config.findCommand("syscmd", "help").getTimeout());
+        Assert.assertEquals(1500, config.findCommand("syscmd", "sysinfo").getTimeout());
+        Assert.assertEquals(30000, config.findCommand("syscmd", "exit").getTimeout());
+        Assert.assertEquals("*", config.findCommand("app", "deploy").getKey());
+        Assert.assertEquals(60000, config.findCommand(null, "deploy").getTimeout());
+        Assert.assertNull(ShellConfiguration.fromMap(createMap()).findCommand("syscmd", "help"));
+        try{
+            config.findCommand("app", "bad").getTimeout();
+            Assert.fail("expected IllegalArgumentException");
+        }catch(IllegalArgumentException ex){
+            // expected
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        ShellConfiguration config = ShellConfiguration.fromMap(createMap());
+        ((Map<String,Object>)config.getConfigMap().get(Configurator.KEY_CONFIG_PROPS)).put("a", "b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPattern() {
+        Map<String,Object> raw = createMap();
+        ((Map<String,Object>)((Map<String,Object>)raw.get(Configurator.KEY_CONFIG_CTRLS))
+            .get("test.Other")).put(ShellConfiguration.KEY_CTRL_INPUT_PATTERN, "(");
+        ShellConfiguration.fromMap(raw).getController("test.Other").getInputPattern();
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        ShellConfiguration config = ShellConfiguration.fromMap(createMap());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        config.writeTo(out);
+        out.close();
+
+        ShellConfiguration copy = ShellConfiguration.readFrom(
+            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+        );
+        Assert.assertEquals(config.getConfigMap(), copy.getConfigMap());
+        Assert.assertEquals("\\s*help\\b.*",
+            copy.getController("test.Controller").getInputPattern().pattern());
+    }
+
+    @Test
+    public void testSnapshotReusedUntilFileChanges() throws Exception {
+        writeConfig("{\"properties\":{\"a\":\"1\"}}");
+        ShellConfigurator first = ShellConfigurator.createNewInstance(configFile.getPath());
+        try{
+            Assert.assertFalse(first.isFromSnapshot());
+            Assert.assertEquals("1", first.getPropertiesMap().get("a"));
+
+            ShellConfigurator second = ShellConfigurator.createNewInstance(configFile.getPath());
+            Assert.assertTrue(second.isFromSnapshot());
+            Assert.assertEquals("1", second.getPropertiesMap().get("a"));
+
+            writeConfig("{\"properties\":{\"a\":\"2\"}}");
+            ShellConfigurator third = ShellConfigurator.createNewInstance(configFile.getPath());
+            Assert.assertFalse(third.isFromSnapshot());
+            Assert.assertEquals("2", third.getPropertiesMap().get("a"));
+        }finally{
+            if(first.getSnapshotFile() != null){
+                first.getSnapshotFile().delete();
+            }
+        }
+    }
+
+    private void writeConfig(String content) throws Exception {
+        FileWriter writer = new FileWriter(configFile);
+        try{
+            writer.write(content);
+        }finally{
+            writer.close();
+        }
+    }
+
+    private static Map<String,Object> timeout(Object value) {
+        Map<String,Object> cmd = new HashMap<String,Object>();
+        cmd.put(ShellConfiguration.KEY_CMD_TIMEOUT, value);
+        return cmd;
+    }
+
+    private static Map<String,Object> createMap() {
+        Map<String,Object> props = new HashMap<String,Object>();
+        props.put("startupThreads", "4");
+
+        Map<String,Object> ctrl = new HashMap<String,Object>();
+        ctrl.put(ShellConfiguration.KEY_CTRL_ENABLED, "false");
+        ctrl.put(ShellConfiguration.KEY_CTRL_INPUT_PATTERN, "\\s*help\\b.*");
+        ctrl.put(ShellConfiguration.KEY_CTRL_PRIORITY, "10");
+        ctrl.put("expectedInputs", Arrays.asList("help", 1.0, true));
+        Map<String,Object> other = new HashMap<String,Object>();
+        other.put("note", null);
+
+        Map<String,Object> ctrls = new HashMap<String,Object>();
+        ctrls.put("test.Controller", ctrl);
+        ctrls.put("test.Other", other);
+
+        Map<String,Object> raw = new HashMap<String,Object>();
+        raw.put(Configurator.KEY_CONFIG_PROPS, props);
+        raw.put(Configurator.KEY_CONFIG_CTRLS, ctrls);
+        return raw;
+    }
+}
@@ -26,11 +26,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
 import org.clamshellcli.api.Plugin;
 import org.clamshellcli.api.Shell;
 import org.clamshellcli.core.Clamshell;
 import org.clamshellcli.core.ShellContext;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -121,6 +123,109 @@ public class ShellContextTest {
         assert p.P.equals("Human");        
     }
     
+    @Test
+    public void testTypedKeys(){
+        ShellContext ctx = ShellContext.createInstance();
+        ctx.putValue(ContextKey.COMMAND_LINE_ARGS, new String[]{"a", "b"});
+        String[] args = ctx.getValue(ContextKey.COMMAND_LINE_ARGS);
+        assert args.length == 2;
+        // the String key and the typed key share the slot
+        assert ctx.getValue(Context.KEY_COMMAND_LINE_ARGS) == args;
+        ctx.putValue(Context.KEY_COMMAND_LINE_INPUT, "help");
+        assert "help".equals(ctx.getValue(ContextKey.COMMAND_LINE_INPUT));
+        assert ctx.getValues().get(Context.KEY_COMMAND_LINE_INPUT).equals("help");
+        ctx.removeValue(Context.KEY_COMMAND_LINE_INPUT);
+        assert ctx.getValue(ContextKey.COMMAND_LINE_INPUT) == null;
+
+        // user keys are stored by name
+        ContextKey<Integer> count = ContextKey.create("user.count");
+        ctx.putValue(count, 3);
+        assert ctx.getValue(count) == 3;
+        assert Integer.valueOf(3).equals(ctx.getValue("user.count"));
+    }
+    
+    @Test
+    public void testBuiltInKeyNames(){
+        Assert.assertSame(ContextKey.COMMANDS, ContextKey.forName(Context.KEY_COMMANDS));
+        Assert.assertNull(ContextKey.forName("user.value"));
+        Assert.assertNull(ContextKey.forName("key.user"));
+        Assert.assertNull(ContextKey.forName(null));
+        for(String name : ContextKey.getBuiltIns().keySet()){
+            Assert.assertTrue(name.startsWith("key."));
+        }
+    }
+
+    @Test
+    public void testSnapshot(){
+        ShellContext ctx = ShellContext.createInstance();
+        ctx.putValue(ContextKey.COMMAND_LINE_INPUT, "help");
+        ctx.putValue("user.value", "one");
+        ShellContext snapshot = ctx.snapshot();
+        ctx.putValue(ContextKey.COMMAND_LINE_INPUT, "exit");
+        ctx.putValue("user.value", "two");
+
+        assert "help".equals(snapshot.getValue(ContextKey.COMMAND_LINE_INPUT));
+        assert "one".equals(snapshot.getValue("user.value"));
+        assert "exit".equals(ctx.getValue(ContextKey.COMMAND_LINE_INPUT));
+        assert snapshot.isReadOnly();
+        try{
+            snapshot.putValue("user.value", "three");
+            assert false : "snapshot should be read-only";
+        }catch(UnsupportedOperationException ex){
+            // expected
+        }
+    }
+    
+    @Test
+    public void testSnapshotDuringWrites() throws Exception {
+        final ShellContext ctx = ShellContext.createInstance();
+        // the writer keeps a user value equal to the prompt value
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for(int i = 0; i < 2000; i++){
+                    ctx.putValue("user.count", String.valueOf(i));
+                    ctx.putValue(ContextKey.PROMPT_VALUE, String.valueOf(i));
+                }
+            }
+        });
+        writer.start();
+        while(writer.isAlive()){
+            ShellContext snapshot = ctx.snapshot();
+            Object count = snapshot.getValue("user.count");
+            String prompt = snapshot.getValue(ContextKey.PROMPT_VALUE);
+            if(prompt != null){
+                // the count is written first: it is equal to the prompt or one
+                // ahead (a write in progress), never behind or further ahead
+                int ahead = Integer.parseInt((String) count) - Integer.parseInt(prompt);
+                Assert.assertTrue(ahead == 0 || ahead == 1);
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        final ShellContext ctx = ShellContext.createInstance();
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++){
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < 500; i++){
+                        ctx.putValue("key." + id + "." + i, i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread t : threads){
+            t.join();
+        }
+        assert ctx.getValues().size() == 2000;
+    }
+    
     @Test
     public void testGetConfigurator(){
         assert context.getConfigurator() != null;
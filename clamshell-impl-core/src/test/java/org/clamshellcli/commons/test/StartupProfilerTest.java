@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.commons.test;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.clamshellcli.api.Plugin;
+import org.clamshellcli.core.Clamshell;
+import org.clamshellcli.core.ServiceIndex;
+import org.clamshellcli.core.StartupProfiler;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class StartupProfilerTest {
+
+    @Test
+    public void testDisabledProfilerRecordsNothing() {
+        StartupProfiler.start("ignored").end();
+        for(StartupProfiler.Record r : StartupProfiler.getRecords()){
+            Assert.assertFalse("ignored".equals(r.getPhase()));
+        }
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        File json = File.createTempFile("profile", ".json");
+        try{
+            StartupProfiler.enable(json);
+            StartupProfiler.Phase phase = StartupProfiler.start("allocate");
+            byte[][] garbage = new byte[64][];
+            for(int i = 0; i < garbage.length; i++){
+                garbage[i] = new byte[1024];
+            }
+            phase.end();
+
+            List<StartupProfiler.Record> records = StartupProfiler.getRecords();
+            StartupProfiler.Record allocate = records.get(records.size() - 1);
+            Assert.assertEquals("allocate", allocate.getPhase());
+            Assert.assertTrue(allocate.getWallMillis() >= 0);
+
+            StringWriter out = new StringWriter();
+            StartupProfiler.report(new PrintWriter(out));
+            Assert.assertFalse(StartupProfiler.isEnabled());
+            Assert.assertTrue(out.toString().contains("allocate"));
+            Assert.assertTrue(out.toString().contains("jvm start"));
+
+            Map<?,?> doc;
+            FileReader reader = new FileReader(json);
+            try{
+                doc = new Gson().fromJson(reader, Map.class);
+            }finally{
+                reader.close();
+            }
+            Assert.assertNotNull(doc.get("firstPromptMillis"));
+            Assert.assertEquals(2, ((List<?>)doc.get("phases")).size());
+        }finally{
+            json.delete();
+        }
+    }
+
+    @Test
+    public void testReportShowsServiceIndexCounts() throws Exception {
+        File json = File.createTempFile("profile", ".json");
+        try{
+            StartupProfiler.enable(json);
+            ClassLoader cl = Clamshell.ClassManager.getClassLoaderFromFiles(
+                new File[]{new File("../mock-env/plugins")},
+                Pattern.compile(".*\\.jar"),
+                Thread.currentThread().getContextClassLoader()
+            );
+            Clamshell.Runtime.loadServicePlugins(Plugin.class, cl);
+            ServiceIndex index = Clamshell.Runtime.getServiceIndex();
+            Assert.assertNotNull(index);
+            int reused = index.getReusedCount();
+            int rescanned = index.getRescannedCount();
+            Assert.assertTrue(reused + rescanned > 0);
+
+            StringWriter out = new StringWriter();
+            StartupProfiler.report(new PrintWriter(out));
+            Assert.assertTrue(out.toString().contains(
+                "Service index: " + reused + " jar(s) reused, " + rescanned + " rescanned"
+            ));
+
+            Map<?,?> doc;
+            FileReader reader = new FileReader(json);
+            try{
+                doc = new Gson().fromJson(reader, Map.class);
+            }finally{
+                reader.close();
+            }
+            Map<?,?> counts = (Map<?,?>)doc.get("serviceIndex");
+            Assert.assertEquals(reused, ((Number)counts.get("reused")).intValue());
+            Assert.assertEquals(rescanned, ((Number)counts.get("rescanned")).intValue());
+        }finally{
+            json.delete();
+        }
+    }
+}
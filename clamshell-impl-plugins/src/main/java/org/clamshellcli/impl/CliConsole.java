@@ -28,11 +28,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import jline.Terminal;
 import jline.TerminalFactory;
+import jline.UnsupportedTerminal;
 import jline.console.ConsoleReader;
+import jline.console.completer.Completer;
 import jline.console.completer.FileNameCompleter;
 import jline.console.history.FileHistory;
 import org.fusesource.jansi.Ansi;
@@ -42,6 +45,14 @@ import org.fusesource.jansi.AnsiRenderWriter;
 /**
  * Default implementation of the IOConsole component.
  * It is responsible for providing input/output interactivity.
+ * <p>
+ * Terminal setup (probing the tty, installing the ANSI console) is slow, so
+ * it is started on a background thread when the first CliConsole is created
+ * and only waited for in plug().  This overlaps it with the loading of the
+ * other plugins.  When the JVM has no console (input is piped or redirected)
+ * the terminal is not probed at all: a dumb terminal is used and ANSI
+ * output is disabled.
+ * </p>
  * @author vladimir.vivien
  */
 public class CliConsole implements IOConsole{
@@ -60,25 +71,74 @@ public class CliConsole implements IOConsole{
     private Map<String, String[]> inputHints;
     private final char defaultMask = '*';
     
-    private final static Terminal TERM;
-    private final static Ansi ANSI;
     private final static File CLI_USERDIR = new File(Configurator.VALUE_USERHOME,".cli");
     private File histFile = new File (CLI_USERDIR, "history.log");
     private FileHistory history;
     
-    static {
-        TERM = TerminalFactory.create();
-        AnsiConsole.systemInstall();
-        Ansi.setEnabled(true);
+    private static Future<Terminal> terminal;
+    
+    public CliConsole() {
+        initTerminal();
+    }
+    
+    /**
+     * Returns true if the JVM is attached to an interactive console.
+     * @return 
+     */
+    public static boolean isInteractive() {
+        return System.console() != null;
+    }
+    
+    /**
+     * Starts terminal setup in the background (first call only).
+     * @return the pending terminal
+     */
+    private static synchronized Future<Terminal> initTerminal() {
+        if(terminal != null) return terminal;
         
-        Ansi.setDetector(new Callable(){
+        final boolean interactive = isInteractive();
+        FutureTask<Terminal> task = new FutureTask<Terminal>(new Callable<Terminal>(){
             @Override
-            public Boolean call() throws Exception {
-                return TERM.isAnsiSupported();
+            public Terminal call() throws Exception {
+                if(!interactive){
+                    Ansi.setEnabled(false);
+                    Terminal term = new UnsupportedTerminal();
+                    term.init();
+                    return term;
+                }
+                final Terminal term = TerminalFactory.get();
+                AnsiConsole.systemInstall();
+                Ansi.setEnabled(true);
+                Ansi.setDetector(new Callable<Boolean>(){
+                    @Override
+                    public Boolean call() throws Exception {
+                        return term.isAnsiSupported();
+                    }
+                });
+                return term;
             }
         });
+        terminal = task;
         
-        ANSI = Ansi.ansi();        
+        if(interactive){
+            Thread t = new Thread(task, "cli-terminal");
+            t.setDaemon(true);
+            t.start();
+        }else{
+            task.run(); // nothing to probe, no need for a thread
+        }
+        return terminal;
+    }
+    
+    private static Terminal awaitTerminal() throws IOException {
+        try{
+            return initTerminal().get();
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while setting up the terminal.", ex);
+        }catch(ExecutionException ex){
+            throw new IOException("Unable to set up the terminal.", ex.getCause());
+        }
     }
 
     @Override
@@ -91,17 +151,17 @@ public class CliConsole implements IOConsole{
         inputHints = new HashMap<String, String[]>();
         
         try {
-            // setup ANSI writer
-            console = new ConsoleReader(System.in, System.out);
-            out = new AnsiRenderWriter(console.getOutput(), true);
-            
             // ensure clamshell user dir exists
             if(!CLI_USERDIR.exists()){
                 CLI_USERDIR.mkdirs();
             }
-            // setup history
+            // load history while the terminal is being set up
             history = new FileHistory(histFile);
             history.moveToEnd();
+            
+            // setup ANSI writer
+            console = new ConsoleReader(System.in, System.out, awaitTerminal());
+            out = new AnsiRenderWriter(console.getOutput(), true);
             console.setHistoryEnabled(true);
             console.setHistory(history);
             
@@ -183,6 +243,15 @@ public class CliConsole implements IOConsole{
     public ConsoleReader getReader() {
         return console;
     }
+    
+    /**
+     * Adds a completer to the console reader.  Controllers are plugged
+     * concurrently at startup, so access to the reader's list is serialized.
+     * @param completer 
+     */
+    public synchronized void addCompleter(Completer completer) {
+        console.addCompleter(completer);
+    }
 
     @Override
     public String readLine() {
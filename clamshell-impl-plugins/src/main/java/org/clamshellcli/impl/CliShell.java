@@ -16,18 +16,30 @@
 package org.clamshellcli.impl;
 
 import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
 import org.clamshellcli.api.IOConsole;
 import org.clamshellcli.api.Shell;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Pattern;
+import org.clamshellcli.api.CancellationToken;
 import org.clamshellcli.api.CliException;
-import org.clamshellcli.api.Configurator;
+import org.clamshellcli.api.CommandExecutor;
 import static org.clamshellcli.api.Context.*;
 import org.clamshellcli.api.InputController;
 import org.clamshellcli.api.Prompt;
 import org.clamshellcli.api.SplashScreen;
+import org.clamshellcli.core.InterruptSignal;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.JobManager;
+import org.clamshellcli.core.ShellConfiguration;
+import org.clamshellcli.core.ShellConfiguration.ControllerConfig;
+import org.clamshellcli.core.StartupProfiler;
 
 /**
  * This implementation of the Shell component loads all other components in the system.
@@ -39,15 +51,36 @@ import org.clamshellcli.api.SplashScreen;
  * </lu>the IOConsole for setup.
  * This component also handles non-interactive mode where it executes command
  * passed in as arguments and exits upon completion.
+ * The console thread only reads input: each line is handled on the
+ * CommandExecutor (see DefaultCommandExecutor) while the console thread
+ * waits for it.  Ctrl-C cancels the running command and returns to the
+ * prompt (when the JVM lets the shell handle SIGINT); at the prompt it is
+ * ignored, use exit or Ctrl-D to leave.
  * @author vladimir.vivien
  */
 public class CliShell implements Shell{
+    private static final String PROP_STARTUP_THREADS = "startupThreads";
+    private static final String PROP_SPLASH_SCREEN = "splashScreen";
+    private static final String PROP_SPLASH_TIMEOUT = "splashTimeout";
+    private static final long VALUE_SPLASH_TIMEOUT = 1000;
+    private static final String TASK_CONSOLE = "console";
+    private static final String TASK_PROMPT = "prompt";
+    private static final String TASK_SPLASH = "splash";
+    private static final String TASK_CONTROLLER = "controller-";
+    
     private AtomicBoolean loopRunning;
     private Context context;
+    private ShellConfiguration configuration;
     private IOConsole console;
     private Prompt prompt;
     private List<InputController> controllers;
+    private ControllerDispatcher dispatcher;
+    private CommandExecutor executor;
+    private JobManager jobs;
+    private InterruptSignal interruptSignal;
+    private volatile CancellationToken foreground;
     private Thread consoleThread;
+    private volatile Thread splashThread;
 
     /** 
      * This method will be called when the shell is invoked to handle commands
@@ -76,12 +109,26 @@ public class CliShell implements Shell{
         context = plug;
         loadComponents(plug);
         loopRunning = new AtomicBoolean(true);
+        interruptSignal = InterruptSignal.install(new Runnable() {
+            @Override
+            public void run() {
+                CancellationToken token = foreground;
+                if(token != null) token.cancel();
+            }
+        });
         startConsoleThread();
     }
     
     @Override
     public void unplug(Context plug ){
+        if(interruptSignal != null) interruptSignal.restore();
+        jobs.shutdown();
         unloadComponent(plug);
+        try{
+            executor.unplug(plug);
+        }catch(Exception ex){
+            System.out.println ("WARNING: unable to properly unplug the CommandExecutor instance.");
+        }
         loopRunning.set(false);
         consoleThread.interrupt();
         try{
@@ -95,29 +142,116 @@ public class CliShell implements Shell{
     /**
      * Load components.  
      * Create default where possible if none found on classpath.
+     * The console is plugged first; the prompt and controllers depend on it
+     * and are plugged in parallel once it is ready.  Splash screens are
+     * plugged and rendered on their own thread so they never hold up startup.
+     * Set property "splashScreen" to "false" to skip them.
+     * Once plugged, the controllers are ordered by priority and their input
+     * patterns indexed so each line only reaches the controllers that can
+     * match it (see ControllerDispatcher).
      * @param plug 
      */
-    private void loadComponents(Context plug) {
+    private void loadComponents(final Context plug) {
         context = plug;
+        configuration = ShellConfiguration.of(plug.getConfigurator());
         
         // Load IOConsole Component
         context.putValue(Context.KEY_INPUT_STREAM, System.in);
         context.putValue(Context.KEY_OUTPUT_STREAM, System.out);
         context.putValue(Context.KEY_ERROR_STREAM, System.err);
         
+        // commands (and jobs, for lines ending with &) run on the executor
+        List<CommandExecutor> executors = context.getPluginsByType(CommandExecutor.class);
+        executor = (executors.size() > 0) ? executors.get(0) : new DefaultCommandExecutor();
+        executor.plug(plug);
+        context.putValue(KEY_EXECUTOR_COMPONENT, executor);
+        jobs = JobManager.createInstance(executor);
+        JobManager.KEY.put(context, jobs);
+        
+        StartupScheduler scheduler = new StartupScheduler();
+        
         List<IOConsole> consoles = context.getPluginsByType(IOConsole.class);
         console = (consoles.size() > 0) ? consoles.get(0) : new CliConsole();
-        try{
-            console.plug(plug);
-            context.putValue(KEY_CONSOLE_COMPONENT, console);
-        }catch(Exception ex){
-            // attempt to fail fast if console is broken.
-            throw new CliException (ex);
-        }
+        scheduler.addTask(TASK_CONSOLE, new Runnable() {
+            @Override
+            public void run() {
+                StartupProfiler.Phase phase = StartupProfiler.start("console plug");
+                try{
+                    console.plug(plug);
+                    context.putValue(KEY_CONSOLE_COMPONENT, console);
+                }catch(Exception ex){
+                    // attempt to fail fast if console is broken.
+                    throw new CliException (ex);
+                }finally{
+                    phase.end();
+                }
+            }
+        });
         
         // Load prompt component
         List<Prompt> prompts = context.getPluginsByType(Prompt.class);
         prompt = (prompts.size() > 0) ? prompts.get(0) : new DefaultPrompt();
+        scheduler.addTask(TASK_PROMPT, new Runnable() {
+            @Override
+            public void run() {
+                StartupProfiler.Phase phase = StartupProfiler.start("prompt plug");
+                plugPrompt(plug);
+                phase.end();
+            }
+        }, TASK_CONSOLE);
+                
+        // activate/show splash screens once the console is ready, without
+        // waiting for them.
+        final List<SplashScreen> screens = isSplashEnabled() ? 
+            context.getPluginsByType(SplashScreen.class) : 
+            Collections.<SplashScreen>emptyList();
+        if(screens != null && screens.size() > 0){
+            context.putValue(KEY_SPLASH_SCREENS, screens);
+            scheduler.addTask(TASK_SPLASH, new Runnable() {
+                @Override
+                public void run() {
+                    startSplashThread(plug, screens);
+                }
+            }, TASK_CONSOLE);
+        }
+
+        // activate controllers
+        controllers = context.getPluginsByType(InputController.class);
+        if(controllers.size() > 0){
+            context.putValue(KEY_CONTROLLERS, controllers);
+            for (int i = 0; i < controllers.size(); i++){
+                final InputController ctrl = controllers.get(i);
+                scheduler.addTask(TASK_CONTROLLER + i, new Runnable() {
+                    @Override
+                    public void run() {
+                        StartupProfiler.Phase phase = StartupProfiler.start("controller plug " + ctrl.getClass().getName());
+                        try{
+                            configureController(ctrl);
+                            ctrl.plug(plug);
+                        }catch (Exception ex){
+                            console.printf("WARNING: unable to load/configure controller"
+                                    + " %s [it will be disabled]%n%s%n", 
+                                    ctrl.getClass(), ex.getMessage());
+                            ctrl.setEnabled(false);
+                        }finally{
+                            phase.end();
+                        }
+                    }
+                }, TASK_CONSOLE);
+            }
+        }
+        
+        scheduler.run(getStartupThreads());
+        
+        // order and index the controllers once they are configured
+        dispatcher = ControllerDispatcher.createInstance(controllers, configuration);
+        
+        if(controllers.isEmpty()){
+            console.println("WARNING: No InputControllers found on classpath.");            
+        }
+    }
+    
+    private void plugPrompt(Context plug){
         try{
             prompt.plug(plug);            
         }catch(Exception ex){
@@ -140,41 +274,73 @@ public class CliShell implements Shell{
         }finally{
             context.putValue(KEY_PROMPT_COMPONENT, prompt); // save for later use.
         }
-                
-        // activate/show splash screens
-        List<SplashScreen> screens = context.getPluginsByType(SplashScreen.class);
-        if(screens != null && screens.size() > 0){
-            context.putValue(KEY_SPLASH_SCREENS, screens);
-            
-            for(SplashScreen sc : screens){
-                try{
-                    sc.plug(plug);
-                    sc.render(plug);
-                }catch (Exception ex){
-                    console.printf("WARNING: unable to load/render SplashScreen instance %s%n%s%n", 
-                            sc.getClass(), ex.getMessage());
+    }
+    
+    /**
+     * Plugs and renders the splash screens, in order, on a separate thread.
+     */
+    private void startSplashThread(final Context plug, final List<SplashScreen> screens) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for(SplashScreen sc : screens){
+                    StartupProfiler.Phase phase = StartupProfiler.start("splash render " + sc.getClass().getName());
+                    try{
+                        sc.plug(plug);
+                        sc.render(plug);
+                    }catch (Exception ex){
+                        console.printf("WARNING: unable to load/render SplashScreen instance %s%n%s%n", 
+                                sc.getClass(), ex.getMessage());
+                    }finally{
+                        phase.end();
+                    }
                 }
             }
+        }, "cli-splash");
+        t.setDaemon(true);
+        t.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+        splashThread = t;
+        t.start();
+    }
+    
+    /**
+     * Gives the splash screens a chance to finish before the first prompt
+     * is shown.  The wait is bounded by property "splashTimeout" (ms).
+     */
+    private void awaitSplashScreens() {
+        Thread t = splashThread;
+        if(t == null) return;
+        splashThread = null;
+        try{
+            t.join(getLongProperty(PROP_SPLASH_TIMEOUT, VALUE_SPLASH_TIMEOUT));
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
         }
-
-        // activate controllers
-        controllers = context.getPluginsByType(InputController.class);
-        if(controllers.size() > 0){
-            context.putValue(KEY_CONTROLLERS, controllers);
-            for (InputController ctrl : controllers){
-                try{
-                    configureController(ctrl);
-                    ctrl.plug(plug);
-                }catch (Exception ex){
-                    console.printf("WARNING: unable to load/configure controller"
-                            + " %s [it will be disabled]%n%s%n", 
-                            ctrl.getClass(), ex.getMessage());
-                    ctrl.setEnabled(false);
-                }
+    }
+    
+    private boolean isSplashEnabled() {
+        return !"false".equalsIgnoreCase(configuration.getProperty(PROP_SPLASH_SCREEN));
+    }
+    
+    private long getLongProperty(String name, long defaultValue) {
+        String value = configuration.getProperty(name);
+        if(value != null){
+            try{
+                return Long.parseLong(value.trim());
+            }catch(NumberFormatException ex){
+                console.printf("WARNING: invalid %s value [%s]%n", name, value);
             }
-        }else{
-            console.println("WARNING: No InputControllers found on classpath.");            
         }
+        return defaultValue;
+    }
+    
+    /**
+     * Number of threads used to plug components at startup.  Defaults to
+     * the number of processors, can be set with property "startupThreads".
+     */
+    private int getStartupThreads(){
+        long threads = getLongProperty(PROP_STARTUP_THREADS, Runtime.getRuntime().availableProcessors());
+        return (int) Math.max(1, Math.min(threads, Integer.MAX_VALUE));
     }
     
     private void unloadComponent(Context ctx){
@@ -191,7 +357,8 @@ public class CliShell implements Shell{
         
         
         // unplug splash screens
-        for (SplashScreen screen : ctx.getSplashScreens()){
+        List<SplashScreen> screens = ctx.getSplashScreens();
+        for (SplashScreen screen : (screens != null) ? screens : Collections.<SplashScreen>emptyList()){
             try{
                 screen.unplug(ctx);
             }catch(Exception ex){
@@ -210,37 +377,41 @@ public class CliShell implements Shell{
     }
     
     private void startConsoleThread() {
+        final StartupProfiler.Phase firstPrompt = StartupProfiler.start("first prompt");
         consoleThread = new Thread(new Runnable() {
             @Override
             public void run() {
+                awaitSplashScreens();
                 while (loopRunning.get()) {
                     if (Thread.interrupted()) {
                         return;
                     }
-                    // reset command line arguments from previous command
-                    context.putValue(Context.KEY_COMMAND_LINE_ARGS, null);
-
                     boolean handled = false;
-                    String line = console.readLine(prompt.getValue(context));
+                    reportFinishedJobs();
+                    String promptValue = prompt.getValue(context);
+                    if(StartupProfiler.isEnabled()){
+                        firstPrompt.end();
+                        StartupProfiler.report(console.getWriter());
+                    }
+                    String line = console.readLine(promptValue);
 
-                    if (line == null || line.trim().isEmpty()) {
+                    // end of input (piped input consumed or Ctrl-D): stop the
+                    // loop, the JVM exits and the shutdown hook unplugs the shell
+                    if (line == null) {
+                        console.println();
+                        awaitJobs();
+                        loopRunning.set(false);
+                        return;
+                    }
+                    if (line.trim().isEmpty()) {
                         continue;
                     }
 
-                    context.putValue(Context.KEY_COMMAND_LINE_INPUT, line);
+                    // each line gets its own input/arguments, other values are shared
+                    Context invocation = InvocationContext.createInstance(context, line);
                     if (controllersExist()) {
-                        for (InputController controller : controllers) {
-                            Boolean enabled = controller.isEnabled();
-                            // let controller handle input line if enabled
-                            if(enabled){
-                                try{
-                                    boolean ctrlResult = controller.handle(context);
-                                    handled = handled || ctrlResult;
-                                }catch(Exception ex){
-                                    console.printf("Unable to complete command:%n%s%n", ex.getMessage());
-                                }
-                            }
-                        }
+                        // only controllers whose input pattern matches get the line
+                        handled = runInForeground(invocation, line);
                         // was command line handled.
                         if (!handled) {
                             console.printf(
@@ -257,6 +428,99 @@ public class CliShell implements Shell{
         consoleThread.start();
     }
 
+    /**
+     * Dispatches the line on the CommandExecutor and waits for it to be
+     * handled.  The invocation gets a CancellationToken, cancelled by
+     * Ctrl-C; cancelling interrupts the command and the shell stops
+     * waiting for it.  If the console thread is interrupted, the work is
+     * cancelled too.
+     */
+    private boolean runInForeground(final Context invocation, final String line) {
+        CancellationToken token = CancellationToken.createInstance();
+        ContextKey.CANCELLATION_TOKEN.put(invocation, token);
+        final Future<Boolean> work = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return dispatcher.dispatch(invocation, line);
+            }
+        });
+        token.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                work.cancel(true);
+            }
+        });
+        foreground = token;
+        try{
+            return work.get();
+        }catch(CancellationException ex){
+            console.printf("%nCommand cancelled.%n");
+        }catch(InterruptedException ex){
+            token.cancel();
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException ex){
+            console.printf("Unable to complete command:%n%s%n", ex.getCause().getMessage());
+        }finally{
+            foreground = null;
+        }
+        return true;
+    }
+
+    /**
+     * Tells the user about the background jobs that ended since the last
+     * prompt.  Their output stays buffered until they are brought back with fg.
+     */
+    private void reportFinishedJobs() {
+        for(JobManager.Job job : jobs.takeFinished()){
+            if(job.getState() != JobManager.State.KILLED){
+                console.printf("[%d] %s  %s%n", job.getId(), job.getState(), job.getCommandLine());
+            }
+        }
+    }
+
+    /**
+     * Waits for the background jobs still running at the end of input, then
+     * prints the output of the jobs nobody brought back with fg.  Ctrl-C
+     * kills the jobs instead of waiting for them.
+     */
+    private void awaitJobs() {
+        List<JobManager.Job> running = new ArrayList<JobManager.Job>();
+        for(JobManager.Job job : jobs.getJobs()){
+            if(!job.isDone()) running.add(job);
+        }
+        if(!running.isEmpty()){
+            console.printf("Waiting for %d background job(s), Ctrl-C kills them.%n", running.size());
+            console.getWriter().flush();
+            CancellationToken token = CancellationToken.createInstance();
+            token.onCancel(new Runnable() {
+                @Override
+                public void run() {
+                    jobs.shutdown();
+                }
+            });
+            foreground = token;
+            try{
+                for(JobManager.Job job : running){
+                    while(!job.await(100)){
+                        // keep waiting, Ctrl-C ends the jobs
+                    }
+                }
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }finally{
+                foreground = null;
+            }
+        }
+        reportFinishedJobs();
+        for(JobManager.Job job : jobs.getJobs()){
+            String output = job.takeOutput();
+            if(!output.isEmpty()){
+                console.printf("[%d] output of %s:%n%s", job.getId(), job.getCommandLine(), output);
+            }
+        }
+        console.getWriter().flush();
+    }
+
     /**
      * Are there any controllers installed?
      *
@@ -267,24 +531,10 @@ public class CliShell implements Shell{
     }
     
     private void configureController (InputController controller){
-        String ctrlClassName = this.getClass().getName();
-        Configurator config = context.getConfigurator();
-        
-        Map<String,Map<String,? extends Object>> ctrlsMap = 
-                (Map<String,Map<String,? extends Object>>) config.getControllersMap();
-        
-        if(ctrlsMap != null){
-            Map<String, Object> map = (Map<String, Object>) ctrlsMap.get(ctrlClassName);
-            if(map != null){
-                String inputPattern = (String) map.get("inputPattern");
-                Pattern pattern = (inputPattern != null) ? 
-                        Pattern.compile(inputPattern) : 
-                        Pattern.compile(".*");
-                controller.setInputPattern(pattern);
-                String flag = (String)map.get("enabled");
-                Boolean enabled = Boolean.valueOf((flag != null) ? flag : "true");
-                controller.setEnabled(enabled);
-            }
-        }        
+        ControllerConfig ctrlConfig = configuration.getController(controller.getClass().getName());
+        if(ctrlConfig != null){
+            controller.setInputPattern(ctrlConfig.getInputPattern());
+            controller.setEnabled(ctrlConfig.isEnabled());
+        }
     }
 }
@@ -18,20 +18,31 @@ package org.clamshellcli.impl;
 import java.io.File;
 import org.clamshellcli.api.Command;
 import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
 import org.clamshellcli.core.AnInputController;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.regex.Pattern;
-import jline.console.ConsoleReader;
 import jline.console.completer.AggregateCompleter;
 import jline.console.completer.ArgumentCompleter;
 import jline.console.completer.Completer;
 import jline.console.completer.NullCompleter;
+import org.clamshellcli.api.CancellationToken;
+import org.clamshellcli.api.CliException;
 import org.clamshellcli.api.Configurator;
 import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.api.ResultChannel;
 import org.clamshellcli.core.Clamshell;
+import org.clamshellcli.core.CommandDeadline;
+import org.clamshellcli.core.CommandLine;
+import org.clamshellcli.core.CommandRegistry;
+import org.clamshellcli.core.FlatClassLoader;
+import org.clamshellcli.core.InvocationContext;
+import org.clamshellcli.core.JobManager;
+import org.clamshellcli.core.LazyCommand;
+import org.clamshellcli.core.ShellConfiguration;
+import org.clamshellcli.core.StartupProfiler;
 
 /**
  * <p>
@@ -43,72 +54,89 @@ import org.clamshellcli.core.Clamshell;
  * <p>
  * The controller then maps each Command instance to value Command.Descriptor.name.
  * When the controller receives an input line value, pulled from the context with 
- * Context.KEY_INPUT_LINE, it parses and splits it. The controller then matches
- * the first command it finds that matches input line.startsWith() value.
+ * Context.KEY_INPUT_LINE, it scans it once into tokens and looks the first
+ * token up in the CommandRegistry, by name or by namespace:name.
  * </p>
  * <p>
  * <b>ClassLoading</p>
  * This controller will load the Command instances found in the 'commands'
  * directory.  It will load any file with name ending in *.jar.  It will also
- * load any class files found in directory commands/classes.
+ * load any class files found in directory commands/classes.  When the launcher
+ * runs with a FlatClassLoader, that loader already holds these locations and
+ * no other class loader is created.
+ * </p>
+ * <p>
+ * Commands are loaded lazily: only their descriptors are read at startup and
+ * each Command is created and plugged the first time it is dispatched.
+ * </p>
+ * <p>
+ * <b>Timeouts</b><br/>
+ * The "commands" section of cli.config can set a "timeout" per command
+ * name, qualified name (namespace:name), namespace (namespace:*) or for
+ * all commands (*).  A command still running when its timeout passes is
+ * cancelled (see CancellationToken) and a summary is printed.
  * </p>
  * @author vladimir.vivien
  */
 public class CmdController extends AnInputController{
-    private static Class COMMAND_TYPE = Command.class;
     private static String COMMANDS_DIR_NAME = "commands";
     private static String CLASSES_DIR_NAME = "classes";
     private static String DEFAULT_NAMESPACE="syscmd";
     
-    private Map<String,Command> commands;
-    private String respondsToRegEx = "(.*)\\b"; 
-    private Pattern respondsTo = Pattern.compile(respondsToRegEx);
+    private static final Pattern DEFAULT_PATTERN = Pattern.compile(".*");
     
     public CmdController() {}
     
+    /**
+     * Returns the "inputPattern" of the controller's entry in cli.config,
+     * or .* (every line) when none is configured.
+     */
     @Override
     public Pattern respondsTo() {
-        return respondsTo;
+        Pattern configured = super.respondsTo();
+        return (configured != null) ? configured : DEFAULT_PATTERN;
     }
     
     /**
-     * Handles incoming command-line input.  CmdController first splits the
-     * input into token[N] tokens.  It uses token[0] as the action name mapped 
-     * to the Command.
+     * Handles incoming command-line input.  CmdController scans the input
+     * once into tokens (see CommandLine, quotes and escapes are honored) and
+     * looks token[0] (a name or namespace:name) up in the command registry
+     * without creating a String for it.  Remaining tokens are passed to the
+     * Command as views in Context.KEY_COMMAND_LINE_TOKENS and as a String[] in
+     * Context.KEY_COMMAND_LINE_ARGS (made on first read, see InvocationContext).
+     * Unless the invocation already has a ResultChannel, the command's
+     * results are rendered to the console by a ConsoleResultChannel; the
+     * value returned by the command is emitted too.
+     * A line ending with "&amp;" is run as a background job (see JobManager),
+     * with its output buffered until the job is brought to the foreground.
+     * A line whose first token is not a registered command is declined, so
+     * the next controller can handle it.
      * @param ctx the shell context.
+     * @return true if a command was run or submitted.
      */
     @Override
     public boolean handle(Context ctx) {
-        String cmdLine = (String)ctx.getValue(Context.KEY_COMMAND_LINE_INPUT);
+        String cmdLine = ContextKey.COMMAND_LINE_INPUT.get(ctx);
         boolean handled = false;
 
         // handle command line entry.  NOTE: value can be null
-        if(
-            cmdLine != null && 
-            !cmdLine.trim().isEmpty() &&
-            respondsTo.matcher(cmdLine).matches()
-        ){
-            String[] tokens = cmdLine.trim().split("\\s+");
-            if(commands != null && !commands.isEmpty()){
-                Command cmd = commands.get(tokens[0]);
-                if(cmd != null){
-                    if(tokens.length > 1){
-                        String[] args = Arrays.copyOfRange(tokens, 1, tokens.length);
-                        ctx.putValue(Context.KEY_COMMAND_LINE_ARGS, args);
-                    }
-                    
-                    try{
-                        cmd.execute(ctx);
-                    }catch(Exception ex){
-                        ctx.getIoConsole().printf("WARNING: unable to execute command: [%s]%n%s%n", cmdLine, ex.getMessage());
-                    }
-                }else{
-                    ctx.getIoConsole().printf(
-                            "%nCommand [%s] is unknown. "
-                            + "Type help for a list of installed commands.", 
-                            tokens[0]
-                    );
-                }
+        CommandLine line;
+        try{
+            line = CommandLine.parse(cmdLine);
+        }catch(CliException ex){
+            ctx.getIoConsole().printf("%nUnable to parse command line: %s%n", ex.getMessage());
+            return true;
+        }
+        CommandRegistry commands = CommandRegistry.of(ctx);
+        if(!line.isEmpty() && commands.size() > 0){
+            CharSequence name = line.getToken(0);
+            Command cmd = commands.getCommand(name, 0, name.length());
+            if(cmd != null && line.isBackground()){
+                submitJob(ctx, cmd, line);
+                handled = true;
+            }else if(cmd != null){
+                putArguments(ctx, line);
+                execute(ctx, cmd, cmdLine);
                 handled = true;
             }
         }
@@ -116,6 +144,115 @@ public class CmdController extends AnInputController{
         return handled;
     }
 
+    /**
+     * Puts the argument views in the context.  An InvocationContext makes
+     * the String[] arguments from them only if the command reads them;
+     * other contexts get the String[] too.
+     */
+    private static void putArguments(Context ctx, CommandLine line) {
+        if(line.getTokenCount() < 2) return;
+        ContextKey.COMMAND_LINE_TOKENS.put(ctx, line.getArgumentList());
+        if(!(ctx instanceof InvocationContext)){
+            ContextKey.COMMAND_LINE_ARGS.put(ctx, line.getArguments());
+        }
+    }
+
+    /**
+     * Runs the command within its configured timeout; its results go to the
+     * invocation's channel, or to the console.
+     */
+    private void execute(Context ctx, Command cmd, String cmdLine) {
+        CommandDeadline deadline = startDeadline(ctx, cmd, cmdLine);
+        try{
+            emitResults(ctx, cmd, cmdLine);
+        }finally{
+            if(deadline != null) deadline.finish();
+        }
+    }
+
+    /**
+     * Starts the deadline of the command, if a timeout applies to it.
+     * @return the deadline or null.
+     */
+    private CommandDeadline startDeadline(final Context ctx, Command cmd, final String cmdLine) {
+        Command.Descriptor desc = cmd.getDescriptor();
+        if(desc == null) return null;
+        final ShellConfiguration.CommandConfig config = 
+            ShellConfiguration.of(ctx.getConfigurator()).findCommand(desc.getNamespace(), desc.getName());
+        if(config == null) return null;
+        final long timeout;
+        try{
+            timeout = config.getTimeout();
+        }catch(IllegalArgumentException ex){
+            ctx.getIoConsole().printf("WARNING: %s%n", ex.getMessage());
+            return null;
+        }
+        if(timeout <= 0) return null;
+
+        final long started = System.currentTimeMillis();
+        return CommandDeadline.start(timeout, new Runnable() {
+            @Override
+            public void run() {
+                ctx.getIoConsole().printf(
+                    "%nCommand [%s] timed out: running for %d ms, timeout is %d ms (commands entry \"%s\").%n", 
+                    cmdLine, System.currentTimeMillis() - started, timeout, config.getKey()
+                );
+                CancellationToken token = ContextKey.CANCELLATION_TOKEN.get(ctx);
+                if(token != null) token.cancel();
+            }
+        });
+    }
+
+    private void emitResults(Context ctx, Command cmd, String cmdLine) {
+        ResultChannel channel = ContextKey.RESULT_CHANNEL.get(ctx);
+        boolean ownChannel = (channel == null);
+        if(ownChannel){
+            channel = ConsoleResultChannel.createInstance(ctx.getIoConsole());
+            ContextKey.RESULT_CHANNEL.put(ctx, channel);
+        }
+        try{
+            Object result = cmd.execute(ctx);
+            if(result != null){
+                channel.emit(result);
+            }
+        }catch(CancellationException ex){
+            // cancelled on request, the shell reports it
+        }catch(Exception ex){
+            ctx.getIoConsole().printf("WARNING: unable to execute command: [%s]%n%s%n", cmdLine, ex.getMessage());
+        }finally{
+            if(ownChannel){
+                channel.close();
+                ContextKey.RESULT_CHANNEL.put(ctx, null);
+            }else{
+                channel.flush();
+            }
+        }
+    }
+
+    /**
+     * Starts the command as a job.  The job gets its own invocation, on
+     * the shell context, with the job's buffered console.
+     */
+    private void submitJob(Context ctx, final Command cmd, final CommandLine line) {
+        JobManager jobs = JobManager.getInstance(ctx);
+        if(jobs == null){
+            ctx.getIoConsole().printf("%nBackground jobs are not supported by this shell.%n");
+            return;
+        }
+        final Context shell = (ctx instanceof InvocationContext) ? ((InvocationContext) ctx).getParent() : ctx;
+        final String cmdLine = line.getLine().subSequence(0, line.getEnd(line.getTokenCount() - 1)).toString().trim();
+        JobManager.Job job = jobs.submit(cmdLine, new JobManager.Task() {
+            @Override
+            public void run(JobManager.Job job) throws Exception {
+                Context jobCtx = InvocationContext.createInstance(shell, cmdLine, job.getConsole());
+                ContextKey.CANCELLATION_TOKEN.put(jobCtx, job.getCancellationToken());
+                putArguments(jobCtx, line);
+                execute(jobCtx, cmd, cmdLine);
+            }
+        });
+        ctx.getIoConsole().printf("[%d] %s%n", job.getId(), cmdLine);
+    }
+
     /**
      * Entry point for the plugin.  It builds class path from 'commands' directory.
      * Then loads each Command found.
@@ -126,9 +263,8 @@ public class CmdController extends AnInputController{
         List<Command> allCmds = loadCommands(plug);        
         if(allCmds.size() > 0){
             plug.putValue(Context.KEY_COMMANDS, allCmds);
-            commands = plug.mapCommands(allCmds);
             CmdCompleter completer = new CmdCompleter(allCmds);
-            ConsoleReader console = ((CliConsole)plug.getIoConsole()).getReader();
+            CliConsole console = (CliConsole)plug.getIoConsole();
             console.addCompleter(completer);
             console.addCompleter(NullCompleter.INSTANCE);
         }else{
@@ -156,20 +292,38 @@ public class CmdController extends AnInputController{
         File commandsDir = new File(COMMANDS_DIR_NAME);
         File classesDir  = new File(commandsDir, CLASSES_DIR_NAME);
         IOConsole console = plug.getIoConsole();
-        List<Command> result = Collections.EMPTY_LIST;
+        List<Command> result = new ArrayList<Command>();
+        
+        // the flat class loader already covers commands and commands/classes
+        if(plug.getClassLoader() instanceof FlatClassLoader){
+            StartupProfiler.Phase phase = StartupProfiler.start("load commands");
+            try{
+                result.addAll(LazyCommand.loadCommands(plug.getClassLoader()));
+            }catch(Exception ex){
+                // failure OK. No classes loaded
+            }finally{
+                phase.end();
+            }
+            return result;
+        }
         
         // load classes from jar files
         if(commandsDir.isDirectory()){
             ClassLoader jarsCl = null;
+            StartupProfiler.Phase phase = StartupProfiler.start("classloader commands");
             try{
                 jarsCl = Clamshell.ClassManager.getClassLoaderFromFiles(
                     new File[]{commandsDir}, 
                     Configurator.JARFILE_PATTERN,
                     plug.getClassLoader()
                 );
-                result = Clamshell.Runtime.loadServicePlugins(COMMAND_TYPE, jarsCl);
+                phase.end();
+                phase = StartupProfiler.start("load commands");
+                result.addAll(LazyCommand.loadCommands(jarsCl));
             }catch(Exception ex){
                 // failure OK. No classes loaded
+            }finally{
+                phase.end();
             }
         }
         
@@ -181,7 +335,7 @@ public class CmdController extends AnInputController{
                     new File[]{classesDir}, 
                     Thread.currentThread().getContextClassLoader()
                 );
-                result.addAll(Clamshell.Runtime.loadServicePlugins(COMMAND_TYPE, classesCl));
+                result.addAll(LazyCommand.loadCommands(classesCl));
             }catch(Exception ex){
                 // failure OK. No classes loaded.
             }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.Map;
+import org.clamshellcli.api.IOConsole;
+import org.clamshellcli.api.ResultChannel;
+
+/**
+ * A ResultChannel that renders records to the console as they arrive.
+ * <p>
+ * Each record is written as one line: a CharSequence as is, a Map as
+ * "key: value" pairs, anything else with toString().  An Iterable,
+ * Iterator or array is rendered one element at a time.  Output is flushed
+ * every FLUSH_EVERY records and when the channel is flushed or closed;
+ * nothing is kept once written.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class ConsoleResultChannel implements ResultChannel {
+    private static final int FLUSH_EVERY = 256;
+    private final PrintWriter out;
+    private long count;
+
+    private ConsoleResultChannel(PrintWriter out){
+        this.out = out;
+    }
+
+    /**
+     * Creates a channel writing to the console.
+     * @param console
+     * @return ConsoleResultChannel
+     */
+    public static ConsoleResultChannel createInstance(IOConsole console) {
+        return new ConsoleResultChannel(console.getWriter());
+    }
+
+    /**
+     * Creates a channel writing to the specified writer.
+     * @param out
+     * @return ConsoleResultChannel
+     */
+    public static ConsoleResultChannel createInstance(PrintWriter out) {
+        return new ConsoleResultChannel(out);
+    }
+
+    /**
+     * Returns the number of records written so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void emit(Object record) {
+        if(record == null) return;
+        if(record instanceof Iterable){
+            emitAll(((Iterable<?>) record).iterator());
+        }else if(record instanceof Iterator){
+            emitAll((Iterator<?>) record);
+        }else if(record.getClass().isArray() && !(record instanceof char[])){
+            int length = Array.getLength(record);
+            for(int i = 0; i < length; i++){
+                emit(Array.get(record, i));
+            }
+        }else{
+            render(record);
+            if(++count % FLUSH_EVERY == 0){
+                out.flush();
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        out.flush();
+    }
+
+    private void emitAll(Iterator<?> records) {
+        while(records.hasNext()){
+            emit(records.next());
+        }
+    }
+
+    private void render(Object record) {
+        if(record instanceof Map){
+            boolean first = true;
+            for(Map.Entry<?, ?> e : ((Map<?, ?>) record).entrySet()){
+                if(!first) out.print("  ");
+                out.print(e.getKey());
+                out.print(": ");
+                out.print(e.getValue());
+                first = false;
+            }
+            out.println();
+        }else if(record instanceof char[]){
+            out.println((char[]) record);
+        }else{
+            out.println(record.toString());
+        }
+    }
+}
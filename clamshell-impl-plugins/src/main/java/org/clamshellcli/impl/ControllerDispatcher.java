@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.InputController;
+import org.clamshellcli.core.ShellConfiguration;
+import org.clamshellcli.core.ShellConfiguration.ControllerConfig;
+
+/**
+ * Hands input lines to the InputControllers.
+ * <p>
+ * Controllers are offered a line in priority order (the "priority" value
+ * of their entry in cli.config, higher first, 0 by default); controllers
+ * of equal priority keep their load order.  Only the controllers whose
+ * pattern matches the line are called (see ControllerRouter).  What
+ * happens once a controller has handled the line depends on the Policy,
+ * set with property "controllerDispatch".
+ * </p>
+ * <p>
+ * The dispatcher counts the lines each controller handled.  When property
+ * "controllerAdaptiveOrder" is true, controllers of equal priority are
+ * re-ordered by those counts every REORDER_INTERVAL lines, so the busiest
+ * ones are asked first.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class ControllerDispatcher {
+    private static final Logger log = Logger.getLogger(ControllerDispatcher.class.getName());
+    public static final String PROP_DISPATCH = "controllerDispatch";
+    public static final String PROP_ADAPTIVE_ORDER = "controllerAdaptiveOrder";
+    public static final int REORDER_INTERVAL = 256;
+
+    /**
+     * How a line is dispatched to the matching controllers.
+     */
+    public static enum Policy {
+        /** Every matching controller gets the line (the default). */
+        ALL_MATCH("all-match"),
+        /**
+         * Dispatch stops at the first controller that handles the line;
+         * controllers must return false for lines they do not handle.
+         */
+        FIRST_MATCH("first-match"),
+        /**
+         * Like FIRST_MATCH, but controllers that accept any line (no
+         * pattern or ".*") are only tried after all the others declined.
+         */
+        FALLBACK("fallback");
+
+        private final String value;
+
+        private Policy(String value){
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the policy with the specified config value.
+         * @param value i.e. "first-match"
+         * @return the Policy or null if the value is unknown.
+         */
+        public static Policy forValue(String value) {
+            for(Policy p : values()){
+                if(p.value.equalsIgnoreCase(value)) return p;
+            }
+            return null;
+        }
+    }
+
+    private final InputController[] controllers;
+    private final int[] priorities;
+    private final boolean[] fallbacks;
+    private final Map<InputController, Integer> indexes = new IdentityHashMap<InputController, Integer>();
+    private final AtomicLongArray hits;
+    private final AtomicLong lines = new AtomicLong();
+    private final Policy policy;
+    private final boolean adaptive;
+    private volatile List<InputController> order;
+    private volatile ControllerRouter router;
+
+    private ControllerDispatcher(List<InputController> ctrls, int[] priorities, Policy policy, boolean adaptive){
+        this.controllers = ctrls.toArray(new InputController[ctrls.size()]);
+        this.priorities = priorities;
+        this.policy = policy;
+        this.adaptive = adaptive;
+        this.hits = new AtomicLongArray(controllers.length);
+        this.fallbacks = new boolean[controllers.length];
+        for(int i = 0; i < controllers.length; i++){
+            indexes.put(controllers[i], i);
+            Pattern p = controllers[i].respondsTo();
+            fallbacks[i] = (p == null || ".*".equals(p.pattern()));
+        }
+        reorder();
+    }
+
+    /**
+     * Creates a dispatcher where all controllers have the same priority.
+     * @param controllers plugged controllers, in load order.
+     * @param policy
+     * @return ControllerDispatcher
+     */
+    public static ControllerDispatcher createInstance(List<InputController> controllers, Policy policy) {
+        List<InputController> list = (controllers != null) ? controllers : Collections.<InputController>emptyList();
+        return new ControllerDispatcher(list, new int[list.size()], policy, false);
+    }
+
+    /**
+     * Creates a dispatcher configured from cli.config: controller
+     * priorities, property "controllerDispatch" (all-match, first-match or
+     * fallback) and property "controllerAdaptiveOrder".
+     * @param controllers plugged controllers, in load order.
+     * @param config
+     * @return ControllerDispatcher
+     */
+    public static ControllerDispatcher createInstance(List<InputController> controllers, ShellConfiguration config) {
+        List<InputController> list = (controllers != null) ? controllers : Collections.<InputController>emptyList();
+        int[] priorities = new int[list.size()];
+        for(int i = 0; i < priorities.length; i++){
+            ControllerConfig ctrlConfig = config.getController(list.get(i).getClass().getName());
+            try{
+                priorities[i] = (ctrlConfig != null) ? ctrlConfig.getPriority() : 0;
+            }catch(IllegalArgumentException ex){
+                log.warning(ex.getMessage());
+            }
+        }
+
+        String value = config.getProperty(PROP_DISPATCH, Policy.ALL_MATCH.getValue());
+        Policy policy = Policy.forValue(value);
+        if(policy == null){
+            log.log(Level.WARNING, "Invalid {0} value [{1}], using {2}",
+                new Object[]{PROP_DISPATCH, value, Policy.ALL_MATCH.getValue()});
+            policy = Policy.ALL_MATCH;
+        }
+        boolean adaptive = Boolean.valueOf(config.getProperty(PROP_ADAPTIVE_ORDER));
+        return new ControllerDispatcher(list, priorities, policy, adaptive);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the controllers in the order they are currently offered input.
+     */
+    public List<InputController> getControllers() {
+        return order;
+    }
+
+    /**
+     * Returns the number of lines the controller has handled.
+     */
+    public long getHits(InputController controller) {
+        Integer i = indexes.get(controller);
+        return (i != null) ? hits.get(i) : 0;
+    }
+
+    /**
+     * Dispatches a line to the enabled controllers that match it.  A
+     * controller that throws is reported on the console and counts as not
+     * having handled the line.
+     * @param ctx the context of the invocation.
+     * @param line the input line.
+     * @return true if a controller handled the line.
+     */
+    public boolean dispatch(Context ctx, String line) {
+        List<InputController> candidates = router.route(line);
+        boolean handled = false;
+        if(policy == Policy.FALLBACK){
+            handled = dispatchFirst(candidates, ctx, false) || dispatchFirst(candidates, ctx, true);
+        }else{
+            for(InputController controller : candidates){
+                if(handle(controller, ctx)){
+                    handled = true;
+                    if(policy == Policy.FIRST_MATCH) break;
+                }
+            }
+        }
+        if(adaptive && lines.incrementAndGet() % REORDER_INTERVAL == 0){
+            reorder();
+        }
+        return handled;
+    }
+
+    private boolean dispatchFirst(List<InputController> candidates, Context ctx, boolean fallback) {
+        for(InputController controller : candidates){
+            if(fallbacks[indexes.get(controller)] == fallback && handle(controller, ctx)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean handle(InputController controller, Context ctx) {
+        if(!controller.isEnabled()) return false;
+        try{
+            if(controller.handle(ctx)){
+                hits.incrementAndGet(indexes.get(controller));
+                return true;
+            }
+        }catch(Exception ex){
+            ctx.getIoConsole().printf("Unable to complete command:%n%s%n", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Sorts the controllers by priority (and by hits when adaptive) and
+     * rebuilds the router if the order changed.
+     */
+    private synchronized void reorder() {
+        Integer[] sorted = new Integer[controllers.length];
+        final long[] counts = new long[controllers.length];
+        for(int i = 0; i < sorted.length; i++){
+            sorted[i] = i;
+            counts[i] = adaptive ? hits.get(i) : 0;
+        }
+        // stable: equal controllers keep load order
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if(priorities[a] != priorities[b]){
+                    return (priorities[a] > priorities[b]) ? -1 : 1;
+                }
+                return (counts[a] == counts[b]) ? 0 : (counts[a] > counts[b]) ? -1 : 1;
+            }
+        });
+        List<InputController> ordered = new ArrayList<InputController>(sorted.length);
+        for(Integer i : sorted){
+            ordered.add(controllers[i]);
+        }
+        if(!ordered.equals(order)){
+            router = ControllerRouter.createInstance(ordered);
+            order = Collections.unmodifiableList(ordered);
+        }
+    }
+}
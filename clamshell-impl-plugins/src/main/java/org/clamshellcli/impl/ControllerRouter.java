@@ -0,0 +1,310 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.clamshellcli.api.InputController;
+
+/**
+ * Selects the InputControllers that can respond to an input line.
+ * <p>
+ * The router is built once the controllers are plugged.  It reads the
+ * pattern returned by each controller's respondsTo() and extracts the
+ * literal text every matching line must start with: a plain prefix
+ * ("deploy.*"), or a group of literal alternatives ("(exit|help)\\b.*"),
+ * optionally after "^" and a leading "\\s*".  These prefixes go into a
+ * character trie.  A line is walked through the trie once and only the
+ * controllers whose prefix it starts with (plus the controllers without
+ * a usable prefix) are candidates; each candidate's pattern is then
+ * checked with matches(), as the InputController contract describes.
+ * </p>
+ * <p>
+ * Controllers with no pattern or with ".*" receive every line without a
+ * regex check.  Controllers are returned in their original order.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class ControllerRouter {
+    private static final String META = "\\^$.|?*+()[]{}";
+    private static final String QUANTIFIERS = "?*+{";
+    private static final String MATCH_ALL = ".*";
+    private static final String LEADING_SPACE = "\\s*";
+    private static final int UNSUPPORTED_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.COMMENTS
+        | Pattern.LITERAL | Pattern.UNICODE_CASE | Pattern.CANON_EQ;
+
+    private final InputController[] controllers;
+    private final Pattern[] patterns;
+    private final Node exact = new Node();
+    private final Node spaced = new Node();
+    private final int[] generic;
+    private final int indexed;
+
+    /**
+     * Trie node; targets are the controllers whose prefix ends here.
+     */
+    private static class Node {
+        char[] chars = new char[0];
+        Node[] next = new Node[0];
+        int[] targets = new int[0];
+
+        Node child(char c) {
+            for(int i = 0; i < chars.length; i++){
+                if(chars[i] == c) return next[i];
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node n = child(c);
+            if(n == null){
+                n = new Node();
+                chars = append(chars, c);
+                Node[] grown = new Node[next.length + 1];
+                System.arraycopy(next, 0, grown, 0, next.length);
+                grown[next.length] = n;
+                next = grown;
+            }
+            return n;
+        }
+
+        void addTarget(int index) {
+            for(int t : targets){
+                if(t == index) return;
+            }
+            int[] grown = new int[targets.length + 1];
+            System.arraycopy(targets, 0, grown, 0, targets.length);
+            grown[targets.length] = index;
+            targets = grown;
+        }
+    }
+
+    /**
+     * Literal prefixes of a pattern.
+     */
+    private static class Prefixes {
+        final boolean skipSpace;
+        final List<String> values;
+
+        Prefixes(boolean skipSpace, List<String> values){
+            this.skipSpace = skipSpace;
+            this.values = values;
+        }
+    }
+
+    private ControllerRouter(List<InputController> ctrls){
+        int size = ctrls.size();
+        controllers = ctrls.toArray(new InputController[size]);
+        patterns = new Pattern[size];
+
+        List<Integer> all = new ArrayList<Integer>();
+        int count = 0;
+        for(int i = 0; i < size; i++){
+            Pattern p = controllers[i].respondsTo();
+            if(p == null || (MATCH_ALL.equals(p.pattern()) && (p.flags() & UNSUPPORTED_FLAGS) == 0)){
+                all.add(i);
+                continue;
+            }
+            patterns[i] = p;
+            Prefixes prefixes = prefixesOf(p);
+            if(prefixes == null){
+                all.add(i);
+                continue;
+            }
+            for(String prefix : prefixes.values){
+                Node node = prefixes.skipSpace ? spaced : exact;
+                for(int c = 0; c < prefix.length(); c++){
+                    node = node.addChild(prefix.charAt(c));
+                }
+                node.addTarget(i);
+            }
+            count++;
+        }
+
+        generic = new int[all.size()];
+        for(int i = 0; i < generic.length; i++){
+            generic[i] = all.get(i);
+        }
+        indexed = count;
+    }
+
+    /**
+     * Builds the routing index for the controllers, in dispatch order.
+     * The controllers' patterns are read once, here.
+     * @param controllers
+     * @return ControllerRouter
+     */
+    public static ControllerRouter createInstance(List<InputController> controllers) {
+        return new ControllerRouter(
+            (controllers != null) ? controllers : Collections.<InputController>emptyList()
+        );
+    }
+
+    /**
+     * Returns the number of controllers reached through the prefix index.
+     * The others are offered every line (and filtered by their pattern).
+     */
+    public int getIndexedCount() {
+        return indexed;
+    }
+
+    /**
+     * Returns the controllers whose pattern matches the line.
+     * @param line the input line
+     * @return the matching controllers, in their original order.
+     */
+    public List<InputController> route(String line) {
+        if(line == null || controllers.length == 0){
+            return Collections.emptyList();
+        }
+        boolean[] candidates = new boolean[controllers.length];
+        for(int i : generic){
+            candidates[i] = true;
+        }
+        walk(exact, line, 0, candidates);
+        if(spaced.chars.length > 0){
+            int start = 0;
+            while(start < line.length() && Character.isWhitespace(line.charAt(start))){
+                start++;
+            }
+            walk(spaced, line, start, candidates);
+        }
+
+        List<InputController> result = new ArrayList<InputController>(controllers.length);
+        for(int i = 0; i < controllers.length; i++){
+            if(candidates[i] && (patterns[i] == null || patterns[i].matcher(line).matches())){
+                result.add(controllers[i]);
+            }
+        }
+        return result;
+    }
+
+    private static void walk(Node node, String line, int start, boolean[] candidates) {
+        for(int i = start; node != null; i++){
+            for(int t : node.targets){
+                candidates[t] = true;
+            }
+            node = (i < line.length()) ? node.child(line.charAt(i)) : null;
+        }
+    }
+
+    /**
+     * Extracts the literal prefixes of a pattern.
+     * @return the prefixes, or null if the pattern has none we can use.
+     */
+    private static Prefixes prefixesOf(Pattern p) {
+        if((p.flags() & UNSUPPORTED_FLAGS) != 0) return null;
+        String re = p.pattern();
+        if(hasTopLevelAlternation(re)) return null;
+
+        int i = 0;
+        if(re.startsWith("^")) i++;
+        boolean skipSpace = false;
+        if(re.startsWith(LEADING_SPACE, i)){
+            skipSpace = true;
+            i += LEADING_SPACE.length();
+        }
+        if(i >= re.length()) return null;
+
+        List<String> values = new ArrayList<String>();
+        if(re.charAt(i) == '('){
+            i++;
+            if(re.startsWith("?:", i)){
+                i += 2;
+            }else if(i < re.length() && re.charAt(i) == '?'){
+                return null; // look-around, flags or named group
+            }
+            StringBuilder alt = new StringBuilder();
+            for(;;){
+                if(i >= re.length()) return null;
+                char c = re.charAt(i);
+                if(c == '|' || c == ')'){
+                    if(alt.length() == 0) return null;
+                    values.add(alt.toString());
+                    alt.setLength(0);
+                    i++;
+                    if(c == ')') break;
+                }else if(c == '\\'){
+                    if(!isEscapedLiteral(re, i)) return null;
+                    alt.append(re.charAt(i + 1));
+                    i += 2;
+                }else if(META.indexOf(c) >= 0){
+                    return null;
+                }else{
+                    alt.append(c);
+                    i++;
+                }
+            }
+            if(i < re.length() && QUANTIFIERS.indexOf(re.charAt(i)) >= 0) return null;
+        }else{
+            StringBuilder prefix = new StringBuilder();
+            while(i < re.length()){
+                char c = re.charAt(i);
+                if(c == '\\' && isEscapedLiteral(re, i)){
+                    prefix.append(re.charAt(i + 1));
+                    i += 2;
+                }else if(META.indexOf(c) < 0){
+                    prefix.append(c);
+                    i++;
+                }else{
+                    break;
+                }
+            }
+            // a quantifier makes the last literal optional
+            if(prefix.length() > 0 && i < re.length() && QUANTIFIERS.indexOf(re.charAt(i)) >= 0){
+                prefix.setLength(prefix.length() - 1);
+            }
+            if(prefix.length() == 0) return null;
+            values.add(prefix.toString());
+        }
+        return new Prefixes(skipSpace, values);
+    }
+
+    private static boolean isEscapedLiteral(String re, int i) {
+        return i + 1 < re.length() && !Character.isLetterOrDigit(re.charAt(i + 1));
+    }
+
+    private static boolean hasTopLevelAlternation(String re) {
+        int depth = 0;
+        boolean inClass = false;
+        for(int i = 0; i < re.length(); i++){
+            char c = re.charAt(i);
+            if(c == '\\'){
+                i++;
+            }else if(inClass){
+                if(c == ']') inClass = false;
+            }else if(c == '['){
+                inClass = true;
+            }else if(c == '('){
+                depth++;
+            }else if(c == ')'){
+                depth--;
+            }else if(c == '|' && depth == 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char[] append(char[] chars, char c) {
+        char[] grown = new char[chars.length + 1];
+        System.arraycopy(chars, 0, grown, 0, chars.length);
+        grown[chars.length] = c;
+        return grown;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.clamshellcli.api.CommandExecutor;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.core.ShellConfiguration;
+
+/**
+ * Default CommandExecutor implementation.
+ * Will be used if none is found on classpath.
+ * <p>
+ * Each task runs on a new virtual thread when the JVM has them (Java 21
+ * and later), so commands blocked on I/O do not hold a platform thread.
+ * On older JVMs, or when property "commandThreads" is "platform", tasks
+ * run on a cached pool of daemon platform threads.  Tasks run with the
+ * shell's class loader as their context class loader.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class DefaultCommandExecutor implements CommandExecutor {
+    private static final Logger log = Logger.getLogger(DefaultCommandExecutor.class.getName());
+    public static final String PROP_COMMAND_THREADS = "commandThreads";
+    public static final String VALUE_VIRTUAL = "virtual";
+    public static final String VALUE_PLATFORM = "platform";
+
+    private volatile ExecutorService executor;
+    private volatile ClassLoader classLoader;
+    private volatile boolean virtual;
+
+    @Override
+    public void plug(Context plug) {
+        classLoader = ContextKey.CLASS_LOADER.get(plug);
+        String threads = ShellConfiguration.of(plug.getConfigurator())
+            .getProperty(PROP_COMMAND_THREADS, VALUE_VIRTUAL);
+        ExecutorService service = null;
+        if(!VALUE_PLATFORM.equalsIgnoreCase(threads)){
+            service = createVirtualThreadExecutor();
+        }
+        virtual = (service != null);
+        executor = (service != null) ? service : createPlatformThreadExecutor();
+    }
+
+    @Override
+    public void unplug(Context plug) {
+        ExecutorService service = executor;
+        if(service != null){
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns true if tasks run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public <T> Future<T> submit(final Callable<T> task) {
+        ExecutorService service = executor;
+        if(service == null){
+            throw new IllegalStateException("CommandExecutor is not plugged.");
+        }
+        final ClassLoader loader = classLoader;
+        if(loader == null){
+            return service.submit(task);
+        }
+        return service.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Thread.currentThread().setContextClassLoader(loader);
+                return task.call();
+            }
+        });
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor(), looked up at runtime
+     * since the shell is built for older JVMs.
+     * @return the executor or null if virtual threads are not available.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try{
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }catch(NoSuchMethodException ex){
+            return null; // JVM older than 21
+        }catch(Exception ex){
+            // i.e. preview feature not enabled
+            log.log(Level.FINE, "Virtual threads are not available, using platform threads", ex);
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformThreadExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cli-command-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
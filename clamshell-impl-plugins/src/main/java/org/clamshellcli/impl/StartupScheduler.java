@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.clamshellcli.api.CliException;
+
+/**
+ * Runs the startup tasks of the shell (plugging components) on a bounded
+ * thread pool.  Each task names the tasks it depends on; a task is started
+ * as soon as all of its dependencies have completed, so independent tasks
+ * run in parallel.
+ * <p>
+ * If a task throws, the tasks that depend on it are skipped and the error
+ * is rethrown by run() once the remaining tasks are done.  Tasks that must
+ * not abort startup are expected to handle their own errors.
+ * </p>
+ * @author vladimir.vivien
+ */
+public class StartupScheduler {
+    private final Map<String, Task> tasks = new LinkedHashMap<String, Task>();
+    private ExecutorService executor;
+    private CountDownLatch remaining;
+    private Throwable failure;
+
+    private static class Task {
+        final String name;
+        final Runnable action;
+        final List<String> dependsOn;
+        final List<Task> dependents = new ArrayList<Task>();
+        int pending;
+        boolean skipped;
+
+        Task(String name, Runnable action, List<String> dependsOn){
+            this.name = name;
+            this.action = action;
+            this.dependsOn = dependsOn;
+        }
+    }
+
+    /**
+     * Registers a startup task.
+     * @param name unique name of the task
+     * @param action the work to do
+     * @param dependsOn names of tasks that must complete before this one starts
+     */
+    public void addTask(String name, Runnable action, String... dependsOn){
+        if(tasks.containsKey(name)){
+            throw new CliException("Duplicate startup task " + name);
+        }
+        tasks.put(name, new Task(name, action, Arrays.asList(dependsOn)));
+    }
+
+    /**
+     * Runs all registered tasks and blocks until they are done.
+     * @param maxThreads upper bound of threads used to run tasks.
+     */
+    public void run(int maxThreads) {
+        if(tasks.isEmpty()) return;
+        List<Task> roots = resolve();
+
+        final ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(maxThreads, tasks.size())),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "cli-startup-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setContextClassLoader(cl);
+                    return t;
+                }
+            }
+        );
+
+        remaining = new CountDownLatch(tasks.size());
+        try{
+            for(Task t : roots){
+                submit(t);
+            }
+            remaining.await();
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new CliException("Startup interrupted.", ex);
+        }finally{
+            executor.shutdown();
+        }
+
+        if(failure != null){
+            throw (failure instanceof RuntimeException) ?
+                (RuntimeException)failure :
+                new CliException(failure);
+        }
+    }
+
+    /**
+     * Links tasks to their dependents and verifies the graph has no cycle.
+     * @return the tasks without dependencies.
+     */
+    private List<Task> resolve() {
+        List<Task> roots = new ArrayList<Task>();
+        for(Task t : tasks.values()){
+            t.pending = t.dependsOn.size();
+            for(String name : t.dependsOn){
+                Task dep = tasks.get(name);
+                if(dep == null){
+                    throw new CliException(
+                        String.format("Startup task %s depends on unknown task %s", t.name, name)
+                    );
+                }
+                dep.dependents.add(t);
+            }
+            if(t.pending == 0){
+                roots.add(t);
+            }
+        }
+
+        // Kahn's algorithm: every task must be reachable from the roots
+        Map<Task, Integer> inDegree = new LinkedHashMap<Task, Integer>();
+        for(Task t : tasks.values()){
+            inDegree.put(t, t.pending);
+        }
+        LinkedList<Task> queue = new LinkedList<Task>(roots);
+        int visited = 0;
+        while(!queue.isEmpty()){
+            Task t = queue.removeFirst();
+            visited++;
+            for(Task d : t.dependents){
+                int deg = inDegree.get(d) - 1;
+                inDegree.put(d, deg);
+                if(deg == 0) queue.add(d);
+            }
+        }
+        if(visited != tasks.size()){
+            throw new CliException("Startup tasks contain a dependency cycle.");
+        }
+        return roots;
+    }
+
+    private void submit(final Task t){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Throwable error = null;
+                try{
+                    t.action.run();
+                }catch(Throwable ex){
+                    error = ex;
+                }
+                complete(t, error);
+            }
+        });
+    }
+
+    private void complete(Task t, Throwable error){
+        List<Task> ready = new ArrayList<Task>();
+        synchronized(this){
+            if(error != null){
+                if(failure == null) failure = error;
+                skip(t.dependents);
+            }else{
+                for(Task d : t.dependents){
+                    if(!d.skipped && --d.pending == 0){
+                        ready.add(d);
+                    }
+                }
+            }
+        }
+        for(Task d : ready){
+            submit(d);
+        }
+        remaining.countDown();
+    }
+
+    private void skip(List<Task> dependents){
+        for(Task d : dependents){
+            if(!d.skipped){
+                d.skipped = true;
+                remaining.countDown();
+                skip(d.dependents);
+            }
+        }
+    }
+}
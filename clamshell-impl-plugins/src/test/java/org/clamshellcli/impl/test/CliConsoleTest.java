@@ -20,6 +20,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import jline.UnsupportedTerminal;
 import jline.console.history.History;
 import junit.framework.Assert;
 import org.clamshellcli.api.Configurator;
@@ -27,6 +28,7 @@ import org.clamshellcli.api.Context;
 import org.clamshellcli.impl.CliConsole;
 import org.clamshellcli.test.MockContext;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before; 
 import org.junit.Test;
 
@@ -63,6 +65,12 @@ public class CliConsoleTest {
         Assert.assertEquals (c.getHistoryFile(), new File(CLI_USERDIR,"history.log"));
     }
     
+    @Test
+    public void testNonInteractiveTerminal() {
+        Assume.assumeTrue(!CliConsole.isInteractive());
+        Assert.assertTrue(c.getReader().getTerminal() instanceof UnsupportedTerminal);
+    }
+    
     @Test 
     public void testSetHistoryEnabled() {
         c.setHistoryEnabled(true);
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.clamshellcli.impl.ConsoleResultChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class ConsoleResultChannelTest {
+    private static final String NL = System.getProperty("line.separator");
+
+    @Test
+    public void testRenderRecords() {
+        StringWriter out = new StringWriter();
+        ConsoleResultChannel channel = ConsoleResultChannel.createInstance(new PrintWriter(out));
+        Map<String, Object> rec = new LinkedHashMap<String, Object>();
+        rec.put("name", "help");
+        rec.put("ns", "syscmd");
+
+        channel.emit("hello");
+        channel.emit(null);
+        channel.emit(rec);
+        channel.emit(new Integer[]{1, 2});
+        channel.emit(Arrays.asList("a", "b"));
+        channel.close();
+
+        Assert.assertEquals(
+            "hello" + NL + "name: help  ns: syscmd" + NL + "1" + NL + "2" + NL + "a" + NL + "b" + NL,
+            out.toString()
+        );
+        Assert.assertEquals(6, channel.getCount());
+    }
+
+    @Test
+    public void testIteratorIsStreamed() {
+        StringWriter out = new StringWriter();
+        final ConsoleResultChannel channel = ConsoleResultChannel.createInstance(new PrintWriter(out));
+        final int total = 1000;
+        Iterator<Integer> records = new Iterator<Integer>(){
+            int next = 0;
+            @Override public boolean hasNext() {
+                // each record is written before the next one is produced
+                Assert.assertEquals(next, channel.getCount());
+                return next < total;
+            }
+            @Override public Integer next() {
+                return next++;
+            }
+            @Override public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        channel.emit(records);
+        channel.close();
+
+        Assert.assertEquals(total, channel.getCount());
+        Assert.assertTrue(out.toString().endsWith("999" + NL));
+    }
+}
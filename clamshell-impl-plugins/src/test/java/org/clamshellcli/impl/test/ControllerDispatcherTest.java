@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.clamshellcli.api.Command;
+import org.clamshellcli.api.Configurator;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.ContextKey;
+import org.clamshellcli.api.InputController;
+import org.clamshellcli.core.AnInputController;
+import org.clamshellcli.core.BufferedConsole;
+import org.clamshellcli.core.ShellConfiguration;
+import org.clamshellcli.core.ShellContext;
+import org.clamshellcli.impl.CmdController;
+import org.clamshellcli.impl.ControllerDispatcher;
+import org.clamshellcli.impl.ControllerDispatcher.Policy;
+import org.clamshellcli.test.MockCommand;
+import org.clamshellcli.test.MockContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class ControllerDispatcherTest {
+    private final List<InputController> calls = new ArrayList<InputController>();
+
+    @Test
+    public void testPolicies() {
+        InputController catchAll = controller(".*", true);
+        InputController help = controller("help.*", true);
+        InputController declines = controller("help.*", false);
+        List<InputController> ctrls = Arrays.asList(catchAll, declines, help);
+        Context ctx = MockContext.createInstance();
+
+        Assert.assertTrue(ControllerDispatcher.createInstance(ctrls, Policy.ALL_MATCH).dispatch(ctx, "help"));
+        Assert.assertEquals(Arrays.asList(catchAll, declines, help), calls);
+
+        calls.clear();
+        Assert.assertTrue(ControllerDispatcher.createInstance(ctrls, Policy.FIRST_MATCH).dispatch(ctx, "help"));
+        Assert.assertEquals(Arrays.asList(catchAll), calls);
+
+        calls.clear();
+        Assert.assertTrue(ControllerDispatcher.createInstance(ctrls, Policy.FALLBACK).dispatch(ctx, "help"));
+        Assert.assertEquals(Arrays.asList(declines, help), calls);
+
+        calls.clear();
+        Assert.assertTrue(ControllerDispatcher.createInstance(ctrls, Policy.FALLBACK).dispatch(ctx, "exit"));
+        Assert.assertEquals(Arrays.asList(catchAll), calls);
+    }
+
+    @Test
+    public void testFirstMatchRunsOnlyFirstHandler() {
+        InputController first = controller("help.*", true);
+        InputController second = controller(".*", true);
+        ControllerDispatcher dispatcher = ControllerDispatcher.createInstance(
+            Arrays.asList(first, second), Policy.FIRST_MATCH
+        );
+        Context ctx = MockContext.createInstance();
+
+        Assert.assertTrue(dispatcher.dispatch(ctx, "help"));
+        Assert.assertTrue(dispatcher.dispatch(ctx, "help exit"));
+        Assert.assertEquals(Arrays.asList(first, first), calls);
+        Assert.assertEquals(2, dispatcher.getHits(first));
+        Assert.assertEquals(0, dispatcher.getHits(second));
+    }
+
+    @Test
+    public void testCmdControllerDeclinesUnknownCommand() {
+        InputController cmds = new CmdController();
+        InputController next = controller(".*", true);
+        ControllerDispatcher dispatcher = ControllerDispatcher.createInstance(
+            Arrays.asList(cmds, next), Policy.FIRST_MATCH
+        );
+        Context ctx = ShellContext.createInstance();
+        ContextKey.CONSOLE_COMPONENT.put(ctx, BufferedConsole.createInstance());
+        ctx.putValue(Context.KEY_COMMANDS, Arrays.<Command>asList(new MockCommand()));
+
+        ctx.putValue(Context.KEY_COMMAND_LINE_INPUT, "deploy app.war");
+        Assert.assertTrue(dispatcher.dispatch(ctx, "deploy app.war"));
+        Assert.assertEquals(Arrays.asList(next), calls);
+        Assert.assertEquals(0, dispatcher.getHits(cmds));
+
+        ctx.putValue(Context.KEY_COMMAND_LINE_INPUT, "mock");
+        Assert.assertTrue(dispatcher.dispatch(ctx, "mock"));
+        Assert.assertEquals(Arrays.asList(next), calls);
+        Assert.assertEquals(1, dispatcher.getHits(cmds));
+    }
+
+    @Test
+    public void testPriorityAndAdaptiveOrder() {
+        InputController low = new Low(this);
+        InputController first = controller("a.*", true);
+        InputController second = controller("b.*", true);
+        Map<String,Object> props = new HashMap<String,Object>();
+        props.put(ControllerDispatcher.PROP_DISPATCH, "first-match");
+        props.put(ControllerDispatcher.PROP_ADAPTIVE_ORDER, "true");
+        Map<String,Object> lowConfig = new HashMap<String,Object>();
+        lowConfig.put(ShellConfiguration.KEY_CTRL_PRIORITY, "-1");
+        Map<String,Object> ctrls = new HashMap<String,Object>();
+        ctrls.put(Low.class.getName(), lowConfig);
+        Map<String,Object> raw = new HashMap<String,Object>();
+        raw.put(Configurator.KEY_CONFIG_PROPS, props);
+        raw.put(Configurator.KEY_CONFIG_CTRLS, ctrls);
+
+        ControllerDispatcher dispatcher = ControllerDispatcher.createInstance(
+            Arrays.asList(low, first, second), ShellConfiguration.fromMap(raw)
+        );
+        Assert.assertEquals(Policy.FIRST_MATCH, dispatcher.getPolicy());
+        Assert.assertEquals(Arrays.asList(first, second, low), dispatcher.getControllers());
+
+        Context ctx = MockContext.createInstance();
+        for(int i = 0; i < ControllerDispatcher.REORDER_INTERVAL; i++){
+            Assert.assertTrue(dispatcher.dispatch(ctx, "b"));
+        }
+        Assert.assertEquals(ControllerDispatcher.REORDER_INTERVAL, dispatcher.getHits(second));
+        Assert.assertEquals(0, dispatcher.getHits(low));
+        // the busier controller moves up, priorities still win
+        Assert.assertEquals(Arrays.asList(second, first, low), dispatcher.getControllers());
+    }
+
+    private InputController controller(String regex, final boolean result) {
+        InputController ctrl = new AnInputController() {
+            @Override
+            public boolean handle(Context ctx) {
+                calls.add(this);
+                return result;
+            }
+
+            @Override
+            public void plug(Context plug) {}
+
+            @Override
+            public void unplug(Context plug) {}
+        };
+        ctrl.setInputPattern(Pattern.compile(regex));
+        return ctrl;
+    }
+
+    public static class Low extends AnInputController {
+        private final ControllerDispatcherTest test;
+
+        Low(ControllerDispatcherTest test){
+            this.test = test;
+            setInputPattern(Pattern.compile(".*"));
+        }
+
+        @Override
+        public boolean handle(Context ctx) {
+            test.calls.add(this);
+            return true;
+        }
+
+        @Override
+        public void plug(Context plug) {}
+
+        @Override
+        public void unplug(Context plug) {}
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import org.clamshellcli.api.Context;
+import org.clamshellcli.api.InputController;
+import org.clamshellcli.core.AnInputController;
+import org.clamshellcli.impl.CmdController;
+import org.clamshellcli.impl.ControllerRouter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class ControllerRouterTest {
+
+    @Test
+    public void testRouteByPrefix() {
+        InputController cmds = controller("\\s*(exit|help|sysinfo)\\b.*");
+        InputController deploy = controller("^deploy .*");
+        InputController all = controller(".*");
+        ControllerRouter router = ControllerRouter.createInstance(
+            Arrays.asList(cmds, deploy, all)
+        );
+        Assert.assertEquals(2, router.getIndexedCount());
+
+        Assert.assertEquals(Arrays.asList(cmds, all), router.route("  help sysinfo"));
+        Assert.assertEquals(Arrays.asList(deploy, all), router.route("deploy app.war"));
+        Assert.assertEquals(Arrays.asList(all), router.route("helpme"));
+        Assert.assertEquals(Arrays.asList(all), router.route("deploy"));
+        Assert.assertEquals(Arrays.asList(all), router.route(" deploy app.war"));
+    }
+
+    @Test
+    public void testPatternsWithoutPrefixAreMatched() {
+        InputController optional = controller("ab?c.*");
+        InputController alternation = controller("foo.*|bar.*");
+        InputController noPattern = controller(null);
+        ControllerRouter router = ControllerRouter.createInstance(
+            Arrays.asList(optional, alternation, noPattern)
+        );
+        Assert.assertEquals(1, router.getIndexedCount());
+
+        Assert.assertEquals(Arrays.asList(optional, noPattern), router.route("ac"));
+        Assert.assertEquals(Arrays.asList(optional, noPattern), router.route("abc"));
+        Assert.assertEquals(Arrays.asList(alternation, noPattern), router.route("bar"));
+        Assert.assertEquals(Arrays.asList(noPattern), router.route("xyz"));
+    }
+
+    @Test
+    public void testCmdControllerUsesConfiguredPattern() {
+        CmdController cmds = new CmdController();
+        Assert.assertEquals(".*", cmds.respondsTo().pattern());
+        Assert.assertEquals(0, ControllerRouter.createInstance(Arrays.<InputController>asList(cmds)).getIndexedCount());
+
+        cmds.setInputPattern(Pattern.compile("\\s*(exit|help|jobs)\\b.*"));
+        ControllerRouter router = ControllerRouter.createInstance(Arrays.<InputController>asList(cmds));
+        Assert.assertEquals(1, router.getIndexedCount());
+        Assert.assertEquals(Arrays.<InputController>asList(cmds), router.route("jobs"));
+        Assert.assertTrue(router.route("echo hello").isEmpty());
+    }
+
+    @Test
+    public void testNoControllers() {
+        ControllerRouter router = ControllerRouter.createInstance(new ArrayList<InputController>());
+        Assert.assertTrue(router.route("help").isEmpty());
+    }
+
+    private static InputController controller(String regex) {
+        InputController ctrl = new AnInputController() {
+            @Override
+            public boolean handle(Context ctx) {
+                return true;
+            }
+
+            @Override
+            public void plug(Context plug) {}
+
+            @Override
+            public void unplug(Context plug) {}
+        };
+        ctrl.setInputPattern((regex != null) ? Pattern.compile(regex) : null);
+        return ctrl;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.clamshellcli.impl.test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.clamshellcli.impl.DefaultCommandExecutor;
+import org.clamshellcli.test.MockContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class DefaultCommandExecutorTest {
+
+    @Test
+    public void testSubmit() throws Exception {
+        MockContext ctx = MockContext.createInstance();
+        DefaultCommandExecutor executor = new DefaultCommandExecutor();
+        executor.plug(ctx);
+        try{
+            Assert.assertEquals(hasVirtualThreads(), executor.isVirtual());
+            final Thread caller = Thread.currentThread();
+            Future<Thread> result = executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            });
+            Thread worker = result.get();
+            Assert.assertNotSame(caller, worker);
+            Assert.assertTrue(worker.isDaemon());
+        }finally{
+            executor.unplug(ctx);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotPlugged() {
+        new DefaultCommandExecutor().submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return null;
+            }
+        });
+    }
+
+    private static boolean hasVirtualThreads() {
+        try{
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }catch(NoSuchMethodException ex){
+            return false;
+        }
+    }
+}
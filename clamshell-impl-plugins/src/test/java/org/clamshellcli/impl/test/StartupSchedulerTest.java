@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 ClamShell-Cli.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.clamshellcli.impl.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.clamshellcli.api.CliException;
+import org.clamshellcli.impl.StartupScheduler;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author vladimir.vivien
+ */
+public class StartupSchedulerTest {
+
+    @Test
+    public void testDependenciesRunFirst() {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        StartupScheduler scheduler = new StartupScheduler();
+        scheduler.addTask("b", record(order, "b"), "a");
+        scheduler.addTask("a", record(order, "a"));
+        scheduler.addTask("c", record(order, "c"), "b");
+        scheduler.run(4);
+
+        Assert.assertEquals(3, order.size());
+        Assert.assertEquals("a", order.get(0));
+        Assert.assertEquals("b", order.get(1));
+        Assert.assertEquals("c", order.get(2));
+    }
+
+    @Test
+    public void testIndependentTasksRunInParallel() {
+        // both tasks must be running at the same time to release the latch
+        final CountDownLatch latch = new CountDownLatch(2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+                try{
+                    if(!latch.await(5, TimeUnit.SECONDS)){
+                        throw new IllegalStateException("Tasks did not run in parallel");
+                    }
+                }catch(InterruptedException ex){
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+        StartupScheduler scheduler = new StartupScheduler();
+        scheduler.addTask("root", record(new ArrayList<String>(), "root"));
+        scheduler.addTask("x", task, "root");
+        scheduler.addTask("y", task, "root");
+        scheduler.run(2);
+    }
+
+    @Test
+    public void testFailureSkipsDependents() {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        StartupScheduler scheduler = new StartupScheduler();
+        scheduler.addTask("a", new Runnable() {
+            @Override
+            public void run() {
+                throw new CliException("broken");
+            }
+        });
+        scheduler.addTask("b", record(order, "b"), "a");
+        scheduler.addTask("c", record(order, "c"));
+        try{
+            scheduler.run(2);
+            Assert.fail("Expected failure to propagate");
+        }catch(CliException ex){
+            Assert.assertEquals("broken", ex.getMessage());
+        }
+        Assert.assertEquals(1, order.size());
+        Assert.assertEquals("c", order.get(0));
+    }
+
+    @Test(expected = CliException.class)
+    public void testCycleIsRejected() {
+        StartupScheduler scheduler = new StartupScheduler();
+        scheduler.addTask("a", record(new ArrayList<String>(), "a"), "b");
+        scheduler.addTask("b", record(new ArrayList<String>(), "b"), "a");
+        scheduler.run(2);
+    }
+
+    private static Runnable record(final List<String> order, final String name){
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
@@ -22,8 +22,6 @@ package org.clamshellcli.impl;
 import org.clamshellcli.api.Configurator;
 import org.clamshellcli.api.Context;
 import org.clamshellcli.api.SplashScreen;
-import java.io.OutputStream;
-import java.io.PrintStream;
 import org.clamshellcli.api.IOConsole;
 
 /**
@@ -32,36 +30,37 @@ import org.clamshellcli.api.IOConsole;
  * @author vladimir.vivien
  */
 public class CliSplashScreen implements SplashScreen {
-    private StringBuilder screen;
+    private static final String LINE_SEP = Configurator.VALUE_LINE_SEP;
+    private static final String BANNER = 
+        LINE_SEP +
+        LINE_SEP +
+        " .d8888b.  888                         .d8888b.  888               888 888" + LINE_SEP +
+        "d88P  Y88b 888                        d88P  Y88b 888               888 888" + LINE_SEP +
+        "888    888 888                        Y88b.      888               888 888" + LINE_SEP +
+        "888        888  8888b.  88888b.d88b.   :Y888b.   88888b.   .d88b.  888 888" + LINE_SEP +
+        "888        888     :88b 888 :888 :88b     :Y88b. 888 :88b d8P  Y8b 888 888" + LINE_SEP +
+        "888    888 888 .d888888 888  888  888       :888 888  888 88888888 888 888" + LINE_SEP +
+        "Y88b  d88P 888 888  888 888  888  888 Y88b  d88P 888  888 Y8b.     888 888" + LINE_SEP +
+        " :Y8888P:  888 :Y888888 888  888  888  :Y8888P:  888  888  :Y8888  888 888" + LINE_SEP +
+        LINE_SEP +
+        "                                                  Command-Line Interpreter" + LINE_SEP +
+        LINE_SEP;
+    
+    private String screen;
+    
     @Override
     public void render(Context ctx) {
         IOConsole console = ctx.getIoConsole();
-        console.println(screen.toString());
+        console.println(screen);
     }
 
     @Override
     public void plug(Context plug) {
-        screen  = new StringBuilder();
-        screen
-.append(Configurator.VALUE_LINE_SEP)    
-.append(Configurator.VALUE_LINE_SEP)               
-.append(" .d8888b.  888                         .d8888b.  888               888 888").append(Configurator.VALUE_LINE_SEP)
-.append("d88P  Y88b 888                        d88P  Y88b 888               888 888").append(Configurator.VALUE_LINE_SEP) 
-.append("888    888 888                        Y88b.      888               888 888").append(Configurator.VALUE_LINE_SEP) 
-.append("888        888  8888b.  88888b.d88b.   :Y888b.   88888b.   .d88b.  888 888").append(Configurator.VALUE_LINE_SEP) 
-.append("888        888     :88b 888 :888 :88b     :Y88b. 888 :88b d8P  Y8b 888 888").append(Configurator.VALUE_LINE_SEP) 
-.append("888    888 888 .d888888 888  888  888       :888 888  888 88888888 888 888").append(Configurator.VALUE_LINE_SEP) 
-.append("Y88b  d88P 888 888  888 888  888  888 Y88b  d88P 888  888 Y8b.     888 888").append(Configurator.VALUE_LINE_SEP) 
-.append(" :Y8888P:  888 :Y888888 888  888  888  :Y8888P:  888  888  :Y8888  888 888").append(Configurator.VALUE_LINE_SEP)
-.append(Configurator.VALUE_LINE_SEP)
-.append("                                                  Command-Line Interpreter").append(Configurator.VALUE_LINE_SEP)
-.append(Configurator.VALUE_LINE_SEP)
-.append("Java version: ").append(System.getProperty("java.version")).append(Configurator.VALUE_LINE_SEP)
-.append("Java Home: ").append(System.getProperty("java.home")).append(Configurator.VALUE_LINE_SEP)
-.append("OS: ").append(System.getProperty("os.name")).append(", Version: ").append(System.getProperty("os.version"))
-.append(Configurator.VALUE_LINE_SEP)
-.append(Configurator.VALUE_LINE_SEP)
- ;
+        screen = BANNER +
+            "Java version: " + System.getProperty("java.version") + LINE_SEP +
+            "Java Home: " + System.getProperty("java.home") + LINE_SEP +
+            "OS: " + System.getProperty("os.name") + ", Version: " + System.getProperty("os.version") + LINE_SEP +
+            LINE_SEP;
     }
 
     @Override
@@ -19,6 +19,8 @@ import org.clamshellcli.api.Configurator;
 import org.clamshellcli.api.Context;
 import org.clamshellcli.api.Shell;
 import org.clamshellcli.core.Clamshell;
+import org.clamshellcli.core.FlatClassLoader;
+import org.clamshellcli.core.StartupProfiler;
 import java.io.File;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -35,12 +37,44 @@ import org.clamshellcli.api.Plugin;
  * </ul>
  * 
  * <b>Argument Layout</b><br/>
- * 
+ * <ul>
+ * <li>--cds-train[=script]: runs a training session (the lines of the script
+ * file, or a default script) and writes a class data sharing archive for the
+ * current lib/ and plugins/ jars.  See {@link SharedArchive}.</li>
+ * <li>--startup-profile[=file.json]: prints the time, CPU and memory used by
+ * each startup phase before the first prompt, and optionally writes the same
+ * report as JSON.  See {@link StartupProfiler}.</li>
+ * </ul>
+ * With -Dcli.flatClassLoader=true, the jars of lib/, plugins/ and commands/
+ * are loaded by a single {@link FlatClassLoader} instead of a chain of
+ * class loaders.
  * 
  * @author vladimir.vivien
  */
 public class Run {
+    static final String OPT_CDS_TRAIN = "--cds-train";
+    static final String OPT_STARTUP_PROFILE = "--startup-profile";
+    
     public static void main(String[] args){        
+        // launcher options
+        for(String arg : args){
+            if(arg.equals(OPT_CDS_TRAIN)){
+                System.exit(SharedArchive.train(null));
+            }
+            if(arg.startsWith(OPT_CDS_TRAIN + "=")){
+                System.exit(SharedArchive.train(arg.substring(OPT_CDS_TRAIN.length() + 1)));
+            }
+            if(arg.equals(OPT_STARTUP_PROFILE)){
+                StartupProfiler.enable(null);
+            }
+            if(arg.startsWith(OPT_STARTUP_PROFILE + "=")){
+                StartupProfiler.enable(new File(arg.substring(OPT_STARTUP_PROFILE.length() + 1)));
+            }
+        }
+        
+        // drop the class data archive if the jars have changed since training
+        SharedArchive.verify();
+        
         // create/confiugre the context
         Context context  = null;
         File libDir = Clamshell.Runtime.getLibDir();
@@ -64,38 +98,63 @@ public class Run {
             System.exit(1);
         }
         
-        // load classes from lib directory
-        ClassLoader libDirCl = null;
-        try{
-            ClassLoader parent = Thread.currentThread().getContextClassLoader();
-            libDirCl = Clamshell.ClassManager.getClassLoaderFromFiles(
-                new File[]{libDir}, 
-                Configurator.JARFILE_PATTERN,
-                parent
-            );
-            Thread.currentThread().setContextClassLoader(libDirCl);
-        }catch(Exception ex){
-            System.out.printf("%nUnable to load classes from lib directory %s:%n%s.", libDir, ex.getMessage());
-        }finally{
-            if (libDirCl == null){
-                System.out.printf("%nUnable to load classes from lib directory %s:%n.", libDir);
+        ClassLoader pluginsCl = null;
+        StartupProfiler.Phase phase;
+        if(FlatClassLoader.isEnabled()){
+            // one class loader for lib, plugins and commands
+            phase = StartupProfiler.start("classloader flat");
+            File commandsDir = Clamshell.Runtime.getCommandsDir();
+            try{
+                pluginsCl = Clamshell.ClassManager.getFlatClassLoader(
+                    new File[]{libDir, pluginsDir, commandsDir},
+                    new File[]{new File(commandsDir, "classes")},
+                    Thread.currentThread().getContextClassLoader()
+                );
+                Thread.currentThread().setContextClassLoader(pluginsCl);
+                context.putValue(Context.KEY_CLASS_LOADER, pluginsCl);
+            }catch(Exception ex){
+                System.out.printf("%nUnable to load classes from %s, %s and %s:%n%s.", 
+                    libDir, pluginsDir, commandsDir, ex.getMessage());
+            }finally{
+                phase.end();
+            }
+        }else{
+            // load classes from lib directory
+            ClassLoader libDirCl = null;
+            phase = StartupProfiler.start("classloader lib");
+            try{
+                ClassLoader parent = Thread.currentThread().getContextClassLoader();
+                libDirCl = Clamshell.ClassManager.getClassLoaderFromFiles(
+                    new File[]{libDir}, 
+                    Configurator.JARFILE_PATTERN,
+                    parent
+                );
+                Thread.currentThread().setContextClassLoader(libDirCl);
+            }catch(Exception ex){
+                System.out.printf("%nUnable to load classes from lib directory %s:%n%s.", libDir, ex.getMessage());
+            }finally{
+                phase.end();
+                if (libDirCl == null){
+                    System.out.printf("%nUnable to load classes from lib directory %s:%n.", libDir);
+                }
             }
-        }
         
-        // load Plugins classloader
-        ClassLoader pluginsCl = null;
-        try{
-            pluginsCl = Clamshell.ClassManager.getClassLoaderFromFiles(
-                new File[]{pluginsDir}, 
-                Configurator.JARFILE_PATTERN,
-                Thread.currentThread().getContextClassLoader()
-            );
-            context.putValue(Context.KEY_CLASS_LOADER, pluginsCl);
-        }catch(Exception ex){
-            System.out.printf("%nUnable to load Plugin classes %s:%n%s.", pluginsDir, ex.getMessage());
-        }finally{
-            if(pluginsCl == null){
-                System.out.printf("%nUnable to load Plugin classes in directory %s:%n.", libDir);
+            // load Plugins classloader
+            phase = StartupProfiler.start("classloader plugins");
+            try{
+                pluginsCl = Clamshell.ClassManager.getClassLoaderFromFiles(
+                    new File[]{pluginsDir}, 
+                    Configurator.JARFILE_PATTERN,
+                    Thread.currentThread().getContextClassLoader()
+                );
+                context.putValue(Context.KEY_CLASS_LOADER, pluginsCl);
+            }catch(Exception ex){
+                System.out.printf("%nUnable to load Plugin classes %s:%n%s.", pluginsDir, ex.getMessage());
+            }finally{
+                phase.end();
+                if(pluginsCl == null){
+                    System.out.printf("%nUnable to load Plugin classes in directory %s:%n.", libDir);
+                }
             }
         }
         
@@ -111,9 +170,11 @@ public class Run {
         // Look for default Shell to launch.
         if(shells.size() > 0){
             Shell shell = shells.get(0);
+            phase = StartupProfiler.start("shell plug");
             try{
                 context.putValue(Context.KEY_SHELL_COMPONENT, shell);
                 shell.plug(context);
+                phase.end();
             }catch(Exception ex){
                 System.out.println("Something went wrong while bootstrapping the Shell:");
                 ex.printStackTrace(System.err);
@@ -134,7 +195,11 @@ public class Run {
         }
     }
     
-    //TODO careful, Cotext is not thread-safe.
+    /**
+     * Unplugs the shell on JVM exit.  It runs on its own thread while the
+     * console thread may still be using the context; ShellContext is safe
+     * for that.
+     */
     private static class ShutdownHook  extends Thread {
         private final Context context;
         public ShutdownHook(final Context ctx){
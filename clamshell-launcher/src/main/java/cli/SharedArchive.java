@@ -0,0 +1,264 @@
+/*
+ * clamshell-launcher
+ * Copyright (C) 2014 ClamShell-Cli
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.clamshellcli.api.Configurator;
+import org.clamshellcli.core.Clamshell;
+import org.clamshellcli.core.FileUtil;
+
+/**
+ * Manages an application class-data sharing (AppCDS) archive for the launcher.
+ * <p>
+ * In training mode the launcher starts a second JVM that runs a scripted
+ * session with -XX:ArchiveClassesAtExit, which dumps every class loaded
+ * during the session (lib, plugins and commands included) into cds/cli.jsa.
+ * It also writes cds/cli.jvmopts, a java argument file that points the JVM
+ * at the archive.  Launching with <code>java @cds/cli.jvmopts -jar cli.jar</code>
+ * (which the bundled cli script does) maps the archived classes instead of
+ * loading and verifying them again.
+ * </p>
+ * <p>
+ * The archive is tied to a fingerprint of the JVM and of the jars found in
+ * lib/, plugins/ and commands/.  When the fingerprint changes, the launcher
+ * drops the archive and empties the argument file so later launches ignore it.
+ * </p>
+ * @author vladimir.vivien
+ */
+final class SharedArchive {
+    static final String KEY_CDS_DIR = "cli.cds.dir";
+    private static final String VALUE_CDS_DIR = "cds";
+    private static final String ARCHIVE_FILE = "cli.jsa";
+    private static final String FINGERPRINT_FILE = "cli.jsa.fingerprint";
+    private static final String OPTIONS_FILE = "cli.jvmopts";
+    private static final String[] DEFAULT_SCRIPT = {"help", "help help"};
+    private static final String EXIT_CMD = "exit";
+    private static final int MIN_JAVA_VERSION = 13;
+    private static final int MAX_OUTPUT = 4096;
+
+    private SharedArchive(){}
+
+    static File getDir() {
+        return new File(System.getProperty(KEY_CDS_DIR, VALUE_CDS_DIR));
+    }
+
+    /**
+     * Runs a training session in a child JVM and writes the archive.
+     * @param scriptFile file of input lines to replay, or null for the default script.
+     * @return process exit code
+     */
+    static int train(String scriptFile) {
+        if(getJavaVersion() < MIN_JAVA_VERSION){
+            System.out.printf("%nClass data sharing training requires Java %d or later.%n", MIN_JAVA_VERSION);
+            return 1;
+        }
+
+        File dir = getDir();
+        if(!dir.isDirectory() && !dir.mkdirs()){
+            System.out.printf("%nUnable to create directory %s.%n", dir.getAbsolutePath());
+            return 1;
+        }
+        File archive = new File(dir, ARCHIVE_FILE);
+        File tmpArchive = new File(dir, ARCHIVE_FILE + ".tmp");
+        tmpArchive.delete();
+
+        try{
+            List<String> script = readScript(scriptFile);
+            List<String> cmd = new ArrayList<String>();
+            cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+            cmd.add("-XX:ArchiveClassesAtExit=" + tmpArchive.getAbsolutePath());
+            if(System.getProperty(Configurator.KEY_CONFIG_FILE) != null){
+                cmd.add("-D" + Configurator.KEY_CONFIG_FILE + "=" + System.getProperty(Configurator.KEY_CONFIG_FILE));
+            }
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(Run.class.getName());
+
+            System.out.printf("%nTraining class data sharing archive (%d input lines)...%n", script.size());
+            ProcessBuilder builder = new ProcessBuilder(cmd);
+            builder.redirectErrorStream(true);
+            Process proc = builder.start();
+
+            OutputStream in = proc.getOutputStream();
+            PrintWriter writer = new PrintWriter(in);
+            for(String line : script){
+                writer.println(line);
+            }
+            writer.close();
+
+            String output = drain(proc.getInputStream());
+            int exit = proc.waitFor();
+            if(exit != 0 || !tmpArchive.isFile()){
+                System.out.printf("%nTraining session failed (exit code %d):%n%s%n", exit, output);
+                tmpArchive.delete();
+                return 1;
+            }
+
+            FileUtil.replace(tmpArchive, archive);
+            writeFile(new File(dir, FINGERPRINT_FILE), fingerprint());
+            writeFile(new File(dir, OPTIONS_FILE),
+                "-XX:SharedArchiveFile=" + archive.getAbsolutePath() + Configurator.VALUE_LINE_SEP +
+                "-Xshare:auto" + Configurator.VALUE_LINE_SEP
+            );
+            System.out.printf("Wrote %s%nLaunch with: java @%s -jar cli.jar%n",
+                archive.getPath(), new File(dir, OPTIONS_FILE).getPath());
+            return 0;
+        }catch(Exception ex){
+            System.out.printf("%nUnable to train class data sharing archive:%n%s%n", ex.getMessage());
+            tmpArchive.delete();
+            return 1;
+        }
+    }
+
+    /**
+     * Disables the archive if the jars it was trained with have changed.
+     */
+    static void verify() {
+        File dir = getDir();
+        File archive = new File(dir, ARCHIVE_FILE);
+        if(!archive.isFile()) return;
+        try{
+            String recorded = readFile(new File(dir, FINGERPRINT_FILE));
+            if(fingerprint().equals(recorded)) return;
+
+            archive.delete();
+            new File(dir, FINGERPRINT_FILE).delete();
+            writeFile(new File(dir, OPTIONS_FILE), "");
+            System.out.printf("%nThe class data sharing archive is out of date and was removed."
+                + "%nRun with %s to create a new one.%n", Run.OPT_CDS_TRAIN);
+        }catch(Exception ex){
+            System.out.printf("%nUnable to verify class data sharing archive: %s%n", ex.getMessage());
+        }
+    }
+
+    /**
+     * Computes a digest of the JVM and of the name, size and mtime of every
+     * jar visible to the launcher.
+     */
+    static String fingerprint() throws Exception {
+        MessageDigest digest = FileUtil.sha1();
+        update(digest, System.getProperty("java.home"));
+        update(digest, System.getProperty("java.vm.version"));
+        update(digest, System.getProperty("java.class.path"));
+
+        File[] dirs = {
+            Clamshell.Runtime.getLibDir(),
+            Clamshell.Runtime.getPluginsDir(),
+            new File("commands")
+        };
+        for(File dir : dirs){
+            File[] files = dir.listFiles();
+            if(files == null) continue;
+            Arrays.sort(files);
+            for(File f : files){
+                if(!Configurator.JARFILE_PATTERN.matcher(f.getName()).matches()) continue;
+                update(digest, f.getPath());
+                update(digest, String.valueOf(f.length()));
+                update(digest, String.valueOf(f.lastModified()));
+            }
+        }
+
+        return FileUtil.toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) throws IOException {
+        digest.update(String.valueOf(value).getBytes("UTF-8"));
+        digest.update((byte)0);
+    }
+
+    private static List<String> readScript(String scriptFile) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        if(scriptFile == null){
+            lines.addAll(Arrays.asList(DEFAULT_SCRIPT));
+        }else{
+            BufferedReader reader = new BufferedReader(new FileReader(scriptFile));
+            try{
+                String line;
+                while((line = reader.readLine()) != null){
+                    if(!line.trim().isEmpty()) lines.add(line);
+                }
+            }finally{
+                reader.close();
+            }
+        }
+        // the session must end for the archive to be written
+        if(lines.isEmpty() || !EXIT_CMD.equals(lines.get(lines.size() - 1).trim())){
+            lines.add(EXIT_CMD);
+        }
+        return lines;
+    }
+
+    /**
+     * Reads the child's output, keeping only the tail for error reporting.
+     */
+    private static String drain(InputStream in) throws IOException {
+        StringBuilder tail = new StringBuilder();
+        byte[] buf = new byte[4096];
+        try{
+            int read;
+            while((read = in.read(buf)) != -1){
+                tail.append(new String(buf, 0, read));
+                if(tail.length() > MAX_OUTPUT){
+                    tail.delete(0, tail.length() - MAX_OUTPUT);
+                }
+            }
+        }finally{
+            in.close();
+        }
+        return tail.toString();
+    }
+
+    private static int getJavaVersion() {
+        String spec = System.getProperty("java.specification.version", "0");
+        if(spec.startsWith("1.")){
+            spec = spec.substring(2);
+        }
+        try{
+            return Integer.parseInt(spec);
+        }catch(NumberFormatException ex){
+            return 0;
+        }
+    }
+
+    private static String readFile(File f) throws IOException {
+        if(!f.isFile()) return null;
+        BufferedReader reader = new BufferedReader(new FileReader(f));
+        try{
+            return reader.readLine();
+        }finally{
+            reader.close();
+        }
+    }
+
+    private static void writeFile(File f, final String content) throws IOException {
+        FileUtil.writeAtomically(f, new FileUtil.Content() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(content.getBytes("UTF-8"));
+            }
+        });
+    }
+}
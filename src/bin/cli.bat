@@ -0,0 +1,7 @@
+@echo off
+rem Starts Clamshell-Cli from the current directory ({CLI_HOME}).
+rem When a class data sharing archive was trained (java -jar cli.jar --cds-train)
+rem the JVM options that enable it are picked up from cds\cli.jvmopts.
+set CLI_JVM_OPTS=
+if exist cds\cli.jvmopts for %%F in (cds\cli.jvmopts) do if %%~zF gtr 0 set CLI_JVM_OPTS=@cds\cli.jvmopts
+java %CLI_JVM_OPTS% %JAVA_OPTS% -jar cli.jar %*